@@ -0,0 +1,62 @@
+package us.drome.cobrasqlib;
+
+/**
+ * The aggregate functions that can be computed by the database with <tt>Table.count</tt>, <tt>Table.sum</tt> and the
+ * other aggregation methods of <tt>Table</tt>, or per group with <tt>GroupBy</tt>.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public enum Aggregate {
+    /**
+     * The amount of rows, or of non-NULL values of a column.
+     */
+    COUNT,
+    /**
+     * The total of the non-NULL values of a column.
+     */
+    SUM,
+    /**
+     * The average of the non-NULL values of a column.
+     */
+    AVG,
+    /**
+     * The smallest value of a column.
+     */
+    MIN,
+    /**
+     * The largest value of a column.
+     */
+    MAX;
+
+    /**
+     * @param column The column to aggregate, or <tt>null</tt> to count rows.
+     * @return The name the aggregate has in a <tt>GroupedResult</tt>, such as <tt>count</tt> or <tt>sum(price)</tt>.
+     */
+    protected String label(String column) {
+        return column == null ? name().toLowerCase() : name().toLowerCase() + "(" + column + ")";
+    }
+
+    /**
+     * Combines two partial results of this aggregate, such as the results of two shards. Averages cannot be combined
+     * and are computed from a sum and a count instead.
+     * @return The combined result, where <tt>NaN</tt> stands for NULL.
+     */
+    protected double combine(double a, double b) {
+        if(Double.isNaN(a)) {
+            return b;
+        } else if(Double.isNaN(b)) {
+            return a;
+        }
+        switch(this) {
+            case MIN:
+                return Math.min(a, b);
+            case MAX:
+                return Math.max(a, b);
+            case AVG:
+                throw new UnsupportedOperationException("Averages cannot be combined.");
+            default:
+                return a + b;
+        }
+    }
+}
@@ -13,6 +13,7 @@ import java.util.List;
 public class Callback {
     private final Object instance;
     private final Method toInvoke;
+    private final Method toInvokeOnError;
     
     /**
      * Constructs a new <tt>Callback</tt> object that can be used to invoke a method via reflection.
@@ -25,6 +26,33 @@ public class Callback {
     public Callback(Object instance, String method) throws NoSuchMethodException {
         this.instance = instance;
         toInvoke = instance.getClass().getMethod(method, List.class);
+        toInvokeOnError = null;
+    }
+    
+    /**
+     * Constructs a new <tt>Callback</tt> object that can be used to invoke a method via reflection, with a second method
+     * that is invoked instead when the operation fails, times out or its result cannot be delivered.
+     * 
+     * @param instance Class instance where the methods are located.
+     * @param method The name of the method to execute. This method <b>MUST</b> accept a
+     * single parameter of <tt>List&lt;Row&gt;</tt>.
+     * @param errorMethod The name of the method to execute on failure. This method <b>MUST</b> accept a
+     * single parameter of <tt>Throwable</tt>.
+     * @throws NoSuchMethodException
+     */
+    public Callback(Object instance, String method, String errorMethod) throws NoSuchMethodException {
+        this.instance = instance;
+        toInvoke = instance.getClass().getMethod(method, List.class);
+        toInvokeOnError = instance.getClass().getMethod(errorMethod, Throwable.class);
+    }
+    
+    /**
+     * Protected constructor for callbacks implemented by subclasses that override <tt>invoke</tt>.
+     */
+    protected Callback() {
+        this.instance = null;
+        this.toInvoke = null;
+        this.toInvokeOnError = null;
     }
     
     /**
@@ -38,4 +66,23 @@ public class Callback {
     public void invoke(Object param) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
         this.toInvoke.invoke(instance, param);
     }
+    
+    /**
+     * @return true if this <tt>Callback</tt> has a method to invoke on failure.
+     */
+    public boolean handlesErrors() { return toInvokeOnError != null; }
+    
+    /**
+     * Executes the error method referenced in this <tt>Callback</tt> object, if there is one.
+     * 
+     * @param error The cause of the failure.
+     * @throws IllegalAccessException
+     * @throws IllegalArgumentException
+     * @throws InvocationTargetException
+     */
+    public void invokeError(Throwable error) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+        if(toInvokeOnError != null) {
+            this.toInvokeOnError.invoke(instance, error);
+        }
+    }
 }
@@ -0,0 +1,76 @@
+package us.drome.cobrasqlib;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A committed change to the rows of a <tt>Table</tt>, delivered to the <tt>ChangeListener</tt>s subscribed with
+ * <tt>Table.subscribe</tt> or <tt>SQLEngine.subscribe</tt>.
+ *
+ * The key of the changed row is <tt>null</tt> when the change was made by a value other than the primary key, such as
+ * <tt>Table.update</tt> or <tt>Table.delete</tt> on another column, or when the key was generated by the database and not
+ * returned. Such changes may affect any number of rows, so anything kept in sync with the table should be invalidated whole.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class ChangeEvent {
+    /**
+     * The kinds of changes.
+     */
+    public enum Kind { INSERT, UPDATE, DELETE }
+
+    private final String table;
+    private final Kind kind;
+    private final Object key;
+    private final Map<String, Object> values;
+    private final boolean remote;
+
+    /**
+     * Protected constructor to initialize a new <tt>ChangeEvent</tt>.
+     * @param table The name of the changed table.
+     * @param kind The kind of change.
+     * @param key The primary key of the changed row, or <tt>null</tt> if it is not known.
+     * @param values The changed columns and their new values.
+     * @param remote Whether the change was made by another engine and read from the change log.
+     */
+    protected ChangeEvent(String table, Kind kind, Object key, Map<String, Object> values, boolean remote) {
+        this.table = table;
+        this.kind = kind;
+        this.key = key;
+        this.values = Collections.unmodifiableMap(values);
+        this.remote = remote;
+    }
+
+    /**
+     * @return A copy of this event with the provided primary key, such as the key generated for an insert.
+     */
+    protected ChangeEvent withKey(Object key) {
+        return new ChangeEvent(table, kind, key, values, remote);
+    }
+
+    public String getTable() { return table; }
+
+    public Kind getKind() { return kind; }
+
+    /**
+     * @return The primary key of the changed row, or <tt>null</tt> if it is not known. Keys of remote changes are strings.
+     */
+    public Object getKey() { return key; }
+
+    /**
+     * @return The changed columns and their new values, keyed by column name. Deletes have no values, and remote changes
+     * have the names of the changed columns with <tt>null</tt> values.
+     */
+    public Map<String, Object> getValues() { return values; }
+
+    /**
+     * @return true if the change was made by another engine sharing the database and read from the change log.
+     */
+    public boolean isRemote() { return remote; }
+
+    @Override
+    public String toString() {
+        return "ChangeEvent[" + kind + " " + table + (key == null ? "" : " key=" + key) + " columns=" + values.keySet() + (remote ? " remote" : "") + "]";
+    }
+}
@@ -0,0 +1,21 @@
+package us.drome.cobrasqlib;
+
+import java.util.List;
+
+/**
+ * Receives the changes made to tables through <tt>Table</tt>, once they are committed. Registered with
+ * <tt>Table.subscribe</tt> for a single table or <tt>SQLEngine.subscribe</tt> for every table of an engine.
+ *
+ * Changes are delivered on the engine's query executor in the order they were committed, so listeners should return
+ * quickly. Writes made with raw SQL through <tt>SQLEngine.runUpdate</tt> and its variants are not reported.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public interface ChangeListener {
+    /**
+     * Called after a write was committed.
+     * @param changes The changes of the write, in order. A flush of buffered writes is delivered as one list.
+     */
+    void onChanges(List<ChangeEvent> changes);
+}
@@ -0,0 +1,239 @@
+package us.drome.cobrasqlib;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Shares the changes made through a <tt>SQLEngine</tt> with every other engine, in this or another process, that has its
+ * change log enabled on the same database. Enabled with <tt>SQLEngine.enableChangeLog</tt>.
+ *
+ * Committed changes are appended to the <tt>cobra_changelog</tt> table, which every engine polls for entries written by
+ * the others. Those are delivered to its <tt>ChangeListener</tt>s as remote <tt>ChangeEvent</tt>s holding the key and the
+ * names of the changed columns, which is enough to invalidate cached rows. Entries are written after the change itself
+ * commits, so a crash in between loses the entry, and entries older than the retention are deleted.
+ *
+ * Entries are read in order of their id. Databases such as MySQL may commit ids out of order when several engines write
+ * at once, so ids skipped by a poll are looked for again on the following polls for <tt>GAP_TIMEOUT</tt>, after which
+ * they are taken to belong to a rolled back write. Changes published before the change log table is known to exist are
+ * held back and written once it is.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class ChangeLog {
+    /**
+     * The name of the table entries are written to.
+     */
+    public static final String TABLE = "cobra_changelog";
+    /**
+     * How long ids skipped by a poll are looked for again, in milliseconds.
+     */
+    public static final long GAP_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+    private static final int MAX_COLUMNS_LENGTH = 2048;
+    private static final int MAX_GAPS = 500;
+
+    private final SQLEngine engine;
+    private final String origin = UUID.randomUUID().toString();
+    private volatile long retentionMillis = TimeUnit.MINUTES.toMillis(10);
+    private volatile ScheduledFuture<?> poll;
+    // Only read and written on the engine's query executor.
+    private Table table;
+    private boolean ready = false;
+    private final List<ChangeEvent> unwritten = new ArrayList<>();
+    private long lastId = -1;
+    private final Map<Long, Long> gaps = new LinkedHashMap<>();
+    private long lastPrune = System.currentTimeMillis();
+
+    protected ChangeLog(SQLEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Creates the change log table if it does not exist and starts polling it.
+     * @param pollMillis The interval between polls in milliseconds.
+     */
+    protected synchronized void start(final long pollMillis) {
+        engine.getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                table = engine.getTable(TABLE);
+                if(table != null) {
+                    ready();
+                    return;
+                }
+                table = engine.createTable(TABLE,
+                        new ColumnDef("id", Type.INTEGER, Options.isPrimary, Options.isAutoincrement),
+                        new ColumnDef("origin", Type.VARCHAR, 36, Options.isNotNull),
+                        new ColumnDef("table_name", Type.VARCHAR, 64, Options.isNotNull),
+                        new ColumnDef("kind", Type.VARCHAR, 6, Options.isNotNull),
+                        new ColumnDef("row_key", Type.VARCHAR, 255),
+                        new ColumnDef("change_columns", Type.VARCHAR, MAX_COLUMNS_LENGTH),
+                        new ColumnDef("created", Type.BIGINT, Options.isNotNull));
+                engine.getExecutor().executeAfter(new Runnable() {
+                    @Override
+                    public void run() {
+                        ready();
+                    }
+                }, Priority.INTERACTIVE);
+            }
+        }, Priority.INTERACTIVE, null);
+        poll = engine.getScheduler().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                engine.getExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        poll();
+                    }
+                }, Priority.BACKGROUND, null);
+            }
+        }, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops polling the change log. Entries are no longer written once the engine has dropped its reference.
+     */
+    protected synchronized void stop() {
+        if(poll != null) {
+            poll.cancel(false);
+            poll = null;
+        }
+    }
+
+    /**
+     * @return The identifier of this engine in the entries it writes.
+     */
+    public String getOrigin() { return origin; }
+
+    /**
+     * Sets how long entries are kept before they are deleted. It must be well above the poll interval of every engine
+     * sharing the database, or they may miss changes.
+     * @param millis The retention in milliseconds. Defaults to ten minutes.
+     */
+    public void setRetention(long millis) { this.retentionMillis = millis; }
+
+    public long getRetention() { return retentionMillis; }
+
+    /**
+     * Marks the change log table as created, finds the entries already in it, and writes the changes held back until it
+     * was. Only entries written after this are delivered. Must be run by the engine's query executor.
+     */
+    private void ready() {
+        ready = true;
+        findEnd();
+        if(!unwritten.isEmpty()) {
+            List<ChangeEvent> held = new ArrayList<>(unwritten);
+            unwritten.clear();
+            write(held);
+        }
+    }
+
+    /**
+     * Appends committed local changes to the change log, or holds them back until the change log table exists. Must be
+     * run by the engine's query executor.
+     */
+    protected void write(List<ChangeEvent> changes) {
+        if(!ready) {
+            unwritten.addAll(changes);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<Object[]> rows = new ArrayList<>(changes.size());
+        for(ChangeEvent change : changes) {
+            String columns = "";
+            for(String column : change.getValues().keySet()) {
+                columns += (columns.isEmpty() ? "" : ",") + column;
+            }
+            rows.add(new Object[] {origin, change.getTable(), change.getKind().name(),
+                change.getKey() == null ? null : change.getKey().toString(),
+                columns.length() > MAX_COLUMNS_LENGTH ? null : columns, now});
+        }
+        engine.runBatchUpdate(Collections.singletonMap(
+                "INSERT INTO " + TABLE + " (origin,table_name,kind,row_key,change_columns,created) VALUES (?,?,?,?,?,?)", rows));
+    }
+
+    /**
+     * Sets the last id read to the newest entry of the change log, so entries written before it was enabled are not
+     * delivered. Must be run by the engine's query executor.
+     * @return true if the newest entry was found.
+     */
+    private boolean findEnd() {
+        try {
+            double max = table.max("id", null);
+            lastId = Double.isNaN(max) ? 0 : (long) max;
+            return true;
+        } catch (SQLException e) {
+            engine.logger.log(Level.WARNING, "Unable to read the change log: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Reads the entries written by other engines since the last poll and delivers them. Must be run by the engine's query executor.
+     */
+    private void poll() {
+        if(!ready || (lastId < 0 && !findEnd())) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        String query = "SELECT * FROM " + TABLE + " WHERE id > ?";
+        List<Object> params = new ArrayList<>();
+        params.add(lastId);
+        if(!gaps.isEmpty()) {
+            String ids = "";
+            for(Long id : gaps.keySet()) {
+                ids += (ids.isEmpty() ? "?" : ",?");
+                params.add(id);
+            }
+            query += " OR id IN (" + ids + ")";
+        }
+        List<ChangeEvent> changes = new ArrayList<>();
+        for(Row row : engine.runQuery(query + " ORDER BY id", params.toArray())) {
+            long id = ((Number) row.getColumn("id").getData()).longValue();
+            if(id > lastId) {
+                for(long skipped = lastId + 1; skipped < id && gaps.size() < MAX_GAPS; skipped++) {
+                    gaps.put(skipped, now);
+                }
+                lastId = id;
+            } else if(gaps.remove(id) == null) {
+                continue;
+            }
+            if(origin.equals(row.getColumn("origin").getData())) {
+                continue;
+            }
+            Map<String, Object> values = new LinkedHashMap<>();
+            Object columns = row.getColumn("change_columns").getData();
+            if(columns != null && !columns.toString().isEmpty()) {
+                for(String column : columns.toString().split(",")) {
+                    values.put(column, null);
+                }
+            }
+            Object key = row.getColumn("row_key").getData();
+            changes.add(new ChangeEvent(row.getColumn("table_name").getData().toString(),
+                    ChangeEvent.Kind.valueOf(row.getColumn("kind").getData().toString()),
+                    key == null ? null : key.toString(), values, true));
+        }
+        if(!changes.isEmpty()) {
+            engine.deliverChanges(changes);
+        }
+        Iterator<Long> noticed = gaps.values().iterator();
+        while(noticed.hasNext()) {
+            if(now - noticed.next() > GAP_TIMEOUT) {
+                noticed.remove();
+            }
+        }
+        if(now - lastPrune > retentionMillis / 2) {
+            lastPrune = now;
+            engine.runUpdate("DELETE FROM " + TABLE + " WHERE created < ?", now - retentionMillis);
+        }
+    }
+}
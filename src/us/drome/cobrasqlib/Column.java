@@ -1,5 +1,7 @@
 package us.drome.cobrasqlib;
 
+import java.io.InputStream;
+import java.io.Reader;
 import java.sql.SQLException;
 
 /**
@@ -65,10 +67,30 @@ public class Column {
     public boolean isNotNull() { return (data == null ? true : false); }
     
     /**
-     * @return The data contained in the column as an <tt>Object</tt>.
+     * @return The data contained in the column as an <tt>Object</tt>, or a <tt>LargeValue</tt> handle if the value of a
+     * large column was not loaded.
      */
     public Object getData() { return (data); }
     
+    /**
+     * @return true if the value of this column was loaded, or false if it holds a <tt>LargeValue</tt> handle.
+     */
+    public boolean isLoaded() { return !(data instanceof LargeValue); }
+    
+    /**
+     * Opens a stream on the data of this column, reading it from the database if it was not loaded. Text is encoded as UTF-8.
+     * @return A stream that must be closed, or <tt>null</tt> if the column is NULL.
+     * @throws SQLException If the value cannot be read.
+     */
+    public InputStream getInputStream() throws SQLException { return LargeValue.streamOf(data); }
+    
+    /**
+     * Opens a reader on the data of this column, reading it from the database if it was not loaded. Bytes are decoded as UTF-8.
+     * @return A reader that must be closed, or <tt>null</tt> if the column is NULL.
+     * @throws SQLException If the value cannot be read.
+     */
+    public Reader getReader() throws SQLException { return LargeValue.readerOf(data); }
+    
     /**
      * Set the data in this column to the provided <tt>Object</tt>.
      * @param data The column's new data.
@@ -0,0 +1,190 @@
+package us.drome.cobrasqlib;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the values of columns declared with <tt>Options.isCompressed</tt>. Values are stored as bytes with a two
+ * byte header holding a marker, the format version and the method, followed by the original length and the deflated
+ * data. Values shorter than the threshold, or that do not shrink, are stored raw after the header.
+ *
+ * Compressed columns must have a binary type, as compressed bytes do not survive the character set conversion of text
+ * columns. Text is compressed as UTF-8 and read back as bytes. Values without the header, such as rows written before
+ * the column was compressed, are read back unchanged.
+ *
+ * Compression is not part of the database schema, so the compressed columns of every table created through an engine
+ * are recorded in the <tt>TABLE</tt> table of its database and marked compressed again when the table is discovered.
+ *
+ * Deflaters, inflaters and their buffers are kept per thread and reused.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class ColumnCompression {
+    /**
+     * The name of the table compressed columns are recorded in.
+     */
+    public static final String TABLE = "cobra_compressed_columns";
+    /**
+     * The version of the value format written by this class.
+     */
+    public static final int FORMAT_VERSION = 1;
+    private static final byte MARKER = (byte) 0xCD;
+    private static final int METHOD_RAW = 0;
+    private static final int METHOD_DEFLATE = 1;
+    private static final int HEADER_SIZE = 2;
+    private static final int LENGTH_SIZE = 4;
+
+    private static final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() { return new Deflater(Deflater.BEST_SPEED); }
+    };
+    private static final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() { return new Inflater(); }
+    };
+    private static final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() { return new byte[64 * 1024]; }
+    };
+
+    private ColumnCompression() { }
+
+    /**
+     * Compresses a value for storage in a compressed column.
+     * @param value A <tt>byte[]</tt>, <tt>String</tt>, <tt>InputStream</tt> or <tt>Reader</tt>. Other values are stored as their string form.
+     * @param threshold The length in bytes below which the value is stored raw.
+     * @param metrics The metrics to record the compression in.
+     * @return The stored form of the value, or <tt>null</tt> if the value is <tt>null</tt>.
+     * @throws IllegalArgumentException If a stream value cannot be read.
+     */
+    protected static byte[] compress(Object value, int threshold, EngineMetrics metrics) {
+        if(value == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        byte[] raw = toBytes(value);
+        byte[] stored = null;
+        if(raw.length >= threshold) {
+            stored = deflate(raw);
+        }
+        if(stored == null) {
+            stored = new byte[HEADER_SIZE + raw.length];
+            stored[0] = MARKER;
+            stored[1] = (byte) (FORMAT_VERSION << 4 | METHOD_RAW);
+            System.arraycopy(raw, 0, stored, HEADER_SIZE, raw.length);
+        }
+        metrics.compressed(raw.length, stored.length, System.nanoTime() - start);
+        return stored;
+    }
+
+    /**
+     * Restores a value read from a compressed column.
+     * @param stored The value as read from the database.
+     * @param text Whether to return the value as a <tt>String</tt> rather than a <tt>byte[]</tt>.
+     * @param metrics The metrics to record the decompression in.
+     * @return The original value, or <tt>stored</tt> itself if it was not written compressed.
+     * @throws IllegalStateException If the value has the header of a compressed value but cannot be decompressed.
+     */
+    protected static Object decompress(Object stored, boolean text, EngineMetrics metrics) {
+        if(!(stored instanceof byte[])) {
+            return stored;
+        }
+        byte[] bytes = (byte[]) stored;
+        if(bytes.length < HEADER_SIZE || bytes[0] != MARKER || (bytes[1] >> 4 & 0xF) > FORMAT_VERSION) {
+            return text ? new String(bytes, StandardCharsets.UTF_8) : bytes;
+        }
+        long start = System.nanoTime();
+        byte[] raw;
+        if((bytes[1] & 0xF) == METHOD_DEFLATE) {
+            raw = inflate(bytes);
+        } else {
+            raw = Arrays.copyOfRange(bytes, HEADER_SIZE, bytes.length);
+        }
+        metrics.decompressed(System.nanoTime() - start);
+        return text ? new String(raw, StandardCharsets.UTF_8) : raw;
+    }
+
+    private static byte[] toBytes(Object value) {
+        try {
+            if(value instanceof byte[]) {
+                return (byte[]) value;
+            } else if(value instanceof InputStream) {
+                return LargeValue.readFully((InputStream) value, Long.MAX_VALUE);
+            } else if(value instanceof Reader) {
+                return LargeValue.readFully((Reader) value, Long.MAX_VALUE).getBytes(StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to read value to compress: " + e.getMessage(), e);
+        }
+        return value.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The deflated form of the value with its header, or <tt>null</tt> if it does not shrink.
+     */
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = deflaters.get();
+        byte[] buffer = buffers.get();
+        int limit = raw.length - HEADER_SIZE - LENGTH_SIZE;
+        if(limit <= 0) {
+            return null;
+        }
+        if(buffer.length < limit) {
+            buffer = new byte[limit];
+            buffers.set(buffer);
+        }
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        int length = 0;
+        while(!deflater.finished()) {
+            if(length == limit) {
+                return null;
+            }
+            length += deflater.deflate(buffer, length, limit - length);
+        }
+        byte[] stored = new byte[HEADER_SIZE + LENGTH_SIZE + length];
+        stored[0] = MARKER;
+        stored[1] = (byte) (FORMAT_VERSION << 4 | METHOD_DEFLATE);
+        stored[2] = (byte) (raw.length >>> 24);
+        stored[3] = (byte) (raw.length >>> 16);
+        stored[4] = (byte) (raw.length >>> 8);
+        stored[5] = (byte) raw.length;
+        System.arraycopy(buffer, 0, stored, HEADER_SIZE + LENGTH_SIZE, length);
+        return stored;
+    }
+
+    private static byte[] inflate(byte[] stored) {
+        if(stored.length < HEADER_SIZE + LENGTH_SIZE) {
+            throw new IllegalStateException("Compressed value is truncated.");
+        }
+        int length = (stored[2] & 0xFF) << 24 | (stored[3] & 0xFF) << 16 | (stored[4] & 0xFF) << 8 | (stored[5] & 0xFF);
+        byte[] raw = new byte[length];
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(stored, HEADER_SIZE + LENGTH_SIZE, stored.length - HEADER_SIZE - LENGTH_SIZE);
+        try {
+            int read = 0;
+            while(read < length && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, read, length - read);
+                if(inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += inflated;
+            }
+            if(read != length) {
+                throw new IllegalStateException("Compressed value is truncated.");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Compressed value is corrupt: " + e.getMessage(), e);
+        }
+        return raw;
+    }
+}
@@ -1,10 +1,18 @@
 package us.drome.cobrasqlib;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
 
 /**
  * The <tt>ColumnDef</tt> class contains all the properties of a column for a database table.
@@ -21,6 +29,12 @@ public class ColumnDef {
     public boolean isAutoincrement = false;
     public boolean isNotNull = false;
     public boolean isUnsigned = false;
+    /**
+     * Whether values of the column are compressed by the engine. Columns of tables created through an engine are
+     * recorded and marked compressed again when the table is discovered, so this only has to be set on the tables of an
+     * existing database before their rows are read.
+     */
+    public boolean isCompressed = false;
     
     /**
      * Initialize a new ColumnDef that establishes the parameters of a column.
@@ -50,6 +64,7 @@ public class ColumnDef {
      * @param size The size of characters/digits this column can hold.
      * @param decimal The amount of decimal places allowed.
      * @param options An array of additional options from the <tt>Option</tt> enum.
+     * @throws IllegalArgumentException If the column is compressed and its type is not a binary type.
      */
     public ColumnDef(String name, Type type, int size, int decimal, Options... options) {
         this.name = name;
@@ -58,7 +73,9 @@ public class ColumnDef {
         this.decimal = decimal;
         
         for (Options opt : options) {
-            if(opt.equals(Options.isAutoincrement)) {
+            if(opt == null) {
+                continue;
+            } else if(opt.equals(Options.isAutoincrement)) {
                 this.isAutoincrement = true;
             } else if(opt.equals(Options.isNotNull)) {
                 this.isNotNull = true;
@@ -66,8 +83,17 @@ public class ColumnDef {
                 this.isPrimary = true;
             } else if(opt.equals(Options.isUnsigned)) {
                 this.isUnsigned = true;
+            } else if(opt.equals(Options.isCompressed)) {
+                this.isCompressed = true;
             }
         }
+        if(isCompressed && !isBinary(type)) {
+            throw new IllegalArgumentException("Compressed column " + name + " must have a binary type such as BLOB, not " + type + ".");
+        }
+    }
+    
+    private static boolean isBinary(Type type) {
+        return type == Type.BLOB || type == Type.BINARY || type == Type.VARBINARY || type == Type.LONGVARBINARY;
     }
     
     /**
@@ -87,21 +113,126 @@ public class ColumnDef {
         
         ResultSet columnQuery = dbMeta.getColumns(null, null, table, "%");
         while(columnQuery.next()) {
-            definitions.add(new ColumnDef(
-                    columnQuery.getString("COLUMN_NAME"),
-                    Type.parseType(columnQuery.getInt("DATA_TYPE")),
-                    columnQuery.getInt("COLUMN_SIZE"),
-                    columnQuery.getInt("DECIMAL_DIGITS"),
-                    columnQuery.getString("IS_AUTOINCREMENT").equals("YES") ? Options.isAutoincrement : null,
-                    columnQuery.getString("IS_NULLABLE").equalsIgnoreCase("NO") ? Options.isNotNull : null,
-                    (pKeys.contains(columnQuery.getString("COLUMN_NAME")) ? Options.isPrimary : null),
-                    columnQuery.getString("TYPE_NAME").toLowerCase().contains("unsigned") ? Options.isUnsigned : null
-            ));
+            definitions.add(fromMetadata(columnQuery, pKeys));
         }
         
         return definitions.toArray(new ColumnDef[definitions.size()]);
     }
     
+    /**
+     * A protected method to generate the column definitions of every table in the database with a single metadata query.
+     * Primary keys are not included, as they can only be retrieved one table at a time.
+     * @param dbMeta The metadata object retrieved from the database.
+     * @return A map of table names to the definitions of their columns, in column order.
+     * @throws SQLException
+     */
+    protected static Map<String, ColumnDef[]> generateAllDefs(DatabaseMetaData dbMeta) throws SQLException {
+        Map<String, List<ColumnDef>> definitions = new LinkedHashMap<>();
+        ResultSet columnQuery = dbMeta.getColumns(null, null, "%", "%");
+        while(columnQuery.next()) {
+            String table = columnQuery.getString("TABLE_NAME");
+            if(!definitions.containsKey(table)) {
+                definitions.put(table, new ArrayList<ColumnDef>());
+            }
+            definitions.get(table).add(fromMetadata(columnQuery, Collections.<String>emptyList()));
+        }
+        
+        Map<String, ColumnDef[]> result = new LinkedHashMap<>();
+        for(Map.Entry<String, List<ColumnDef>> entry : definitions.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().toArray(new ColumnDef[entry.getValue().size()]));
+        }
+        return result;
+    }
+    
+    private static ColumnDef fromMetadata(ResultSet columnQuery, List<String> pKeys) throws SQLException {
+        return new ColumnDef(
+                columnQuery.getString("COLUMN_NAME"),
+                Type.parseType(columnQuery.getInt("DATA_TYPE")),
+                columnQuery.getInt("COLUMN_SIZE"),
+                columnQuery.getInt("DECIMAL_DIGITS"),
+                "YES".equals(columnQuery.getString("IS_AUTOINCREMENT")) ? Options.isAutoincrement : null,
+                "NO".equalsIgnoreCase(columnQuery.getString("IS_NULLABLE")) ? Options.isNotNull : null,
+                (pKeys.contains(columnQuery.getString("COLUMN_NAME")) ? Options.isPrimary : null),
+                columnQuery.getString("TYPE_NAME").toLowerCase().contains("unsigned") ? Options.isUnsigned : null
+        );
+    }
+    
+    /**
+     * @return A new definition with the same properties as this one.
+     */
+    protected ColumnDef copy() {
+        ColumnDef def = new ColumnDef(name, type, size, decimal);
+        def.isPrimary = isPrimary;
+        def.isAutoincrement = isAutoincrement;
+        def.isNotNull = isNotNull;
+        def.isUnsigned = isUnsigned;
+        def.isCompressed = isCompressed;
+        return def;
+    }
+    
+    /**
+     * Writes this definition in a compact binary form that can be read back with <tt>readFrom</tt>.
+     * @param out The output to write to.
+     * @throws IOException
+     */
+    protected void writeTo(DataOutput out) throws IOException {
+        out.writeUTF(name);
+        out.writeUTF(type == null ? "" : type.name());
+        out.writeInt(size);
+        out.writeInt(decimal);
+        out.writeByte(flags());
+    }
+    
+    /**
+     * Reads a definition previously written with <tt>writeTo</tt>.
+     * @param in The input to read from.
+     * @return The definition that was read.
+     * @throws IOException
+     */
+    protected static ColumnDef readFrom(DataInput in) throws IOException {
+        String name = in.readUTF();
+        String type = in.readUTF();
+        ColumnDef def = new ColumnDef(name, type.isEmpty() ? null : Type.valueOf(type), in.readInt(), in.readInt());
+        int flags = in.readByte();
+        def.isPrimary = (flags & 1) != 0;
+        def.isAutoincrement = (flags & 2) != 0;
+        def.isNotNull = (flags & 4) != 0;
+        def.isUnsigned = (flags & 8) != 0;
+        def.isCompressed = (flags & 16) != 0;
+        return def;
+    }
+    
+    private int flags() {
+        return (isPrimary ? 1 : 0) | (isAutoincrement ? 2 : 0) | (isNotNull ? 4 : 0) | (isUnsigned ? 8 : 0) | (isCompressed ? 16 : 0);
+    }
+    
+    /**
+     * Computes a checksum of the structure of the provided column definitions that can be used to detect schema changes.
+     * The compression flag is never part of the checksum, as it is not stored in the database.
+     * @param definitions The column definitions of a table, in column order.
+     * @param includeKeys Whether the primary key flags take part in the checksum.
+     * @return The checksum of the definitions.
+     */
+    protected static long checksum(ColumnDef[] definitions, boolean includeKeys) {
+        CRC32 crc = new CRC32();
+        for(ColumnDef def : definitions) {
+            crc.update(def.name.toLowerCase().getBytes(StandardCharsets.UTF_8));
+            update(crc, def.type == null ? -1 : def.type.ordinal());
+            update(crc, def.size);
+            update(crc, def.decimal);
+            int flags = def.flags() & ~16;
+            update(crc, includeKeys ? flags : flags & ~1);
+        }
+        return crc.getValue();
+    }
+    
+    private static void update(CRC32 crc, int value) {
+        crc.update(value >>> 24);
+        crc.update(value >>> 16);
+        crc.update(value >>> 8);
+        crc.update(value);
+    }
+    
     /**
      * Function returns the Java class that data from a column with this definition can be cast to.
      * If there are multiple possible return types, the conditions are checked and
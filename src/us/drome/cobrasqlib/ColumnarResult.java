@@ -0,0 +1,462 @@
+package us.drome.cobrasqlib;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A query result stored column by column in primitive arrays, intended for large analytical scans where a
+ * <tt>List&lt;Row&gt;</tt> would be many times the size of the data.
+ *
+ * Each column is stored according to its <tt>Type</tt>: integer types as <tt>int[]</tt> or <tt>long[]</tt>,
+ * floating point and decimal types as <tt>double[]</tt>, character types dictionary encoded as <tt>int[]</tt>
+ * codes, and anything else as objects. Values are kept in chunks of <tt>CHUNK_SIZE</tt> rows with a null bitmap
+ * per chunk, and aggregations over several chunks are computed in parallel.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class ColumnarResult {
+    /**
+     * The amount of rows stored in each chunk of a column.
+     */
+    public static final int CHUNK_SIZE = 4096;
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+
+    private final Vector[] vectors;
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private int rowCount = 0;
+
+    /**
+     * Protected constructor that reads every remaining row of a <tt>ResultSet</tt> into columnar storage.
+     * @param result The <tt>ResultSet</tt> to read.
+     * @throws SQLException
+     */
+    protected ColumnarResult(ResultSet result) throws SQLException {
+        ResultSetMetaData meta = result.getMetaData();
+        vectors = new Vector[meta.getColumnCount()];
+        for(int i = 0; i < vectors.length; i++) {
+            String name = meta.getColumnLabel(i + 1);
+            vectors[i] = Vector.create(name, Type.parseType(meta.getColumnType(i + 1)), meta.isSigned(i + 1));
+            indexes.put(name.toLowerCase(), i);
+        }
+        while(result.next()) {
+            if(rowCount % CHUNK_SIZE == 0) {
+                for(Vector vector : vectors) {
+                    vector.addChunk();
+                }
+            }
+            int offset = rowCount % CHUNK_SIZE;
+            for(int i = 0; i < vectors.length; i++) {
+                vectors[i].read(result, i + 1, offset);
+            }
+            rowCount++;
+        }
+    }
+
+    /**
+     * @return The amount of rows in this result.
+     */
+    public int getRowCount() { return rowCount; }
+
+    /**
+     * @return The amount of columns in this result.
+     */
+    public int getColumnCount() { return vectors.length; }
+
+    /**
+     * @param column The index of the column, starting at 0.
+     * @return The name of the column.
+     */
+    public String getColumnName(int column) { return vectors[column].name; }
+
+    /**
+     * @param column The index of the column, starting at 0.
+     * @return The <tt>Type</tt> of the column, or <tt>null</tt> if the type is unknown.
+     */
+    public Type getType(int column) { return vectors[column].type; }
+
+    /**
+     * @param name The name of the column.
+     * @return The index of the column, starting at 0.
+     * @throws IllegalArgumentException If there is no column with the name.
+     */
+    public int indexOf(String name) {
+        Integer index = indexes.get(name.toLowerCase());
+        if(index == null) {
+            throw new IllegalArgumentException("No column named " + name + " in result.");
+        }
+        return index;
+    }
+
+    /**
+     * @param column The index of the column.
+     * @param row The index of the row.
+     * @return true if the value is SQL NULL.
+     */
+    public boolean isNull(int column, int row) {
+        return vectors[column].nulls.get(row / CHUNK_SIZE).get(row % CHUNK_SIZE);
+    }
+
+    /**
+     * @param column The index of a numeric column.
+     * @param row The index of the row.
+     * @return The value as a <tt>long</tt>, or 0 if it is NULL.
+     */
+    public long getLong(int column, int row) { return numeric(column).longAt(row / CHUNK_SIZE, row % CHUNK_SIZE); }
+
+    /**
+     * @param column The index of a numeric column.
+     * @param row The index of the row.
+     * @return The value as a <tt>double</tt>, or 0 if it is NULL.
+     */
+    public double getDouble(int column, int row) { return numeric(column).valueAt(row / CHUNK_SIZE, row % CHUNK_SIZE); }
+
+    /**
+     * @param column The index of the column.
+     * @param row The index of the row.
+     * @return The value as an <tt>Object</tt>, or <tt>null</tt> if it is NULL.
+     */
+    public Object getObject(int column, int row) {
+        return isNull(column, row) ? null : vectors[column].objectAt(row / CHUNK_SIZE, row % CHUNK_SIZE);
+    }
+
+    /**
+     * Selects every row where a numeric column is not NULL and matches a filter.
+     * @param column The name of a numeric column.
+     * @param filter The filter to test values with.
+     * @return A <tt>BitSet</tt> with a bit set for every matching row index.
+     */
+    public BitSet filter(String column, DoubleFilter filter) {
+        NumericVector vector = numeric(indexOf(column));
+        BitSet selection = new BitSet(rowCount);
+        for(int row = 0; row < rowCount; row++) {
+            int chunk = row / CHUNK_SIZE, offset = row % CHUNK_SIZE;
+            if(!vector.nulls.get(chunk).get(offset) && filter.accept(vector.valueAt(chunk, offset))) {
+                selection.set(row);
+            }
+        }
+        return selection;
+    }
+
+    /**
+     * @param column The name of a numeric column.
+     * @return The sum of all non-NULL values in the column.
+     */
+    public double sum(String column) { return stats(column, null).sum; }
+
+    /**
+     * @param column The name of a numeric column.
+     * @param selection The rows to include, as returned by <tt>filter</tt>.
+     * @return The sum of the selected non-NULL values in the column.
+     */
+    public double sum(String column, BitSet selection) { return stats(column, selection).sum; }
+
+    /**
+     * @param column The name of a numeric column.
+     * @return The smallest non-NULL value in the column, or <tt>NaN</tt> if there is none.
+     */
+    public double min(String column) { return stats(column, null).min(); }
+
+    /**
+     * @param column The name of a numeric column.
+     * @param selection The rows to include, as returned by <tt>filter</tt>.
+     * @return The smallest selected non-NULL value in the column, or <tt>NaN</tt> if there is none.
+     */
+    public double min(String column, BitSet selection) { return stats(column, selection).min(); }
+
+    /**
+     * @param column The name of a numeric column.
+     * @return The largest non-NULL value in the column, or <tt>NaN</tt> if there is none.
+     */
+    public double max(String column) { return stats(column, null).max(); }
+
+    /**
+     * @param column The name of a numeric column.
+     * @param selection The rows to include, as returned by <tt>filter</tt>.
+     * @return The largest selected non-NULL value in the column, or <tt>NaN</tt> if there is none.
+     */
+    public double max(String column, BitSet selection) { return stats(column, selection).max(); }
+
+    /**
+     * @param column The name of a numeric column.
+     * @return The average of all non-NULL values in the column, or <tt>NaN</tt> if there are none.
+     */
+    public double avg(String column) {
+        Stats stats = stats(column, null);
+        return stats.count == 0 ? Double.NaN : stats.sum / stats.count;
+    }
+
+    /**
+     * @param column The name of a numeric column.
+     * @return The amount of non-NULL values in the column.
+     */
+    public long count(String column) { return stats(column, null).count; }
+
+    private Stats stats(String column, BitSet selection) {
+        NumericVector vector = numeric(indexOf(column));
+        return POOL.invoke(new StatsTask(vector, selection, 0, vector.nulls.size()));
+    }
+
+    private NumericVector numeric(int column) {
+        if(!(vectors[column] instanceof NumericVector)) {
+            throw new IllegalArgumentException("Column " + vectors[column].name + " is not numeric.");
+        }
+        return (NumericVector)vectors[column];
+    }
+
+    /**
+     * A test applied to the values of a numeric column by <tt>filter</tt>.
+     */
+    public interface DoubleFilter {
+        boolean accept(double value);
+    }
+
+    private class StatsTask extends RecursiveTask<Stats> {
+        private static final long serialVersionUID = 1L;
+        private final NumericVector vector;
+        private final BitSet selection;
+        private final int from;
+        private final int to;
+
+        private StatsTask(NumericVector vector, BitSet selection, int from, int to) {
+            this.vector = vector;
+            this.selection = selection;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Stats compute() {
+            if(to - from <= 1) {
+                Stats stats = new Stats();
+                for(int chunk = from; chunk < to; chunk++) {
+                    int rows = Math.min(CHUNK_SIZE, rowCount - chunk * CHUNK_SIZE);
+                    vector.accumulate(chunk, rows, selection, chunk * CHUNK_SIZE, stats);
+                }
+                return stats;
+            }
+            int middle = (from + to) >>> 1;
+            StatsTask left = new StatsTask(vector, selection, from, middle);
+            left.fork();
+            Stats right = new StatsTask(vector, selection, middle, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    private static class Stats {
+        private double sum = 0;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private long count = 0;
+
+        private void add(double value) {
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            count++;
+        }
+
+        private Stats merge(Stats other) {
+            sum += other.sum;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            count += other.count;
+            return this;
+        }
+
+        private double min() { return count == 0 ? Double.NaN : min; }
+
+        private double max() { return count == 0 ? Double.NaN : max; }
+    }
+
+    private abstract static class Vector {
+        protected final String name;
+        protected final Type type;
+        protected final List<BitSet> nulls = new ArrayList<>();
+
+        protected Vector(String name, Type type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        private static Vector create(String name, Type type, boolean signed) {
+            if(type == null) {
+                return new ObjectVector(name, null);
+            }
+            switch(type) {
+                case BIT:
+                case BOOLEAN:
+                case TINYINT:
+                case SMALLINT:
+                    return new IntVector(name, type);
+                case INTEGER:
+                    return signed ? new IntVector(name, type) : new LongVector(name, type);
+                case BIGINT:
+                    return new LongVector(name, type);
+                case FLOAT:
+                case REAL:
+                case DOUBLE:
+                case NUMERIC:
+                case DECIMAL:
+                    return new DoubleVector(name, type);
+                case CHAR:
+                case VARCHAR:
+                case LONGVARCHAR:
+                case NCHAR:
+                case NVARCHAR:
+                case LONGNVARCHAR:
+                    return new StringVector(name, type);
+                default:
+                    return new ObjectVector(name, type);
+            }
+        }
+
+        protected void addChunk() { nulls.add(new BitSet(CHUNK_SIZE)); }
+
+        protected abstract void read(ResultSet result, int column, int offset) throws SQLException;
+
+        protected abstract Object objectAt(int chunk, int offset);
+    }
+
+    private abstract static class NumericVector extends Vector {
+        protected NumericVector(String name, Type type) {
+            super(name, type);
+        }
+
+        protected abstract double valueAt(int chunk, int offset);
+
+        protected long longAt(int chunk, int offset) { return (long)valueAt(chunk, offset); }
+
+        protected void accumulate(int chunk, int rows, BitSet selection, int base, Stats stats) {
+            BitSet chunkNulls = nulls.get(chunk);
+            for(int offset = 0; offset < rows; offset++) {
+                if(!chunkNulls.get(offset) && (selection == null || selection.get(base + offset))) {
+                    stats.add(valueAt(chunk, offset));
+                }
+            }
+        }
+    }
+
+    private static class IntVector extends NumericVector {
+        private final List<int[]> chunks = new ArrayList<>();
+
+        private IntVector(String name, Type type) { super(name, type); }
+
+        @Override
+        protected void addChunk() { super.addChunk(); chunks.add(new int[CHUNK_SIZE]); }
+
+        @Override
+        protected void read(ResultSet result, int column, int offset) throws SQLException {
+            chunks.get(chunks.size() - 1)[offset] = result.getInt(column);
+            if(result.wasNull()) { nulls.get(nulls.size() - 1).set(offset); }
+        }
+
+        @Override
+        protected double valueAt(int chunk, int offset) { return chunks.get(chunk)[offset]; }
+
+        @Override
+        protected Object objectAt(int chunk, int offset) { return chunks.get(chunk)[offset]; }
+    }
+
+    private static class LongVector extends NumericVector {
+        private final List<long[]> chunks = new ArrayList<>();
+
+        private LongVector(String name, Type type) { super(name, type); }
+
+        @Override
+        protected void addChunk() { super.addChunk(); chunks.add(new long[CHUNK_SIZE]); }
+
+        @Override
+        protected void read(ResultSet result, int column, int offset) throws SQLException {
+            chunks.get(chunks.size() - 1)[offset] = result.getLong(column);
+            if(result.wasNull()) { nulls.get(nulls.size() - 1).set(offset); }
+        }
+
+        @Override
+        protected double valueAt(int chunk, int offset) { return chunks.get(chunk)[offset]; }
+
+        @Override
+        protected long longAt(int chunk, int offset) { return chunks.get(chunk)[offset]; }
+
+        @Override
+        protected Object objectAt(int chunk, int offset) { return chunks.get(chunk)[offset]; }
+    }
+
+    private static class DoubleVector extends NumericVector {
+        private final List<double[]> chunks = new ArrayList<>();
+
+        private DoubleVector(String name, Type type) { super(name, type); }
+
+        @Override
+        protected void addChunk() { super.addChunk(); chunks.add(new double[CHUNK_SIZE]); }
+
+        @Override
+        protected void read(ResultSet result, int column, int offset) throws SQLException {
+            chunks.get(chunks.size() - 1)[offset] = result.getDouble(column);
+            if(result.wasNull()) { nulls.get(nulls.size() - 1).set(offset); }
+        }
+
+        @Override
+        protected double valueAt(int chunk, int offset) { return chunks.get(chunk)[offset]; }
+
+        @Override
+        protected Object objectAt(int chunk, int offset) { return chunks.get(chunk)[offset]; }
+    }
+
+    private static class StringVector extends Vector {
+        private final List<int[]> chunks = new ArrayList<>();
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> dictionary = new ArrayList<>();
+
+        private StringVector(String name, Type type) { super(name, type); }
+
+        @Override
+        protected void addChunk() { super.addChunk(); chunks.add(new int[CHUNK_SIZE]); }
+
+        @Override
+        protected void read(ResultSet result, int column, int offset) throws SQLException {
+            String value = result.getString(column);
+            if(value == null) {
+                nulls.get(nulls.size() - 1).set(offset);
+                return;
+            }
+            Integer code = codes.get(value);
+            if(code == null) {
+                code = dictionary.size();
+                codes.put(value, code);
+                dictionary.add(value);
+            }
+            chunks.get(chunks.size() - 1)[offset] = code;
+        }
+
+        @Override
+        protected Object objectAt(int chunk, int offset) { return dictionary.get(chunks.get(chunk)[offset]); }
+    }
+
+    private static class ObjectVector extends Vector {
+        private final List<Object[]> chunks = new ArrayList<>();
+
+        private ObjectVector(String name, Type type) { super(name, type); }
+
+        @Override
+        protected void addChunk() { super.addChunk(); chunks.add(new Object[CHUNK_SIZE]); }
+
+        @Override
+        protected void read(ResultSet result, int column, int offset) throws SQLException {
+            Object value = result.getObject(column);
+            chunks.get(chunks.size() - 1)[offset] = value;
+            if(value == null) { nulls.get(nulls.size() - 1).set(offset); }
+        }
+
+        @Override
+        protected Object objectAt(int chunk, int offset) { return chunks.get(chunk)[offset]; }
+    }
+}
@@ -0,0 +1,30 @@
+package us.drome.cobrasqlib;
+
+/**
+ * Decides on which thread the results of asynchronous operations are delivered to their <tt>Callback</tt>s, set with
+ * <tt>SQLEngine.setDeliveryScheduler</tt>. By default callbacks are invoked directly on the engine's query executor.
+ *
+ * Hosts that require callbacks to run on their own thread, such as a game server's main thread, can use a
+ * <tt>TickDeliveryScheduler</tt> and drain it once per tick.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public interface DeliveryScheduler {
+    /**
+     * Invokes every delivery immediately on the thread that completed the operation.
+     */
+    DeliveryScheduler DIRECT = new DeliveryScheduler() {
+        @Override
+        public void schedule(Runnable delivery, Priority priority) {
+            delivery.run();
+        }
+    };
+
+    /**
+     * Schedules the delivery of a result. Called on the thread that completed the operation, so it must not block.
+     * @param delivery Invokes the callback when run.
+     * @param priority The priority of the operation the result belongs to.
+     */
+    void schedule(Runnable delivery, Priority priority);
+}
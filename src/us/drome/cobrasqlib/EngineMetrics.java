@@ -0,0 +1,195 @@
+package us.drome.cobrasqlib;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters describing the runtime behavior of a <tt>SQLEngine</tt>. All counters are cumulative from the
+ * creation of the engine and can be read from any thread.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class EngineMetrics {
+    private static final int WAIT_BUCKETS = 64;
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong connectionsDiscarded = new AtomicLong();
+    private final AtomicLong validations = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong validationNanos = new AtomicLong();
+    private final AtomicLongArray queueWaits = new AtomicLongArray(Priority.values().length);
+    private final AtomicLongArray queueWaitNanos = new AtomicLongArray(Priority.values().length);
+    private final AtomicLongArray maxQueueWaitNanos = new AtomicLongArray(Priority.values().length);
+    /**
+     * A histogram of queue wait times per priority, where bucket <tt>n</tt> counts waits shorter than 2^n nanoseconds.
+     */
+    private final AtomicLongArray queueWaitHistogram = new AtomicLongArray(Priority.values().length * WAIT_BUCKETS);
+    private final AtomicLong compressions = new AtomicLong();
+    private final AtomicLong compressionInputBytes = new AtomicLong();
+    private final AtomicLong compressionOutputBytes = new AtomicLong();
+    private final AtomicLong compressionNanos = new AtomicLong();
+    private final AtomicLong decompressions = new AtomicLong();
+    private final AtomicLong decompressionNanos = new AtomicLong();
+
+    /**
+     * Protected constructor to initialize a new set of <tt>EngineMetrics</tt>.
+     */
+    protected EngineMetrics() { }
+
+    protected void connectionOpened() { connectionsOpened.incrementAndGet(); }
+
+    protected void connectionDiscarded() { connectionsDiscarded.incrementAndGet(); }
+
+    protected void validated(boolean valid, long nanos) {
+        validations.incrementAndGet();
+        validationNanos.addAndGet(nanos);
+        if(!valid) {
+            validationFailures.incrementAndGet();
+        }
+    }
+
+    protected void queueWait(Priority priority, long nanos) {
+        int index = priority.ordinal();
+        queueWaits.incrementAndGet(index);
+        queueWaitNanos.addAndGet(index, nanos);
+        long max;
+        while(nanos > (max = maxQueueWaitNanos.get(index)) && !maxQueueWaitNanos.compareAndSet(index, max, nanos)) { }
+        int bucket = Math.min(WAIT_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+        queueWaitHistogram.incrementAndGet(index * WAIT_BUCKETS + bucket);
+    }
+
+    protected void compressed(long inputBytes, long outputBytes, long nanos) {
+        compressions.incrementAndGet();
+        compressionInputBytes.addAndGet(inputBytes);
+        compressionOutputBytes.addAndGet(outputBytes);
+        compressionNanos.addAndGet(nanos);
+    }
+
+    protected void decompressed(long nanos) {
+        decompressions.incrementAndGet();
+        decompressionNanos.addAndGet(nanos);
+    }
+
+    /**
+     * @return The amount of shared connections opened to the database.
+     */
+    public long getConnectionsOpened() { return connectionsOpened.get(); }
+
+    /**
+     * @return The amount of shared connections that were discarded after failing validation or a connection error.
+     */
+    public long getConnectionsDiscarded() { return connectionsDiscarded.get(); }
+
+    /**
+     * @return The amount of connection validations performed.
+     */
+    public long getValidations() { return validations.get(); }
+
+    /**
+     * @return The amount of connection validations that found the connection broken.
+     */
+    public long getValidationFailures() { return validationFailures.get(); }
+
+    /**
+     * @return The total time spent validating connections in nanoseconds.
+     */
+    public long getValidationNanos() { return validationNanos.get(); }
+
+    /**
+     * @return The average time of a connection validation in nanoseconds, or 0 if none were performed.
+     */
+    public long getAverageValidationNanos() {
+        long count = validations.get();
+        return count == 0 ? 0 : validationNanos.get() / count;
+    }
+
+    /**
+     * @param priority The priority class.
+     * @return The amount of asynchronous operations of the priority that have started.
+     */
+    public long getQueueWaits(Priority priority) { return queueWaits.get(priority.ordinal()); }
+
+    /**
+     * @param priority The priority class.
+     * @return The total time operations of the priority spent queued before starting, in nanoseconds.
+     */
+    public long getQueueWaitNanos(Priority priority) { return queueWaitNanos.get(priority.ordinal()); }
+
+    /**
+     * @param priority The priority class.
+     * @return The longest time an operation of the priority spent queued before starting, in nanoseconds.
+     */
+    public long getMaxQueueWaitNanos(Priority priority) { return maxQueueWaitNanos.get(priority.ordinal()); }
+
+    /**
+     * @param priority The priority class.
+     * @return The average time operations of the priority spent queued before starting in nanoseconds, or 0 if none have started.
+     */
+    public long getAverageQueueWaitNanos(Priority priority) {
+        long count = getQueueWaits(priority);
+        return count == 0 ? 0 : getQueueWaitNanos(priority) / count;
+    }
+
+    /**
+     * Estimates a percentile of the time operations of a priority spent queued. The estimate is the upper bound of a
+     * power of two bucket, so it is at most twice the actual value.
+     * @param priority The priority class.
+     * @param percentile The percentile between 0 and 1, such as 0.99.
+     * @return The estimated queue wait in nanoseconds, or 0 if no operations of the priority have started.
+     */
+    public long getQueueWaitPercentile(Priority priority, double percentile) {
+        long[] counts = new long[WAIT_BUCKETS];
+        long total = 0;
+        for(int i = 0; i < WAIT_BUCKETS; i++) {
+            counts[i] = queueWaitHistogram.get(priority.ordinal() * WAIT_BUCKETS + i);
+            total += counts[i];
+        }
+        long target = (long)Math.ceil(total * percentile);
+        long seen = 0;
+        for(int i = 0; i < WAIT_BUCKETS; i++) {
+            seen += counts[i];
+            if(seen >= target && seen > 0) {
+                return i >= 63 ? Long.MAX_VALUE : 1L << i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return The amount of values written to compressed columns.
+     */
+    public long getCompressions() { return compressions.get(); }
+
+    /**
+     * @return The total size in bytes of the values written to compressed columns, before compression.
+     */
+    public long getCompressionInputBytes() { return compressionInputBytes.get(); }
+
+    /**
+     * @return The total size in bytes of the values written to compressed columns, as stored.
+     */
+    public long getCompressionOutputBytes() { return compressionOutputBytes.get(); }
+
+    /**
+     * @return The ratio of the size of compressed values before compression to their stored size, or 1 if none were compressed.
+     */
+    public double getCompressionRatio() {
+        long output = compressionOutputBytes.get();
+        return output == 0 ? 1 : compressionInputBytes.get() / (double) output;
+    }
+
+    /**
+     * @return The total time spent compressing values in nanoseconds.
+     */
+    public long getCompressionNanos() { return compressionNanos.get(); }
+
+    /**
+     * @return The amount of compressed values read back.
+     */
+    public long getDecompressions() { return decompressions.get(); }
+
+    /**
+     * @return The total time spent decompressing values in nanoseconds.
+     */
+    public long getDecompressionNanos() { return decompressionNanos.get(); }
+}
@@ -0,0 +1,89 @@
+package us.drome.cobrasqlib;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Builds an aggregation of the rows of a <tt>Table</tt> per group of key column values, computed by the database with
+ * <tt>GROUP BY</tt>. Created with <tt>Table.groupBy</tt>.
+ *
+ * <pre>table.groupBy("world").where(new Where().ge("level", 10)).count().avg("level").run()</pre>
+ *
+ * Aggregated columns must be numeric, as the results are kept as <tt>double</tt> values.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class GroupBy {
+    private final Table table;
+    private final String[] keyColumns;
+    private final List<Aggregate> functions = new ArrayList<>();
+    private final List<String> columns = new ArrayList<>();
+    private Where where;
+
+    protected GroupBy(Table table, String... keyColumns) {
+        this.table = table;
+        this.keyColumns = keyColumns;
+    }
+
+    /**
+     * Limits the aggregation to the rows matching a predicate.
+     * @param where The predicate, or <tt>null</tt> for every row.
+     */
+    public GroupBy where(Where where) {
+        this.where = where;
+        return this;
+    }
+
+    /**
+     * Adds an aggregate of a column.
+     * @param function The aggregate function.
+     * @param column The column to aggregate, or <tt>null</tt> to count rows.
+     */
+    public GroupBy aggregate(Aggregate function, String column) {
+        functions.add(function);
+        columns.add(column);
+        return this;
+    }
+
+    /**
+     * Adds the amount of rows in each group.
+     */
+    public GroupBy count() { return aggregate(Aggregate.COUNT, null); }
+
+    public GroupBy sum(String column) { return aggregate(Aggregate.SUM, column); }
+
+    public GroupBy avg(String column) { return aggregate(Aggregate.AVG, column); }
+
+    public GroupBy min(String column) { return aggregate(Aggregate.MIN, column); }
+
+    public GroupBy max(String column) { return aggregate(Aggregate.MAX, column); }
+
+    /**
+     * Runs the aggregation synchronously.
+     * @return The groups and their aggregates.
+     * @throws SQLException
+     */
+    public GroupedResult run() throws SQLException {
+        return table.aggregate(keyColumns, functions.toArray(new Aggregate[0]), columns.toArray(new String[0]), where);
+    }
+
+    /**
+     * Runs the aggregation asynchronously.
+     * @param callback Method to run on completion. Must accept a <tt>GroupedResult</tt> as a parameter.
+     * @return A <tt>QueryHandle</tt> that can be used to cancel the aggregation.
+     */
+    public QueryHandle run(Callback callback) {
+        final Aggregate[] functions = this.functions.toArray(new Aggregate[0]);
+        final String[] columns = this.columns.toArray(new String[0]);
+        final Where where = this.where;
+        return table.parent.queue(table.parent.getDefaultTimeout(), callback, new Callable<Object>() {
+            @Override
+            public Object call() throws SQLException {
+                return table.aggregate(keyColumns, functions, columns, where);
+            }
+        });
+    }
+}
@@ -0,0 +1,113 @@
+package us.drome.cobrasqlib;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of a <tt>GroupBy</tt>, holding the key columns and the aggregates of every group. Aggregates are kept as
+ * one <tt>double[]</tt> per aggregate, with <tt>NaN</tt> standing for NULL, such as the sum of a group without values.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class GroupedResult {
+    private final List<String> keyColumns;
+    private final List<String> aggregates;
+    private final Object[][] keys;
+    private final double[][] values;
+
+    /**
+     * Protected constructor to initialize a new <tt>GroupedResult</tt>.
+     * @param keyColumns The names of the columns the rows were grouped by.
+     * @param aggregates The labels of the aggregates.
+     * @param keys The key of every group, one array per group.
+     * @param values The values of every aggregate, one array per aggregate holding a value per group.
+     */
+    protected GroupedResult(String[] keyColumns, String[] aggregates, Object[][] keys, double[][] values) {
+        this.keyColumns = Collections.unmodifiableList(Arrays.asList(keyColumns));
+        this.aggregates = Collections.unmodifiableList(Arrays.asList(aggregates));
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * @return The amount of groups.
+     */
+    public int getGroupCount() { return keys.length; }
+
+    /**
+     * @return The names of the columns the rows were grouped by.
+     */
+    public List<String> getKeyColumns() { return keyColumns; }
+
+    /**
+     * @return The labels of the aggregates, such as <tt>count</tt> or <tt>sum(price)</tt>, in the order they were added.
+     */
+    public List<String> getAggregates() { return aggregates; }
+
+    /**
+     * @param group The index of the group.
+     * @return The values of the key columns of the group.
+     */
+    public Object[] getKey(int group) { return keys[group].clone(); }
+
+    /**
+     * @param group The index of the group.
+     * @param aggregate The index of the aggregate.
+     * @return The value of the aggregate for the group, or <tt>NaN</tt> if it is NULL.
+     */
+    public double getValue(int group, int aggregate) { return values[aggregate][group]; }
+
+    /**
+     * @param group The index of the group.
+     * @param aggregate The label of the aggregate, such as <tt>count</tt> or <tt>sum(price)</tt>.
+     * @return The value of the aggregate for the group, or <tt>NaN</tt> if it is NULL.
+     * @throws IllegalArgumentException If the result has no such aggregate.
+     */
+    public double getValue(int group, String aggregate) {
+        for(int i = 0; i < aggregates.size(); i++) {
+            if(aggregates.get(i).equalsIgnoreCase(aggregate)) {
+                return values[i][group];
+            }
+        }
+        throw new IllegalArgumentException("No aggregate " + aggregate + " in " + aggregates);
+    }
+
+    /**
+     * @param key The values of the key columns, in order. Numbers match whatever numeric type the driver returned.
+     * @return The index of the group with the provided key, or -1 if there is none.
+     */
+    public int find(Object... key) {
+        for(int i = 0; i < keys.length; i++) {
+            if(matches(keys[i], key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if two group keys are equal, comparing numbers by value.
+     */
+    protected static boolean matches(Object[] a, Object[] b) {
+        if(a.length != b.length) {
+            return false;
+        }
+        for(int i = 0; i < a.length; i++) {
+            if(a[i] instanceof Number && b[i] instanceof Number) {
+                if(((Number) a[i]).doubleValue() != ((Number) b[i]).doubleValue()) {
+                    return false;
+                }
+            } else if(a[i] == null ? b[i] != null : !a[i].equals(b[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "GroupedResult[keyColumns=" + keyColumns + ", aggregates=" + aggregates + ", groups=" + keys.length + "]";
+    }
+}
@@ -0,0 +1,302 @@
+package us.drome.cobrasqlib;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Represents a SQLite database held in memory, for tests and for data that does not need to outlive the process, such as
+ * sessions. It supports the same tables and queries as a <tt>SQLiteEngine</tt> without touching the disk.
+ *
+ * The database can be loaded from a SQLite file and written back to its snapshot file on an interval, both through the
+ * online backup of the SQLite driver. Snapshots are written to a temporary file that replaces the snapshot once complete,
+ * so a crash never leaves a partial snapshot behind. A snapshot is also written when the connection is closed, and the
+ * snapshot is restored when the database is opened again. Snapshots and restores run on the query executor, so they
+ * never interleave with a statement.
+ *
+ * The SQLite driver cannot share an in-memory database between connections, so every statement runs on the shared
+ * connection, which is only closed when the engine is. Features that need a dedicated connection, such as
+ * <tt>SQLEngine.publish</tt>, <tt>SQLEngine.queryColumnar</tt>, <tt>Table.pages</tt>, <tt>Table.exportTo</tt>,
+ * <tt>Table.importFrom</tt>, large values and <tt>Migration</tt>, throw an <tt>UnsupportedOperationException</tt>.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class InMemorySQLiteEngine extends SQLiteEngine {
+    private final boolean persistent;
+    private ScheduledFuture<?> snapshots;
+    // Only read and written while holding the lock of this engine.
+    private boolean sharing = false;
+
+    /**
+     * Construct a new <tt>InMemorySQLiteEngine</tt> that is never written to disk.
+     *
+     * @param logger a <tt>Logger</tt> instance for sending output.
+     * @throws InvalidSQLConfigException
+     */
+    public InMemorySQLiteEngine(Logger logger) throws InvalidSQLConfigException {
+        super(logger, ":memory:");
+        this.persistent = false;
+    }
+
+    /**
+     * Construct a new <tt>InMemorySQLiteEngine</tt> that is restored from and snapshotted to a file.
+     *
+     * @param logger a <tt>Logger</tt> instance for sending output.
+     * @param file a <tt>String</tt> containing the path to the snapshot file, which does not need to exist yet.
+     * @throws InvalidSQLConfigException
+     */
+    public InMemorySQLiteEngine(Logger logger, String file) throws InvalidSQLConfigException {
+        super(logger, file);
+        this.persistent = true;
+    }
+
+    /**
+     * Retrieve the <tt>File</tt> instance containing the location of the snapshot file.
+     *
+     * @return a <tt>File</tt> object containing the location of the snapshot file, or <tt>null</tt> if the database is never
+     * written to disk.
+     */
+    @Override
+    public File getFile() {
+        return persistent ? super.getFile() : null;
+    }
+
+    @Override
+    public String getUrl() {
+        return "jdbc:sqlite::memory:";
+    }
+
+    @Override
+    public synchronized Connection getConnection() {
+        sharing = true;
+        try {
+            return super.getConnection();
+        } finally {
+            sharing = false;
+        }
+    }
+
+    /**
+     * Opens the in-memory database and restores the snapshot file into it if it exists. The database only exists while
+     * its connection is open.
+     * @throws UnsupportedOperationException If a dedicated connection is requested, since it would open a separate,
+     * empty database.
+     */
+    @Override
+    protected synchronized Connection openConnection() throws SQLException {
+        if(!sharing) {
+            throw new UnsupportedOperationException("An in-memory database can only be used through its shared connection.");
+        }
+        Connection conn = super.openConnection();
+        File file = getFile();
+        if(file != null && file.exists()) {
+            try (Statement statement = conn.createStatement()) {
+                statement.executeUpdate("restore from \"" + file.getPath() + "\"");
+            } catch (SQLException e) {
+                conn.close();
+                throw e;
+            }
+        }
+        return conn;
+    }
+
+    /**
+     * Keeps the connection open unless it is already closed, since closing it drops the database. If there is a snapshot
+     * file, a snapshot is written first and restored when the connection is opened again.
+     */
+    @Override
+    protected void discardConnection() {
+        File file = getFile();
+        try {
+            if(connection != null && !connection.isClosed()) {
+                if(file == null) {
+                    return;
+                }
+                backup(connection, file);
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Unable to write snapshot " + file.getPath() + ", keeping the connection: " + e.getMessage());
+            return;
+        }
+        super.discardConnection();
+    }
+
+    /**
+     * Not supported, since every subscription would need a dedicated connection.
+     * @throws UnsupportedOperationException Always.
+     */
+    @Override
+    public RowPublisher publish(String query, Object... params) {
+        throw new UnsupportedOperationException("An in-memory database cannot stream results, use runQuery instead.");
+    }
+
+    /**
+     * Not supported, since the query would need a dedicated connection.
+     * @throws UnsupportedOperationException Always.
+     */
+    @Override
+    public ColumnarResult queryColumnar(String query, Object... params) throws SQLException {
+        throw new UnsupportedOperationException("An in-memory database cannot run columnar queries, use runQuery instead.");
+    }
+
+    /**
+     * Large values are always loaded, since they could only be read later on a dedicated connection.
+     * @throws UnsupportedOperationException If <tt>bytes</tt> is not -1.
+     */
+    @Override
+    public void setLargeValueThreshold(long bytes) {
+        if(bytes >= 0) {
+            throw new UnsupportedOperationException("An in-memory database always loads large values.");
+        }
+        super.setLargeValueThreshold(bytes);
+    }
+
+    /**
+     * Replaces the contents of the in-memory database with the contents of a SQLite file, such as the file of a
+     * <tt>SQLiteEngine</tt>. Known tables are forgotten and discovered again on their next use.
+     *
+     * @param file The SQLite file to load.
+     * @throws SQLException If the file cannot be read.
+     */
+    public void restoreFrom(final File file) throws SQLException {
+        onExecutor(Priority.INTERACTIVE, 0, new Callable<Object>() {
+            @Override
+            public Object call() throws SQLException {
+                Connection conn = getConnection();
+                if(conn == null) {
+                    throw new SQLException("No connection to the database.");
+                }
+                try (Statement statement = conn.createStatement()) {
+                    statement.executeUpdate("restore from \"" + file.getPath() + "\"");
+                }
+                tables.clear();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Writes the contents of the in-memory database to a SQLite file, replacing the file once the copy is complete.
+     *
+     * @param file The file to write the snapshot to.
+     * @throws SQLException If the snapshot cannot be written.
+     */
+    public void snapshotTo(final File file) throws SQLException {
+        onExecutor(Priority.INTERACTIVE, 0, new Callable<Object>() {
+            @Override
+            public Object call() throws SQLException {
+                Connection conn = getConnection();
+                if(conn == null) {
+                    throw new SQLException("No connection to the database.");
+                }
+                backup(conn, file);
+                return null;
+            }
+        });
+    }
+
+    private void backup(Connection conn, File file) throws SQLException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (Statement statement = conn.createStatement()) {
+            statement.executeUpdate("backup to \"" + temp.getPath() + "\"");
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new SQLException("Unable to replace snapshot " + file.getPath(), e);
+        }
+    }
+
+    /**
+     * Queues a snapshot of the in-memory database to its snapshot file. Statements queued before it are included.
+     *
+     * @param callback The callback to pass the snapshot <tt>File</tt> to once written, or <tt>null</tt> if there is none.
+     * @return A <tt>QueryHandle</tt> that can be used to cancel the snapshot before it starts.
+     * @throws IllegalStateException If the database has no snapshot file.
+     */
+    public QueryHandle snapshot(Callback callback) {
+        final File file = getFile();
+        if(file == null) {
+            throw new IllegalStateException("This in-memory database has no snapshot file.");
+        }
+        return queue(getDefaultTimeout(), callback, new Callable<Object>() {
+            @Override
+            public Object call() throws SQLException {
+                snapshotTo(file);
+                return file;
+            }
+        });
+    }
+
+    /**
+     * Writes a snapshot to the snapshot file on an interval. Snapshots run at background priority on the query executor,
+     * so they never interleave with a statement and only wait behind the statements queued before them.
+     *
+     * @param intervalMillis The interval between snapshots in milliseconds, or 0 to stop writing snapshots.
+     * @throws IllegalStateException If the database has no snapshot file.
+     */
+    public synchronized void snapshotEvery(long intervalMillis) {
+        final File file = getFile();
+        if(file == null) {
+            throw new IllegalStateException("This in-memory database has no snapshot file.");
+        }
+        if(snapshots != null) {
+            snapshots.cancel(false);
+            snapshots = null;
+        }
+        if(intervalMillis <= 0) {
+            return;
+        }
+        snapshots = getScheduler().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                getExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            snapshotTo(file);
+                        } catch (SQLException e) {
+                            logger.log(Level.WARNING, "Unable to write snapshot " + file.getPath() + ": " + e.getMessage());
+                        }
+                    }
+                }, Priority.BACKGROUND, null);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes a last snapshot to the snapshot file, if there is one, before closing the connection and with it the database.
+     */
+    @Override
+    public void closeConnection() {
+        final File file = getFile();
+        if(file != null) {
+            try {
+                onExecutor(Priority.INTERACTIVE, 0, new Callable<Object>() {
+                    @Override
+                    public Object call() throws SQLException {
+                        synchronized(InMemorySQLiteEngine.this) {
+                            if(connection != null && !connection.isClosed()) {
+                                backup(connection, file);
+                            }
+                        }
+                        return null;
+                    }
+                });
+            } catch (SQLException e) {
+                logger.log(Level.SEVERE, "Unable to write snapshot " + file.getPath() + ": " + e.getMessage());
+            }
+        }
+        super.closeConnection();
+    }
+}
@@ -0,0 +1,105 @@
+package us.drome.cobrasqlib;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The <tt>IndexDef</tt> class contains all the properties of a secondary index of a database table.
+ *
+ * An index covers one or more columns in order, may require the combination of its column values to be unique, and
+ * may be partial, covering only the rows that match a condition. Partial indexes are supported by SQLite 3.8.0 and later
+ * but not by MySQL.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class IndexDef {
+    public String name;
+    public List<String> columns;
+    public boolean isUnique = false;
+    public String where;
+
+    /**
+     * Initialize a new IndexDef over one or more columns.
+     * @param name The index's name, which must be unique within the database on SQLite.
+     * @param columns The names of the indexed columns, in order.
+     */
+    public IndexDef(String name, String... columns) {
+        this(name, false, columns);
+    }
+
+    /**
+     * Initialize a new IndexDef over one or more columns.
+     * @param name The index's name, which must be unique within the database on SQLite.
+     * @param isUnique Whether no two rows may have the same values in the indexed columns.
+     * @param columns The names of the indexed columns, in order.
+     */
+    public IndexDef(String name, boolean isUnique, String... columns) {
+        if(columns.length == 0) {
+            throw new IllegalArgumentException("Index " + name + " must cover at least one column.");
+        }
+        this.name = name;
+        this.isUnique = isUnique;
+        this.columns = new ArrayList<>(Arrays.asList(columns));
+    }
+
+    /**
+     * Makes this a partial index that only covers the rows that match a condition.
+     * @param condition The SQL condition rows must match to be covered, or <tt>null</tt> to cover every row.
+     * @return This definition.
+     */
+    public IndexDef where(String condition) {
+        this.where = condition;
+        return this;
+    }
+
+    /**
+     * @return true if this index only covers the rows that match a condition.
+     */
+    public boolean isPartial() { return where != null; }
+
+    /**
+     * A protected method to generate the definitions of the secondary indexes of a table from database meta data.
+     * Primary key indexes and the indexes SQLite creates for UNIQUE constraints are left out.
+     * @param table The name of the table to generate index definitions from.
+     * @param dbMeta The metadata object retrieved from the database.
+     * @return An array of index definitions, in the order the database reports them.
+     * @throws SQLException
+     */
+    protected static IndexDef[] generateDefs(String table, DatabaseMetaData dbMeta) throws SQLException {
+        Map<String, List<String>> indexColumns = new LinkedHashMap<>();
+        Map<String, IndexDef> definitions = new LinkedHashMap<>();
+        try (ResultSet indexQuery = dbMeta.getIndexInfo(null, null, table, false, false)) {
+            while(indexQuery.next()) {
+                String name = indexQuery.getString("INDEX_NAME");
+                String column = indexQuery.getString("COLUMN_NAME");
+                if(name == null || column == null || indexQuery.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic
+                        || name.equalsIgnoreCase("PRIMARY") || name.toLowerCase().startsWith("sqlite_autoindex_")) {
+                    continue;
+                }
+                if(!indexColumns.containsKey(name)) {
+                    indexColumns.put(name, new ArrayList<String>());
+                    definitions.put(name, new IndexDef(name, !indexQuery.getBoolean("NON_UNIQUE"), column).where(indexQuery.getString("FILTER_CONDITION")));
+                }
+                int position = indexQuery.getShort("ORDINAL_POSITION");
+                List<String> columns = indexColumns.get(name);
+                columns.add(Math.max(0, Math.min(columns.size(), position - 1)), column);
+            }
+        }
+        for(Map.Entry<String, IndexDef> entry : definitions.entrySet()) {
+            entry.getValue().columns = indexColumns.get(entry.getKey());
+        }
+        return definitions.values().toArray(new IndexDef[definitions.size()]);
+    }
+
+    @Override
+    public String toString() {
+        return "IndexDef[" + name + (isUnique ? " UNIQUE" : "") + " " + columns + (where == null ? "" : " WHERE " + where) + "]";
+    }
+}
@@ -0,0 +1,323 @@
+package us.drome.cobrasqlib;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * A handle on the value of a large column, such as a <tt>BLOB</tt> or <tt>LONGVARCHAR</tt>, that was too large to be
+ * loaded when its <tt>Row</tt> was read. The value is read from the database by the primary key of its row each time a
+ * stream is opened, so it never has to be held in memory as a whole.
+ *
+ * Streams are read on a dedicated connection that is closed with the stream. On SQLite an open stream holds a read lock,
+ * so it should be closed promptly.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class LargeValue {
+    private final SQLEngine engine;
+    private final String table;
+    private final ColumnDef column;
+    private final String keyColumn;
+    private final Object key;
+
+    protected LargeValue(SQLEngine engine, String table, ColumnDef column, String keyColumn, Object key) {
+        this.engine = engine;
+        this.table = table;
+        this.column = column;
+        this.keyColumn = keyColumn;
+        this.key = key;
+    }
+
+    /**
+     * @return The primary key of the row the value belongs to.
+     */
+    public Object getKey() { return key; }
+
+    /**
+     * @return true if the value is binary, or false if it is text.
+     */
+    public boolean isBinary() { return !column.type.isText(); }
+
+    /**
+     * Opens a stream on the bytes of the value. Text values are encoded as UTF-8.
+     * @return A stream that must be closed, or <tt>null</tt> if the value is now NULL.
+     * @throws SQLException If the value cannot be read, or its row no longer exists.
+     */
+    public InputStream openStream() throws SQLException {
+        final Cursor cursor = new Cursor();
+        try {
+            if(!isBinary()) {
+                Reader reader = cursor.result.getCharacterStream(1);
+                if(reader == null) {
+                    cursor.close();
+                    return null;
+                }
+                return new ReaderInputStream(reader, cursor);
+            }
+            InputStream in = cursor.result.getBinaryStream(1);
+            if(in == null) {
+                cursor.close();
+                return null;
+            }
+            return new FilterInputStream(in) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        cursor.closeQuietly();
+                    }
+                }
+            };
+        } catch (SQLException | RuntimeException e) {
+            cursor.closeQuietly();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a reader on the characters of the value. Binary values are decoded as UTF-8.
+     * @return A reader that must be closed, or <tt>null</tt> if the value is now NULL.
+     * @throws SQLException If the value cannot be read, or its row no longer exists.
+     */
+    public Reader openReader() throws SQLException {
+        final Cursor cursor = new Cursor();
+        try {
+            Reader reader = isBinary() ? decode(cursor.result.getBinaryStream(1)) : cursor.result.getCharacterStream(1);
+            if(reader == null) {
+                cursor.close();
+                return null;
+            }
+            return new FilterReader(reader) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        cursor.closeQuietly();
+                    }
+                }
+            };
+        } catch (SQLException | RuntimeException e) {
+            cursor.closeQuietly();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the whole value into memory.
+     * @return The value as a <tt>byte[]</tt> if it is binary or a <tt>String</tt> if it is text, or <tt>null</tt> if it is NULL.
+     * @throws SQLException If the value cannot be read.
+     */
+    public Object load() throws SQLException {
+        try {
+            if(isBinary()) {
+                try (InputStream in = openStream()) {
+                    return in == null ? null : readFully(in, Long.MAX_VALUE);
+                }
+            }
+            try (Reader reader = openReader()) {
+                return reader == null ? null : readFully(reader, Long.MAX_VALUE);
+            }
+        } catch (IOException e) {
+            throw new SQLException("Unable to read " + column.name + " of " + table, e);
+        }
+    }
+
+    /**
+     * Reads at most <tt>limit</tt> bytes from a stream.
+     * @return The bytes, or <tt>null</tt> if the stream holds more than <tt>limit</tt> bytes.
+     */
+    protected static byte[] readFully(InputStream in, long limit) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+            if(out.size() > limit) {
+                return null;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads at most <tt>limit</tt> characters from a reader.
+     * @return The characters, or <tt>null</tt> if the reader holds more than <tt>limit</tt> characters.
+     */
+    protected static String readFully(Reader reader, long limit) throws IOException {
+        StringWriter out = new StringWriter();
+        char[] buffer = new char[8192];
+        int read;
+        while((read = reader.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+            if(out.getBuffer().length() > limit) {
+                return null;
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Opens a stream on a value that was loaded when its row was read.
+     */
+    protected static InputStream streamOf(Object data) throws SQLException {
+        if(data == null) {
+            return null;
+        } else if(data instanceof LargeValue) {
+            return ((LargeValue) data).openStream();
+        } else if(data instanceof byte[]) {
+            return new ByteArrayInputStream((byte[]) data);
+        } else if(data instanceof Blob) {
+            return ((Blob) data).getBinaryStream();
+        } else if(data instanceof Clob) {
+            return new ReaderInputStream(((Clob) data).getCharacterStream(), null);
+        }
+        return new ByteArrayInputStream(data.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Opens a reader on a value that was loaded when its row was read.
+     */
+    protected static Reader readerOf(Object data) throws SQLException {
+        if(data == null) {
+            return null;
+        } else if(data instanceof LargeValue) {
+            return ((LargeValue) data).openReader();
+        } else if(data instanceof byte[]) {
+            return decode(new ByteArrayInputStream((byte[]) data));
+        } else if(data instanceof Blob) {
+            return decode(((Blob) data).getBinaryStream());
+        } else if(data instanceof Clob) {
+            return ((Clob) data).getCharacterStream();
+        }
+        return new StringReader(data.toString());
+    }
+
+    private static Reader decode(InputStream in) {
+        return in == null ? null : new InputStreamReader(in, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return "LargeValue[" + table + "." + column.name + " where " + keyColumn + " = " + key + "]";
+    }
+
+    /**
+     * The query that reads the value, positioned on its row.
+     */
+    private class Cursor {
+        private final Connection conn;
+        private final PreparedStatement statement;
+        private final ResultSet result;
+
+        private Cursor() throws SQLException {
+            conn = engine.openConnection();
+            try {
+                statement = conn.prepareStatement("SELECT " + column.name + " FROM " + table + " WHERE " + keyColumn + " = ?",
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statement.setObject(1, key);
+                result = statement.executeQuery();
+                if(!result.next()) {
+                    throw new SQLException("Row " + key + " of " + table + " no longer exists.");
+                }
+            } catch (SQLException | RuntimeException e) {
+                conn.close();
+                throw e;
+            }
+        }
+
+        private void close() throws SQLException {
+            conn.close();
+        }
+
+        private void closeQuietly() {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                engine.logger.warning("Unable to close large value stream: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Encodes the characters of a reader as UTF-8 while they are read.
+     */
+    private static class ReaderInputStream extends InputStream {
+        private final Reader reader;
+        private final Cursor cursor;
+        private final char[] chars = new char[4096];
+        private byte[] bytes = new byte[0];
+        private int position = 0;
+
+        private ReaderInputStream(Reader reader, Cursor cursor) {
+            this.reader = reader;
+            this.cursor = cursor;
+        }
+
+        private boolean fill() throws IOException {
+            while(position == bytes.length) {
+                int read = reader.read(chars);
+                if(read < 0) {
+                    return false;
+                }
+                String text = new String(chars, 0, read);
+                // Keep surrogate pairs together so they are encoded as one character.
+                if(Character.isHighSurrogate(chars[read - 1])) {
+                    int next = reader.read();
+                    if(next >= 0) {
+                        text += (char) next;
+                    }
+                }
+                bytes = text.getBytes(StandardCharsets.UTF_8);
+                position = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? bytes[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if(length == 0) {
+                return 0;
+            } else if(!fill()) {
+                return -1;
+            }
+            int count = Math.min(length, bytes.length - position);
+            System.arraycopy(bytes, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                reader.close();
+            } finally {
+                if(cursor != null) {
+                    cursor.closeQuietly();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package us.drome.cobrasqlib;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Copies tables from one <tt>SQLEngine</tt> to another, such as from a <tt>SQLiteEngine</tt> to a <tt>MySQLEngine</tt>.
+ *
+ * Tables missing from the target are created from the source's column definitions, translated through the target's
+ * <tt>translateColumn</tt>. Rows are streamed from a cursor on the source and written to the target in batched inserts,
+ * one transaction per batch, with several tables copied in parallel. After each batch the last copied primary key of
+ * the table is recorded in the checkpoint file, if one is set, so an interrupted migration resumes after that key.
+ * Rows the target holds past the recorded key are deleted before resuming, as a batch may have committed without its
+ * checkpoint being written. Tables without a primary key cannot be resumed part way and are emptied on the target and
+ * copied again.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class Migration {
+    private final SQLEngine source;
+    private final SQLEngine target;
+    private final Object targetLock = new Object();
+    private final Properties checkpoints = new Properties();
+    private int threads = 4;
+    private int batchSize = 1000;
+    private File checkpointFile;
+    private MigrationListener listener;
+
+    /**
+     * Initializes a new <tt>Migration</tt> between two engines.
+     * @param source The engine to copy tables from.
+     * @param target The engine to copy tables to.
+     */
+    public Migration(SQLEngine source, SQLEngine target) {
+        this.source = source;
+        this.target = target;
+    }
+
+    /**
+     * Sets the amount of tables copied at the same time. Writes to a <tt>SQLiteEngine</tt> target are always
+     * made one batch at a time, as SQLite allows only a single writer.
+     * @param threads The amount of tables to copy in parallel. Defaults to 4.
+     */
+    public void setThreads(int threads) { this.threads = Math.max(1, threads); }
+
+    /**
+     * Sets the amount of rows inserted and committed together.
+     * @param batchSize The amount of rows per batch. Defaults to 1000.
+     */
+    public void setBatchSize(int batchSize) { this.batchSize = Math.max(1, batchSize); }
+
+    /**
+     * Sets the file that records the progress of every table so an interrupted migration can be resumed. Progress
+     * already recorded in the file is loaded when the migration runs, and the file is kept after it completes.
+     * @param checkpointFile The checkpoint file, or <tt>null</tt> to always copy tables from the start.
+     */
+    public void setCheckpointFile(File checkpointFile) { this.checkpointFile = checkpointFile; }
+
+    /**
+     * @param listener The listener to report progress to, or <tt>null</tt> for none.
+     */
+    public void setListener(MigrationListener listener) { this.listener = listener; }
+
+    /**
+     * Copies the provided tables, or every table of the source database if none are provided, and waits for all
+     * of them to finish. A failure to copy one table does not stop the others.
+     * @param tables The names of the tables to copy.
+     * @return The amount of rows copied for every table that completed, keyed by table name.
+     * @throws SQLException If any table could not be copied. The first failure is the cause, and the others are suppressed.
+     */
+    public Map<String, Long> run(String... tables) throws SQLException {
+        List<String> names = tables.length > 0 ? Arrays.asList(tables) : listTables();
+        loadCheckpoints();
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, names.size())));
+        Map<String, Future<Long>> futures = new LinkedHashMap<>();
+        try {
+            for(final String name : names) {
+                futures.put(name, pool.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        return copyTable(name);
+                    }
+                }));
+            }
+
+            Map<String, Long> copied = new LinkedHashMap<>();
+            SQLException failure = null;
+            for(Map.Entry<String, Future<Long>> entry : futures.entrySet()) {
+                try {
+                    copied.put(entry.getKey(), entry.getValue().get());
+                } catch (ExecutionException e) {
+                    if(listener != null) {
+                        listener.failed(entry.getKey(), e.getCause());
+                    }
+                    if(failure == null) {
+                        failure = new SQLException("Unable to migrate table " + entry.getKey(), e.getCause());
+                    } else {
+                        failure.addSuppressed(e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Migration was interrupted.", e);
+                }
+            }
+            if(failure != null) {
+                throw failure;
+            }
+            return copied;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private List<String> listTables() throws SQLException {
+        List<String> names = new ArrayList<>();
+        try (Connection conn = source.openConnection();
+                ResultSet rs = conn.getMetaData().getTables(null, null, "%", new String[] {"TABLE"})) {
+            while(rs.next()) {
+                names.add(rs.getString("TABLE_NAME"));
+            }
+        }
+        return names;
+    }
+
+    private long copyTable(String name) throws SQLException, IOException {
+        Table from = source.getTable(name);
+        if(from == null) {
+            throw new SQLException("Table " + name + " does not exist in the source database.");
+        }
+        if(Boolean.parseBoolean(checkpoint(name + ".done"))) {
+            long rows = Long.parseLong(checkpoint(name + ".rows"));
+            if(listener != null) {
+                listener.completed(name, rows);
+            }
+            return rows;
+        }
+        Table to = target.getTable(name);
+        if(to == null) {
+            to = createTable(name, from.getColumns());
+        }
+
+        ColumnDef key = from.getPrimaryKey();
+        String lastKey = key == null ? null : checkpoint(name + ".key");
+        String rowsRecorded = checkpoint(name + ".rows");
+        long copied = lastKey == null || rowsRecorded == null ? 0 : Long.parseLong(rowsRecorded);
+        if(Boolean.parseBoolean(checkpoint(name + ".started"))) {
+            clearTarget(name, key, lastKey);
+        } else {
+            synchronized(checkpoints) {
+                checkpoints.setProperty(name + ".started", "true");
+                saveCheckpoints();
+            }
+        }
+
+        String columnString = "";
+        String valueString = "";
+        for(ColumnDef def : from.getColumns()) {
+            if(to.getColumn(def.name) == null) {
+                throw new SQLException("Table " + name + " has no column " + def.name + " in the target database.");
+            }
+            columnString += (columnString.isEmpty() ? "" : ",") + def.name;
+            valueString += (valueString.isEmpty() ? "?" : ",?");
+        }
+        String select = "SELECT " + columnString + " FROM " + name;
+        if(key != null) {
+            select += (lastKey != null ? " WHERE " + key.name + " > ?" : "") + " ORDER BY " + key.name;
+        }
+        long total = count(name);
+
+        try (Connection in = source.openConnection();
+                Connection out = target.openConnection();
+                PreparedStatement query = in.prepareStatement(select, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                PreparedStatement insert = out.prepareStatement("INSERT INTO " + name + " (" + columnString + ") VALUES (" + valueString + ")")) {
+            out.setAutoCommit(false);
+            query.setFetchSize(batchSize);
+            if(lastKey != null) {
+                query.setObject(1, parseKey(key, lastKey));
+            }
+            int columnCount = from.getColumns().size();
+            int keyIndex = key == null ? -1 : from.getColumns().indexOf(key) + 1;
+            try (ResultSet rows = query.executeQuery()) {
+                int pending = 0;
+                Object last = null;
+                while(rows.next()) {
+                    for(int i = 1; i <= columnCount; i++) {
+                        insert.setObject(i, rows.getObject(i));
+                    }
+                    if(keyIndex > 0) {
+                        last = rows.getObject(keyIndex);
+                    }
+                    insert.addBatch();
+                    if(++pending == batchSize) {
+                        copied += commit(name, out, insert, pending, last);
+                        report(name, copied, total);
+                        pending = 0;
+                    }
+                }
+                if(pending > 0) {
+                    copied += commit(name, out, insert, pending, last);
+                    report(name, copied, total);
+                }
+            } catch (SQLException e) {
+                out.rollback();
+                throw e;
+            }
+        } finally {
+            target.invalidateReads("INSERT INTO " + name);
+            to.refreshMirror();
+        }
+
+        synchronized(checkpoints) {
+            checkpoints.setProperty(name + ".rows", String.valueOf(copied));
+            checkpoints.setProperty(name + ".done", "true");
+            saveCheckpoints();
+        }
+        if(listener != null) {
+            listener.completed(name, copied);
+        }
+        return copied;
+    }
+
+    private Table createTable(String name, List<ColumnDef> columns) throws SQLException {
+        ColumnDef[] translated = new ColumnDef[columns.size()];
+        for(int i = 0; i < translated.length; i++) {
+            translated[i] = target.translateColumn(columns.get(i));
+        }
+        Table table = target.createTable(name, translated);
+        // Tables are created on the target's queue, so wait for the queue to reach this point before inserting.
+        try {
+            target.getExecutor().barrier().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while creating table " + name, e);
+        } catch (ExecutionException e) {
+            throw new SQLException("Unable to create table " + name, e.getCause());
+        }
+        return table;
+    }
+
+    private long commit(String name, Connection out, PreparedStatement insert, int pending, Object lastKey) throws SQLException, IOException {
+        if(target instanceof SQLiteEngine) {
+            synchronized(targetLock) {
+                insert.executeBatch();
+                out.commit();
+            }
+        } else {
+            insert.executeBatch();
+            out.commit();
+        }
+        synchronized(checkpoints) {
+            String rows = checkpoint(name + ".rows");
+            checkpoints.setProperty(name + ".rows", String.valueOf((rows == null ? 0 : Long.parseLong(rows)) + pending));
+            if(lastKey != null) {
+                checkpoints.setProperty(name + ".key", lastKey.toString());
+            }
+            saveCheckpoints();
+        }
+        return pending;
+    }
+
+    /**
+     * Deletes the rows of an interrupted copy that were committed after the last checkpoint, or every row if there is no
+     * checkpointed key to resume after.
+     */
+    private void clearTarget(String name, ColumnDef key, String lastKey) throws SQLException {
+        synchronized(targetLock) {
+            try (Connection conn = target.openConnection();
+                    PreparedStatement statement = conn.prepareStatement("DELETE FROM " + name + (lastKey == null ? "" : " WHERE " + key.name + " > ?"))) {
+                if(lastKey != null) {
+                    statement.setObject(1, parseKey(key, lastKey));
+                }
+                statement.executeUpdate();
+            }
+        }
+        if(lastKey == null) {
+            synchronized(checkpoints) {
+                checkpoints.remove(name + ".rows");
+            }
+        }
+    }
+
+    private long count(String name) throws SQLException {
+        try (Connection conn = source.openConnection();
+                Statement statement = conn.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM " + name)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private void report(String name, long copied, long total) {
+        if(listener != null) {
+            listener.progress(name, copied, total);
+        }
+    }
+
+    private static Object parseKey(ColumnDef key, String value) {
+        if(key.type != null) {
+            switch(key.type) {
+                case TINYINT:
+                case SMALLINT:
+                case INTEGER:
+                case BIGINT:
+                case ROWID:
+                    return Long.valueOf(value);
+            }
+        }
+        return value;
+    }
+
+    private String checkpoint(String property) {
+        synchronized(checkpoints) {
+            return checkpoints.getProperty(property);
+        }
+    }
+
+    private void loadCheckpoints() throws SQLException {
+        synchronized(checkpoints) {
+            checkpoints.clear();
+            if(checkpointFile == null || !checkpointFile.exists()) {
+                return;
+            }
+            try (InputStream in = new FileInputStream(checkpointFile)) {
+                checkpoints.load(in);
+            } catch (IOException e) {
+                throw new SQLException("Unable to read migration checkpoint " + checkpointFile.getPath(), e);
+            }
+        }
+    }
+
+    private void saveCheckpoints() throws IOException {
+        if(checkpointFile == null) {
+            return;
+        }
+        File temp = new File(checkpointFile.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            checkpoints.store(out, "Migration checkpoint");
+        }
+        Files.move(temp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,33 @@
+package us.drome.cobrasqlib;
+
+/**
+ * Receives progress reports from a <tt>Migration</tt>. Tables are copied in parallel, so the methods of a listener
+ * may be called from several threads at once, but the reports for a single table are made in order.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public interface MigrationListener {
+    /**
+     * Called after each batch of rows has been committed to the target database.
+     * @param table The name of the table being copied.
+     * @param copied The amount of rows of the table copied so far, including rows copied by an earlier, interrupted run.
+     * @param total The amount of rows in the source table when copying started.
+     */
+    void progress(String table, long copied, long total);
+
+    /**
+     * Called once a table has been copied completely.
+     * @param table The name of the table.
+     * @param copied The amount of rows of the table that were copied.
+     */
+    void completed(String table, long copied);
+
+    /**
+     * Called if copying a table failed. Rows committed before the failure remain in the target table and are
+     * skipped when the migration is resumed from its checkpoint file.
+     * @param table The name of the table.
+     * @param cause The cause of the failure.
+     */
+    void failed(String table, Throwable cause);
+}
@@ -37,25 +37,15 @@ public class MySQLEngine extends SQLEngine {
     }
 
     /**
-     * @return A <tt>Connection</tt> object to provide connectivity with the database.
+     * Opens connections with cursor fetching enabled, so statements given a fetch size, such as those of
+     * <tt>publish</tt>, <tt>queryColumnar</tt>, <tt>Table.pages</tt> and <tt>Table.exportTo</tt>, read their result in
+     * batches of that size instead of buffering all of it. Statements without a fetch size are read whole as before.
      */
     @Override
-    public Connection getConnection() {
-        try {
-            if(connection == null || connection.isValid(10)) {
-                return openConnection();
-            }
-        } catch (SQLException e) {
-            logger.log(Level.SEVERE, e.getMessage());
-        }
-        
-        return connection;
-    }
-    
-    private Connection openConnection() throws SQLException {
+    protected Connection openConnection() throws SQLException {
         try {
             Class.forName(com.mysql.jdbc.Driver.class.getName());
-            return DriverManager.getConnection("jdbc:mysql://" + url, username, password);
+            return DriverManager.getConnection("jdbc:mysql://" + url + "?useCursorFetch=true", username, password);
         } catch (ClassNotFoundException ex) {
             throw new SQLException("Cannot load MySQL. Check your installation and try again.");
         }
@@ -84,12 +74,13 @@ public class MySQLEngine extends SQLEngine {
             tempDef += def.isNotNull ? " NOT NULL" : "";
             tempDef += def.isPrimary ? " PRIMARY KEY" : "";
             tempDef += def.isAutoincrement ? " AUTO_INCREMENT" : "";
-            if(i == columns.length -1) {
+            if(i < columns.length - 1) {
                 tempDef += ",";
             }
             definitions += tempDef;
         }
         this.runAsyncUpdate("CREATE TABLE " + name + "(" + definitions + ")");
+        recordCompression(name, columns);
         MySQLTable table = new MySQLTable(this, name, columns);
         tables.add(table);
         return table;
@@ -119,7 +110,10 @@ public class MySQLEngine extends SQLEngine {
                 if(rs.getString(3).equalsIgnoreCase(name)) {
                     table = rs.getString(3);
                     definitions = ColumnDef.generateDefs(table, dbMeta);
+                    loadCompression(table, definitions);
                     MySQLTable thisTable = new MySQLTable(this, table, definitions);
+                    thisTable.defineIndexes(IndexDef.generateDefs(table, dbMeta));
+                    registerTable(thisTable);
                     return thisTable;
                 }
             }
@@ -129,4 +123,42 @@ public class MySQLEngine extends SQLEngine {
         
         return null;
     }
+    
+    /**
+     * MySQL requires a length for variable length columns, so those without one are given a length of 255.
+     * Tables that need longer columns should be created before data is copied into them.
+     */
+    @Override
+    protected ColumnDef translateColumn(ColumnDef def) {
+        ColumnDef translated = super.translateColumn(def);
+        if(translated.size < 0 && (translated.type == Type.VARCHAR || translated.type == Type.NVARCHAR || translated.type == Type.VARBINARY)) {
+            translated.size = 255;
+        }
+        return translated;
+    }
+    
+    /**
+     * MySQL has no partial indexes.
+     * @throws UnsupportedOperationException If the index is partial.
+     */
+    @Override
+    protected String createIndexStatement(String table, IndexDef index) {
+        if(index.isPartial()) {
+            throw new UnsupportedOperationException("MySQL does not support partial indexes.");
+        }
+        return super.createIndexStatement(table, index);
+    }
+    
+    /**
+     * MySQL index names are only unique within their table, so the table is part of the statement.
+     */
+    @Override
+    protected String dropIndexStatement(String table, String index) {
+        return "DROP INDEX " + index + " ON " + table;
+    }
+    
+    @Override
+    protected MySQLTable newTable(String name, ColumnDef... columns) {
+        return new MySQLTable(this, name, columns);
+    }
 }
@@ -2,10 +2,12 @@ package us.drome.cobrasqlib;
 
 /**
  * A basic enum that allows an easy way to set valid column definition options.
+ * <tt>isCompressed</tt> is not part of the database schema: values of the column are compressed by the engine before
+ * they are written, so the column must have a binary type such as <tt>BLOB</tt>.
  * 
  * @author TheAcademician
  * @since 0.1
  */
 public enum Options {
-    isPrimary, isAutoincrement, isNotNull, isUnsigned;
+    isPrimary, isAutoincrement, isNotNull, isUnsigned, isCompressed;
 }
\ No newline at end of file
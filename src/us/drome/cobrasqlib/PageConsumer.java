@@ -0,0 +1,18 @@
+package us.drome.cobrasqlib;
+
+import java.util.List;
+
+/**
+ * Processes the pages of <tt>Row</tt>s read by <tt>Table.forEachPage</tt>.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public interface PageConsumer {
+    /**
+     * Called for every page of rows, in primary key order unless pages are processed by several workers.
+     * @param page The rows of the page, at most the page size.
+     * @throws Exception To stop the iteration. Pages that completed before it stay checkpointed.
+     */
+    void accept(List<Row> page) throws Exception;
+}
@@ -0,0 +1,418 @@
+package us.drome.cobrasqlib;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * An append-only log of timestamped rows, such as chat messages or block changes, spread over one physical table per hour
+ * or day. Created with <tt>SQLEngine.createLogTable</tt>.
+ *
+ * Appended rows are buffered and written as one batched transaction per flush, to the partition of their timestamp, so
+ * the cost of an append does not grow with the history. Queries over a time range only read the partitions the range
+ * overlaps, merged with <tt>UNION ALL</tt>. Old history is removed by dropping whole partitions once they are older than
+ * the retention, which frees their space at once instead of deleting rows one by one.
+ *
+ * Partitions are named after the log and the UTC start of their period, such as <tt>chat_20140312</tt> for a daily log
+ * or <tt>chat_2014031215</tt> for an hourly one, and the partitions that already exist are found again when the log is
+ * created on the next startup.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class PartitionedLogTable {
+    /**
+     * The lengths of time a single partition holds.
+     */
+    public enum Period {
+        HOURLY(TimeUnit.HOURS.toMillis(1), "yyyyMMddHH"),
+        DAILY(TimeUnit.DAYS.toMillis(1), "yyyyMMdd");
+
+        private final long millis;
+        private final String pattern;
+
+        private Period(long millis, String pattern) {
+            this.millis = millis;
+            this.pattern = pattern;
+        }
+
+        /**
+         * @return The length of a partition in milliseconds.
+         */
+        public long getMillis() { return millis; }
+
+        /**
+         * @return The start of the partition holding the provided time.
+         */
+        protected long start(long time) {
+            long offset = time % millis;
+            return time - (offset < 0 ? offset + millis : offset);
+        }
+
+        private SimpleDateFormat format() {
+            SimpleDateFormat format = new SimpleDateFormat(pattern);
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            format.setLenient(false);
+            return format;
+        }
+    }
+
+    private final SQLEngine engine;
+    private final String name;
+    private final String timeColumn;
+    private final Period period;
+    private final ColumnDef[] columns;
+    private final int timeIndex;
+    private final String insertColumns;
+    private final NavigableSet<Long> partitions = new ConcurrentSkipListSet<>();
+    private List<Object[]> pending = new ArrayList<>();
+    private final Map<Object[], Integer> attempts = new IdentityHashMap<>();
+    private volatile int maxPending = 1000;
+    private volatile long retentionMillis = 0;
+    private ScheduledFuture<?> flushTask;
+
+    /**
+     * Protected constructor to open a log and find its existing partitions.
+     * @param engine The engine the partitions are stored in.
+     * @param name The name the partitions are named after.
+     * @param timeColumn The column holding the time of every row, as milliseconds since the epoch.
+     * @param period The length of time a single partition holds.
+     * @param columns The columns of every partition.
+     * @throws IllegalArgumentException If the time column is not one of the columns.
+     */
+    protected PartitionedLogTable(SQLEngine engine, String name, String timeColumn, Period period, ColumnDef... columns) {
+        this.engine = engine;
+        this.name = name;
+        this.timeColumn = timeColumn;
+        this.period = period;
+        this.columns = columns.clone();
+        int index = -1;
+        String columnString = "";
+        String valueString = "";
+        int i = 0;
+        for(ColumnDef def : columns) {
+            if(def.isPrimary && def.isAutoincrement) {
+                continue;
+            }
+            if(def.name.equalsIgnoreCase(timeColumn)) {
+                index = i;
+            }
+            columnString += (columnString.isEmpty() ? "" : ",") + def.name;
+            valueString += (valueString.isEmpty() ? "?" : ",?");
+            i++;
+        }
+        if(index < 0) {
+            throw new IllegalArgumentException(timeColumn + " is not a column of the log " + name + ".");
+        }
+        this.timeIndex = index;
+        this.insertColumns = " (" + columnString + ") VALUES (" + valueString + ")";
+        findPartitions();
+    }
+
+    private void findPartitions() {
+        final String prefix = name.toLowerCase() + "_";
+        final SimpleDateFormat format = period.format();
+        try {
+            engine.onExecutor(PriorityExecutor.currentPriority(), 0, new Callable<Object>() {
+                @Override
+                public Object call() throws SQLException {
+                    DatabaseMetaData dbMeta = engine.getConnection().getMetaData();
+                    try (ResultSet rs = dbMeta.getTables(null, null, "%", null)) {
+                        while(rs.next()) {
+                            String table = rs.getString(3).toLowerCase();
+                            String suffix = table.substring(Math.min(table.length(), prefix.length()));
+                            if(table.startsWith(prefix) && suffix.length() == period.pattern.length() && suffix.matches("\\d+")) {
+                                try {
+                                    partitions.add(format.parse(suffix).getTime());
+                                } catch (ParseException e) {
+                                    // Not a partition of this log.
+                                }
+                            }
+                        }
+                    }
+                    return null;
+                }
+            });
+        } catch (SQLException e) {
+            engine.logger.log(Level.SEVERE, "Unable to find the partitions of " + name + ": " + e.getMessage());
+        }
+    }
+
+    public String getName() { return name; }
+
+    public Period getPeriod() { return period; }
+
+    /**
+     * @return The names of the existing partitions, oldest first.
+     */
+    public List<String> getPartitions() {
+        List<String> names = new ArrayList<>();
+        for(long start : partitions) {
+            names.add(partitionName(start));
+        }
+        return names;
+    }
+
+    /**
+     * @param time A time in milliseconds since the epoch.
+     * @return The name of the partition holding rows of the provided time.
+     */
+    public String partitionName(long time) {
+        return name + "_" + period.format().format(new Date(period.start(time)));
+    }
+
+    /**
+     * Appends a row to the log. It is buffered until the next flush, and is not visible to queries before.
+     * @param values The column values, in order, leaving out an auto-incremented primary key. The value of the time column
+     * must be a <tt>Number</tt> of milliseconds since the epoch or a <tt>Date</tt>.
+     * @throws IllegalArgumentException If the row has no valid time.
+     */
+    public void append(Object... values) {
+        Object time = values[timeIndex];
+        if(time instanceof Date) {
+            values = values.clone();
+            values[timeIndex] = ((Date) time).getTime();
+        } else if(!(time instanceof Number)) {
+            throw new IllegalArgumentException("The value of " + timeColumn + " must be a Number or a Date, not " + time + ".");
+        }
+        boolean full;
+        synchronized(this) {
+            pending.add(values);
+            full = pending.size() >= maxPending;
+        }
+        if(full) {
+            flush();
+        }
+    }
+
+    /**
+     * @return The amount of appended rows waiting for the next flush.
+     */
+    public synchronized int getPending() { return pending.size(); }
+
+    /**
+     * Sets when appended rows are flushed. Rows are also flushed by <tt>SQLEngine.shutdown()</tt>.
+     * @param flushMillis The interval between flushes in milliseconds, or 0 to only flush on the size threshold.
+     * @param maxPending The amount of pending rows that triggers a flush. Defaults to 1000.
+     */
+    public synchronized void setFlush(long flushMillis, int maxPending) {
+        this.maxPending = Math.max(1, maxPending);
+        if(flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        if(flushMillis > 0) {
+            flushTask = engine.getScheduler().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                    dropExpired();
+                }
+            }, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sets how long rows are kept. A partition is dropped once the whole period it holds is older than the retention,
+     * which is checked on every timed flush and by <tt>dropExpired</tt>.
+     * @param millis The retention in milliseconds, or 0 to keep every partition. Defaults to 0.
+     */
+    public void setRetention(long millis) { this.retentionMillis = Math.max(0, millis); }
+
+    public long getRetention() { return retentionMillis; }
+
+    /**
+     * Queues the pending rows to be written to their partitions in a single transaction, creating the partitions that do
+     * not exist yet. If the transaction fails, every row is written on its own, and the rows that still fail are appended
+     * again for the next flush, up to <tt>Table.MAX_FLUSH_ATTEMPTS</tt> times before they are logged and dropped.
+     */
+    public void flush() {
+        final List<Object[]> drained;
+        synchronized(this) {
+            if(pending.isEmpty()) {
+                return;
+            }
+            drained = pending;
+            pending = new ArrayList<>();
+        }
+        final Map<String, List<Object[]>> batches = new LinkedHashMap<>();
+        for(Object[] values : drained) {
+            long start = period.start(((Number) values[timeIndex]).longValue());
+            String insert = "INSERT INTO " + createPartition(start) + insertColumns;
+            if(!batches.containsKey(insert)) {
+                batches.put(insert, new ArrayList<Object[]>());
+            }
+            batches.get(insert).add(values);
+        }
+        engine.getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                if(engine.runBatchUpdate(batches)) {
+                    forget(drained);
+                    return;
+                }
+                // The transaction was rolled back, so write every row on its own to find those that fail.
+                List<Object[]> failed = new ArrayList<>();
+                for(Map.Entry<String, List<Object[]>> batch : batches.entrySet()) {
+                    for(Object[] values : batch.getValue()) {
+                        if(!engine.runBatchUpdate(Collections.singletonMap(batch.getKey(), Collections.singletonList(values)))) {
+                            failed.add(values);
+                        }
+                    }
+                }
+                forget(drained);
+                retry(failed);
+            }
+        }, Priority.BULK, null);
+    }
+    
+    private synchronized void forget(List<Object[]> rows) {
+        for(Object[] values : rows) {
+            attempts.remove(values);
+        }
+    }
+    
+    /**
+     * Puts rows whose insert failed back in front of the pending rows, dropping those that failed too often.
+     */
+    private synchronized void retry(List<Object[]> failed) {
+        List<Object[]> requeued = new ArrayList<>();
+        for(Object[] values : failed) {
+            Integer failures = attempts.get(values);
+            int count = (failures == null ? 0 : failures) + 1;
+            if(count >= Table.MAX_FLUSH_ATTEMPTS) {
+                engine.logger.log(Level.SEVERE, "Gave up appending a row to " + name + " after " + count + " attempts: "
+                        + Arrays.toString(values));
+            } else {
+                attempts.put(values, count);
+                requeued.add(values);
+            }
+        }
+        requeued.addAll(pending);
+        pending = requeued;
+    }
+
+    /**
+     * Queues the creation of a partition if it does not exist, ahead of any insert into it queued afterwards.
+     * @return The name of the partition.
+     */
+    private synchronized String createPartition(long start) {
+        String partition = partitionName(start);
+        if(partitions.add(start)) {
+            engine.createTable(partition, columns);
+        }
+        return partition;
+    }
+
+    /**
+     * Drops every partition whose whole period is older than the retention.
+     * @return The amount of partitions dropped.
+     */
+    public synchronized int dropExpired() {
+        if(retentionMillis <= 0) {
+            return 0;
+        }
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        int dropped = 0;
+        while(!partitions.isEmpty() && partitions.first() + period.millis <= cutoff) {
+            engine.dropTable(partitionName(partitions.pollFirst()));
+            dropped++;
+        }
+        return dropped;
+    }
+
+    /**
+     * Queries the rows of a time range, reading only the partitions the range overlaps. Rows are ordered by time, and rows
+     * that have not been flushed yet are not returned.
+     * @param from The start of the range in milliseconds since the epoch, inclusive.
+     * @param to The end of the range in milliseconds since the epoch, exclusive.
+     * @param where A further predicate on the rows, or <tt>null</tt> for every row of the range.
+     * @param callback The callback to pass the <tt>List&lt;Row&gt;</tt> to.
+     * @return A <tt>QueryHandle</tt> that can be used to cancel the query.
+     */
+    public QueryHandle query(long from, long to, Where where, Callback callback) {
+        List<Object> params = new ArrayList<>();
+        final String union = unionStatement(from, to, where, params);
+        if(union == null) {
+            return engine.queue(engine.getDefaultTimeout(), callback, new Callable<Object>() {
+                @Override
+                public Object call() {
+                    return Collections.<Row>emptyList();
+                }
+            });
+        }
+        return engine.runAsyncQuery(union + " ORDER BY " + timeColumn, callback, params.toArray());
+    }
+
+    /**
+     * Counts the rows of a time range, reading only the partitions the range overlaps. The count runs on the query
+     * executor, after the flushes queued before it, and the calling thread waits for it.
+     * @param from The start of the range in milliseconds since the epoch, inclusive.
+     * @param to The end of the range in milliseconds since the epoch, exclusive.
+     * @param where A further predicate on the rows, or <tt>null</tt> for every row of the range.
+     * @return The amount of matching rows that have been flushed.
+     * @throws SQLException
+     */
+    public long count(long from, long to, Where where) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        final String union = unionStatement(from, to, where, params);
+        if(union == null) {
+            return 0;
+        }
+        final Object[] paramArray = params.toArray();
+        GroupedResult result = engine.onExecutor(PriorityExecutor.currentPriority(), engine.getDefaultTimeout(), new Callable<GroupedResult>() {
+            @Override
+            public GroupedResult call() throws SQLException {
+                return engine.queryGroups("SELECT COUNT(*) FROM (" + union + ") parts", paramArray,
+                        new String[0], new String[] {"count"});
+            }
+        });
+        return result.getGroupCount() == 0 ? 0 : (long) result.getValue(0, 0);
+    }
+
+    /**
+     * Builds a query of the rows of a time range as a <tt>UNION ALL</tt> of the partitions the range overlaps.
+     * @return The query, or <tt>null</tt> if no partition overlaps the range.
+     */
+    private String unionStatement(long from, long to, Where where, List<Object> params) {
+        String condition = " WHERE " + timeColumn + " >= ? AND " + timeColumn + " < ?" + (where == null ? "" : where.toSql().replaceFirst(" WHERE ", " AND "));
+        String union = null;
+        for(long start : partitions.subSet(period.start(from), true, to, false)) {
+            union = (union == null ? "" : union + " UNION ALL ") + "SELECT * FROM " + partitionName(start) + condition;
+            params.add(from);
+            params.add(to);
+            if(where != null) {
+                Collections.addAll(params, where.getParams());
+            }
+        }
+        return union;
+    }
+
+    /**
+     * Flushes the pending rows and stops the timed flush.
+     */
+    public synchronized void close() {
+        if(flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        flush();
+    }
+}
@@ -0,0 +1,27 @@
+package us.drome.cobrasqlib;
+
+/**
+ * The priority classes of asynchronous database operations, from the most to the least urgent.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public enum Priority {
+    /**
+     * Operations a player or user is actively waiting on, such as a lookup on login.
+     */
+    INTERACTIVE,
+    /**
+     * The default for operations that are not tagged with a priority.
+     */
+    NORMAL,
+    /**
+     * Maintenance such as connection validation and schema checks.
+     */
+    BACKGROUND,
+    /**
+     * Large batches such as flushes of buffered writes and periodic saves. Work queued as <tt>BULK</tt> never runs
+     * before work of any priority that was queued earlier, so it is also used for mirror refreshes.
+     */
+    BULK;
+}
@@ -0,0 +1,467 @@
+package us.drome.cobrasqlib;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the asynchronous operations of a <tt>SQLEngine</tt> in order of their <tt>Priority</tt>. Operations of the same
+ * priority run in the order they were queued.
+ *
+ * To keep lower priorities from starving, an operation is treated as one priority higher for every aging interval it has
+ * waited.
+ *
+ * Operations may carry a key, such as a table and primary key. Operations with the same key always run one after the other
+ * in the order they were queued, whatever their priority. When a more urgent operation is queued behind a waiting
+ * operation with the same key, the waiting operation is raised to the more urgent priority so it does not hold it up.
+ * An operation may carry several keys, such as a batch of writes to several rows, and then runs once every operation
+ * queued before it with any of its keys has finished.
+ * Operations without a key are only ordered against operations of the same priority. Work that must see the effects of
+ * everything queued before it, such as reloading a mirror after a write, is queued with <tt>executeAfter</tt>.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class PriorityExecutor extends AbstractExecutorService {
+    private static final ThreadLocal<Priority> current = new ThreadLocal<>();
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final Object lock = new Object();
+    private final List<ArrayDeque<Task>> queues = new ArrayList<>();
+    private final Map<String, ArrayDeque<Task>> chains = new HashMap<>();
+    private final int[] running = new int[PRIORITIES.length];
+    private final TreeSet<Long> unfinished = new TreeSet<>();
+    private final TreeMap<Long, List<Runnable>> barriers = new TreeMap<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private final int workers;
+    private final EngineMetrics metrics;
+    private long agingNanos = TimeUnit.MILLISECONDS.toNanos(500);
+    private int pending = 0;
+    private long sequence = 0;
+    private boolean shutdown = false;
+
+    /**
+     * Protected constructor to initialize a new <tt>PriorityExecutor</tt>. Worker threads are started when work is first queued.
+     * @param workers The amount of worker threads.
+     * @param metrics The metrics to record queue wait times in, or <tt>null</tt> to not record them.
+     */
+    protected PriorityExecutor(int workers, EngineMetrics metrics) {
+        this.workers = workers;
+        this.metrics = metrics;
+        for(int i = 0; i < PRIORITIES.length; i++) {
+            queues.add(new ArrayDeque<Task>());
+        }
+    }
+
+    /**
+     * @return The priority of operations queued by the calling thread. Worker threads use the priority of the operation they are running.
+     */
+    public static Priority currentPriority() {
+        Priority priority = current.get();
+        return priority == null ? Priority.NORMAL : priority;
+    }
+
+    /**
+     * Sets the priority of operations queued by the calling thread.
+     * @param priority The new priority, or <tt>null</tt> to restore the default.
+     * @return The previous priority of the calling thread.
+     */
+    protected static Priority setCurrentPriority(Priority priority) {
+        Priority previous = currentPriority();
+        if(priority == null) {
+            current.remove();
+        } else {
+            current.set(priority);
+        }
+        return previous;
+    }
+
+    /**
+     * Sets how long an operation waits before it is treated as one priority higher.
+     * @param agingMillis The aging interval in milliseconds.
+     */
+    public void setAging(long agingMillis) {
+        synchronized(lock) {
+            agingNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, agingMillis));
+        }
+    }
+
+    /**
+     * Queues work with the priority of the calling thread and no key.
+     */
+    @Override
+    public void execute(Runnable command) {
+        execute(command, currentPriority(), null);
+    }
+
+    /**
+     * Queues work with a priority and an ordering key.
+     * @param command The work to run.
+     * @param priority The priority of the work.
+     * @param key The key of the work, or <tt>null</tt> if it does not need to be ordered against other work.
+     */
+    public void execute(Runnable command, Priority priority, String key) {
+        submit(new Task(command, priority, key == null ? new String[0] : new String[] {key}));
+    }
+
+    /**
+     * Queues work with a priority and several ordering keys. The work runs once all work queued before it with any of
+     * its keys has finished, and work queued after it with any of its keys waits for it.
+     * @param command The work to run.
+     * @param priority The priority of the work.
+     * @param keys The keys of the work.
+     */
+    public void executeKeyed(Runnable command, Priority priority, Collection<String> keys) {
+        Set<String> distinct = new LinkedHashSet<>(keys);
+        submit(new Task(command, priority, distinct.toArray(new String[distinct.size()])));
+    }
+
+    private void submit(Task task) {
+        synchronized(lock) {
+            if(shutdown) {
+                throw new RejectedExecutionException("The executor has been shut down.");
+            }
+            task.sequence = sequence++;
+            unfinished.add(task.sequence);
+            pending++;
+            for(String key : task.keys) {
+                ArrayDeque<Task> chain = chains.get(key);
+                if(chain == null) {
+                    chain = new ArrayDeque<>();
+                    chains.put(key, chain);
+                } else {
+                    task.blocked++;
+                    raise(chain.peekFirst(), task.priority);
+                }
+                chain.add(task);
+            }
+            if(task.blocked == 0) {
+                enqueue(task);
+            }
+            if(threads.size() < workers) {
+                Thread thread = new Thread(new Worker(), "CobraSQLib-" + threads.size());
+                threads.add(thread);
+                thread.start();
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Returns a <tt>Future</tt> that completes once all work queued before it has finished, of any priority and including
+     * work still waiting behind earlier work with the same key. It must not be waited on by a worker.
+     * @return A <tt>Future</tt> that can be waited on.
+     */
+    public Future<?> barrier() {
+        FutureTask<Object> barrier = new FutureTask<>(new Runnable() {
+            @Override
+            public void run() { }
+        }, null);
+        synchronized(lock) {
+            addBarrier(barrier);
+        }
+        return barrier;
+    }
+
+    /**
+     * Queues work once all work queued before it has finished, of any priority and including work still waiting behind
+     * earlier work with the same key, so it sees the effects of everything queued before it.
+     * @param command The work to run.
+     * @param priority The priority of the work once it is queued.
+     */
+    public void executeAfter(final Runnable command, final Priority priority) {
+        synchronized(lock) {
+            if(shutdown) {
+                throw new RejectedExecutionException("The executor has been shut down.");
+            }
+            addBarrier(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        execute(command, priority, null);
+                    } catch (RejectedExecutionException e) {
+                        // Shut down while waiting, like the work queued before it may have been.
+                    }
+                }
+            });
+        }
+    }
+
+    private void addBarrier(Runnable release) {
+        List<Runnable> waiting = barriers.get(sequence);
+        if(waiting == null) {
+            waiting = new ArrayList<>();
+            barriers.put(sequence, waiting);
+        }
+        waiting.add(release);
+        releaseBarriers();
+    }
+
+    /**
+     * Releases every barrier that no unfinished work was queued before.
+     */
+    private void releaseBarriers() {
+        long oldest = unfinished.isEmpty() ? Long.MAX_VALUE : unfinished.first();
+        while(!barriers.isEmpty() && barriers.firstKey() <= oldest) {
+            for(Runnable release : barriers.pollFirstEntry().getValue()) {
+                release.run();
+            }
+        }
+    }
+
+    /**
+     * @return The amount of operations that are queued and have not started, across all priorities.
+     */
+    public int getQueued() {
+        synchronized(lock) {
+            return pending;
+        }
+    }
+
+    /**
+     * Raises a task that has not started yet to a more urgent priority waiting behind it.
+     */
+    private void raise(Task task, Priority priority) {
+        if(task.started || priority.ordinal() >= task.effective.ordinal()) {
+            return;
+        }
+        if(task.waiting) {
+            queues.get(task.effective.ordinal()).remove(task);
+            queues.get(priority.ordinal()).add(task);
+        }
+        task.effective = priority;
+    }
+
+    private void enqueue(Task task) {
+        task.waiting = true;
+        queues.get(task.effective.ordinal()).add(task);
+    }
+
+    /**
+     * Picks the most urgent runnable task, or returns <tt>null</tt> if none may run. Only the head of every queue is
+     * considered, as it has waited the longest for its priority.
+     */
+    private Task next() {
+        long now = System.nanoTime();
+        Task best = null;
+        long bestRank = Long.MAX_VALUE;
+        for(int i = 0; i < PRIORITIES.length; i++) {
+            Task head = queues.get(i).peekFirst();
+            if(head == null) {
+                continue;
+            }
+            long rank = Math.max(0, i - (now - head.queuedAt) / agingNanos);
+            if(rank < bestRank) {
+                best = head;
+                bestRank = rank;
+            }
+        }
+        if(best != null) {
+            queues.get(best.effective.ordinal()).pollFirst();
+            best.waiting = false;
+            best.started = true;
+            running[best.effective.ordinal()]++;
+            pending--;
+        }
+        return best;
+    }
+
+    /**
+     * Releases the next task with the same key as a finished task into its queue once it waits on no other key, raised to
+     * the most urgent priority waiting behind it.
+     */
+    private void finished(Task task) {
+        running[task.effective.ordinal()]--;
+        unfinished.remove(task.sequence);
+        releaseBarriers();
+        for(String key : task.keys) {
+            ArrayDeque<Task> chain = chains.get(key);
+            chain.pollFirst();
+            Task next = chain.peekFirst();
+            if(next == null) {
+                chains.remove(key);
+            } else {
+                for(Task waiting : chain) {
+                    raise(next, waiting.effective);
+                }
+                if(--next.blocked == 0) {
+                    enqueue(next);
+                }
+            }
+        }
+        lock.notifyAll();
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized(lock) {
+            shutdown = true;
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> dropped = new ArrayList<>();
+        synchronized(lock) {
+            shutdown = true;
+            for(ArrayDeque<Task> queue : queues) {
+                for(Task task : queue) {
+                    dropped.add(task.command);
+                    unfinished.remove(task.sequence);
+                }
+                queue.clear();
+            }
+            Iterator<ArrayDeque<Task>> keys = chains.values().iterator();
+            while(keys.hasNext()) {
+                ArrayDeque<Task> chain = keys.next();
+                Iterator<Task> waiting = chain.iterator();
+                while(waiting.hasNext()) {
+                    Task task = waiting.next();
+                    if(!task.started) {
+                        if(!task.waiting && !dropped.contains(task.command)) {
+                            dropped.add(task.command);
+                        }
+                        unfinished.remove(task.sequence);
+                        waiting.remove();
+                    }
+                }
+                if(chain.isEmpty()) {
+                    keys.remove();
+                }
+            }
+            pending = 0;
+            releaseBarriers();
+            for(Thread thread : threads) {
+                thread.interrupt();
+            }
+            lock.notifyAll();
+        }
+        return dropped;
+    }
+
+    /**
+     * @return true if the calling thread is one of the workers of this executor, which must not wait for it to terminate.
+     */
+    protected boolean isWorker() {
+        synchronized(lock) {
+            return threads.contains(Thread.currentThread());
+        }
+    }
+
+    @Override
+    public boolean isShutdown() {
+        synchronized(lock) {
+            return shutdown;
+        }
+    }
+
+    @Override
+    public boolean isTerminated() {
+        synchronized(lock) {
+            return shutdown && threads.isEmpty();
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized(lock) {
+            while(!(shutdown && threads.isEmpty())) {
+                long remaining = deadline - System.nanoTime();
+                if(remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+            return true;
+        }
+    }
+
+    private class Worker implements Runnable {
+        @Override
+        public void run() {
+            try {
+                while(true) {
+                    Task task;
+                    synchronized(lock) {
+                        while((task = next()) == null) {
+                            if(shutdown && pending == 0) {
+                                return;
+                            }
+                            try {
+                                lock.wait();
+                            } catch (InterruptedException e) {
+                                if(shutdown && pending == 0) {
+                                    return;
+                                }
+                            }
+                        }
+                    }
+                    if(metrics != null) {
+                        metrics.queueWait(task.priority, System.nanoTime() - task.queuedAt);
+                    }
+                    current.set(task.priority);
+                    try {
+                        task.command.run();
+                    } catch (RuntimeException | Error e) {
+                        Thread thread = Thread.currentThread();
+                        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                    } finally {
+                        current.remove();
+                        Thread.interrupted();
+                        synchronized(lock) {
+                            finished(task);
+                        }
+                    }
+                }
+            } finally {
+                synchronized(lock) {
+                    threads.remove(Thread.currentThread());
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    private static class Task {
+        private final Runnable command;
+        private final Priority priority;
+        private final String[] keys;
+        private final long queuedAt = System.nanoTime();
+        private long sequence;
+        private Priority effective;
+        private boolean waiting = false;
+        private boolean started = false;
+
+        private int blocked = 0;
+
+        private Task(Runnable command, Priority priority, String[] keys) {
+            this.command = command;
+            this.priority = priority;
+            this.keys = keys;
+            this.effective = priority;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized(lock) {
+            return "PriorityExecutor[queued=" + pending + ", running=" + Arrays.toString(running) + "]";
+        }
+    }
+}
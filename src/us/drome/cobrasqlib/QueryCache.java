@@ -0,0 +1,244 @@
+package us.drome.cobrasqlib;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An opt-in cache of query results keyed by the normalized SQL of a query and its bound parameters.
+ *
+ * The cache is bounded by an estimate of the memory held by the cached <tt>Row</tt>s and evicts the least recently
+ * used entries first. Every entry records the tables its query reads from, and a write to any of those tables
+ * removes it.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class QueryCache {
+    private static final Pattern TABLE_PATTERN = Pattern.compile(
+            "\\b(FROM|JOIN|INTO|UPDATE|TABLE)\\s+(?:IF\\s+(?:NOT\\s+)?EXISTS\\s+)?", Pattern.CASE_INSENSITIVE);
+    /**
+     * A table name, optionally qualified by a schema and followed by an alias, and the comma before the next table of a
+     * <tt>FROM</tt> list. The schema is skipped and the name of the table captured.
+     */
+    private static final Pattern TABLE_NAME = Pattern.compile(
+            "\\s*(?:[`\"\\[]?\\w+[`\"\\]]?\\s*\\.\\s*)?[`\"\\[]?(\\w+)[`\"\\]]?"
+            + "(?:\\s+(?:AS\\s+)?(?!(?:WHERE|JOIN|INNER|LEFT|RIGHT|CROSS|FULL|OUTER|NATURAL|ON|USING|GROUP|ORDER|LIMIT|HAVING"
+            + "|UNION|EXCEPT|INTERSECT|SET|VALUES|SELECT|DEFAULT)\\b)\\w+)?\\s*(,)?", Pattern.CASE_INSENSITIVE);
+    /**
+     * The end of a subquery in a <tt>FROM</tt> list, with its alias, followed by more tables. It also matches the end of
+     * function calls in a select list, which only makes the statement depend on more tables than it does.
+     */
+    private static final Pattern SUBQUERY_END = Pattern.compile("\\)\\s*(?:(?:AS\\s+)?\\w+\\s*)?,", Pattern.CASE_INSENSITIVE);
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final long maxWeight;
+    private long weight = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Protected constructor to initialize a new <tt>QueryCache</tt>.
+     * @param maxWeight The estimated amount of memory in bytes that cached results may hold.
+     */
+    protected QueryCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Looks up a cached result.
+     * @param key The key of the query.
+     * @return The cached rows, or <tt>null</tt> if the query is not cached or has expired.
+     */
+    protected synchronized List<Row> get(Key key) {
+        Entry entry = entries.get(key);
+        if(entry != null && entry.expires < System.currentTimeMillis()) {
+            remove(key);
+            entry = null;
+        }
+        if(entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.rows;
+    }
+
+    /**
+     * Stores the result of a query, evicting the least recently used results while the cache is over its bound.
+     * @param key The key of the query.
+     * @param rows The result of the query.
+     * @param ttlMillis How long the result may be served from the cache.
+     */
+    protected synchronized void put(Key key, List<Row> rows, long ttlMillis) {
+        if(ttlMillis <= 0) {
+            return;
+        }
+        remove(key);
+        Entry entry = new Entry(rows, System.currentTimeMillis() + ttlMillis, tablesOf(key.sql), weigh(rows));
+        entries.put(key, entry);
+        weight += entry.weight;
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while(weight > maxWeight && eldest.hasNext()) {
+            weight -= eldest.next().getValue().weight;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Removes every cached result that depends on the specified table.
+     * @param table The name of the table that was written to.
+     */
+    public synchronized void invalidate(String table) {
+        Iterator<Entry> entryIt = entries.values().iterator();
+        while(entryIt.hasNext()) {
+            Entry entry = entryIt.next();
+            if(entry.tables.isEmpty() || entry.tables.contains(table.toLowerCase())) {
+                weight -= entry.weight;
+                entryIt.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes every cached result.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * Invalidates every table that a statement may modify. If no table can be found in the statement, the whole cache is invalidated.
+     * @param update The SQL statement that modifies the database.
+     */
+    protected void invalidateFor(String update) {
+        Set<String> tables = tablesOf(update);
+        if(tables.isEmpty()) {
+            invalidateAll();
+        } else {
+            for(String table : tables) {
+                invalidate(table);
+            }
+        }
+    }
+
+    private void remove(Key key) {
+        Entry entry = entries.remove(key);
+        if(entry != null) {
+            weight -= entry.weight;
+        }
+    }
+
+    /**
+     * @return The estimated amount of memory in bytes held by cached results.
+     */
+    public synchronized long getWeight() { return weight; }
+
+    /**
+     * @return The amount of lookups answered from the cache.
+     */
+    public synchronized long getHits() { return hits; }
+
+    /**
+     * @return The amount of lookups that were not answered from the cache.
+     */
+    public synchronized long getMisses() { return misses; }
+
+    /**
+     * Finds the names of the tables a SQL statement refers to.
+     * @param sql The SQL statement.
+     * @return The lower case names of the referenced tables.
+     */
+    protected static Set<String> tablesOf(String sql) {
+        Set<String> tables = new HashSet<>();
+        Matcher name = TABLE_NAME.matcher(sql);
+        Matcher matcher = TABLE_PATTERN.matcher(sql);
+        while(matcher.find()) {
+            readTables(sql, matcher.end(), matcher.group(1).equalsIgnoreCase("FROM"), name, tables);
+        }
+        matcher = SUBQUERY_END.matcher(sql);
+        while(matcher.find()) {
+            readTables(sql, matcher.end(), true, name, tables);
+        }
+        return tables;
+    }
+
+    /**
+     * Reads the table named at a position, and every further table of the list if it is a <tt>FROM</tt> list.
+     */
+    private static void readTables(String sql, int position, boolean list, Matcher name, Set<String> tables) {
+        while(position < sql.length() && name.region(position, sql.length()).lookingAt()) {
+            tables.add(name.group(1).toLowerCase());
+            position = name.end();
+            if(!list || name.group(2) == null) {
+                return;
+            }
+        }
+    }
+
+    private static long weigh(List<Row> rows) {
+        long total = 64;
+        for(Row row : rows) {
+            total += 48;
+            for(Column column : row.toArray()) {
+                Object data = column.getData();
+                total += 32;
+                if(data instanceof String) {
+                    total += 40 + ((String)data).length() * 2;
+                } else if(data instanceof byte[]) {
+                    total += 16 + ((byte[])data).length;
+                } else if(data != null) {
+                    total += 24;
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * The identity of a query: its SQL with whitespace normalized and its bound parameters, with arrays such as
+     * <tt>byte[]</tt> compared by their contents.
+     */
+    protected static class Key {
+        protected final String sql;
+        private final Object[] params;
+
+        protected Key(String sql, Object... params) {
+            this.sql = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+            this.params = params == null ? new Object[0] : params.clone();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key)other).sql.equals(sql) && Arrays.deepEquals(((Key)other).params, params);
+        }
+
+        @Override
+        public int hashCode() {
+            return sql.hashCode() * 31 + Arrays.deepHashCode(params);
+        }
+    }
+
+    private static class Entry {
+        private final List<Row> rows;
+        private final long expires;
+        private final Set<String> tables;
+        private final long weight;
+
+        private Entry(List<Row> rows, long expires, Set<String> tables, long weight) {
+            this.rows = Collections.unmodifiableList(rows);
+            this.expires = expires;
+            this.tables = tables;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package us.drome.cobrasqlib;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A handle to an asynchronous database operation that can be used to check on or cancel it.
+ *
+ * An operation may have a deadline that covers both the time spent waiting in the queue and the time spent executing.
+ * Once the deadline passes, queued work is dropped and running statements are cancelled.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class QueryHandle {
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int DONE = 2;
+    private static final int CANCELLED = 3;
+    private static final int TIMED_OUT = 4;
+
+    private final AtomicInteger state = new AtomicInteger(QUEUED);
+    private final long timeoutMillis;
+    private final long deadline;
+    private volatile Statement statement;
+    private volatile ScheduledFuture<?> watchdog;
+
+    /**
+     * Protected constructor to initialize a new <tt>QueryHandle</tt> for an operation that is about to be queued.
+     * @param timeoutMillis The time the operation may take from now, including queue wait, or 0 for no deadline.
+     */
+    protected QueryHandle(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        this.deadline = timeoutMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+    }
+
+    /**
+     * @return A handle for an operation that was answered without being queued.
+     */
+    protected static QueryHandle completed() {
+        QueryHandle handle = new QueryHandle(0);
+        handle.state.set(DONE);
+        return handle;
+    }
+
+    /**
+     * Cancels the operation. Queued work is dropped, and a running statement is cancelled. The callback of a
+     * cancelled operation is not invoked.
+     * @return true if the operation was cancelled, false if it had already finished.
+     */
+    public boolean cancel() {
+        if(state.compareAndSet(QUEUED, CANCELLED) || state.compareAndSet(RUNNING, CANCELLED)) {
+            stop();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the operation has completed, failed, timed out or was cancelled.
+     */
+    public boolean isDone() { return state.get() >= DONE; }
+
+    /**
+     * @return true if the operation was cancelled through <tt>cancel</tt>.
+     */
+    public boolean isCancelled() { return state.get() == CANCELLED; }
+
+    /**
+     * @return true if the operation's deadline passed before it completed.
+     */
+    public boolean isTimedOut() { return state.get() == TIMED_OUT; }
+
+    /**
+     * @return The timeout of this operation in milliseconds, or 0 if it has no deadline.
+     */
+    public long getTimeout() { return timeoutMillis; }
+
+    /**
+     * Marks the operation as running.
+     * @return false if the operation was cancelled or timed out while queued and must be dropped.
+     */
+    protected boolean start() { return state.compareAndSet(QUEUED, RUNNING); }
+
+    /**
+     * Marks the operation as completed.
+     * @return true if the result should be delivered, false if the operation was cancelled or timed out.
+     */
+    protected boolean complete() {
+        if(state.compareAndSet(RUNNING, DONE) || state.compareAndSet(QUEUED, DONE)) {
+            if(watchdog != null) {
+                watchdog.cancel(false);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Marks the operation as timed out and cancels any running statement.
+     * @return true if the operation timed out, false if it had already finished.
+     */
+    protected boolean expire() {
+        if(state.compareAndSet(QUEUED, TIMED_OUT) || state.compareAndSet(RUNNING, TIMED_OUT)) {
+            stop();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return The exception delivered to callers when this operation times out.
+     */
+    protected SQLTimeoutException timeoutException() {
+        return new SQLTimeoutException("Operation did not complete within its " + timeoutMillis + "ms deadline.");
+    }
+
+    /**
+     * Sets the watchdog that expires this operation at its deadline.
+     * @param watchdog The scheduled expiry.
+     */
+    protected void setWatchdog(ScheduledFuture<?> watchdog) { this.watchdog = watchdog; }
+
+    /**
+     * Registers the statement the operation is executing so it can be cancelled, and limits its execution
+     * time to what is left of the deadline.
+     * @param statement The statement about to be executed.
+     * @throws SQLException If the operation has already been cancelled or timed out.
+     */
+    protected void attach(Statement statement) throws SQLException {
+        this.statement = statement;
+        if(state.get() != RUNNING) {
+            throw state.get() == TIMED_OUT ? timeoutException() : new SQLException("Operation was cancelled.");
+        }
+        if(deadline != 0) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            statement.setQueryTimeout((int)Math.max(1, (remaining + 999) / 1000));
+        }
+    }
+
+    private void stop() {
+        if(watchdog != null) {
+            watchdog.cancel(false);
+        }
+        Statement running = statement;
+        if(running != null) {
+            try {
+                running.cancel();
+            } catch (SQLException e) {
+                // The statement has already finished or its connection is gone.
+            }
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package us.drome.cobrasqlib;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Appends every statement run by a <tt>SQLEngine</tt> to a compact binary log, so a production workload can be captured
+ * and replayed against a test database with <tt>QueryReplayer</tt>. Recording is started with <tt>SQLEngine.startRecording</tt>.
+ *
+ * Every entry holds the kind and SQL of the statement, its parameters, when it started and how long it took, the thread
+ * and priority it ran with, and whether it succeeded. Entries are buffered and written in the order statements finish.
+ * Recording to an existing log appends to it, after cutting off an entry left incomplete by a crash. Streamed parameters are consumed by their statement, so they are recorded
+ * as an empty value of the same kind.
+ *
+ * Every entry is encoded in full before it is written, and recording stops at the first failure to write the log, so a
+ * log is only ever cut short after its last complete entry.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class QueryRecorder implements StatementListener, Closeable {
+    /**
+     * The version of the log format written by this class.
+     */
+    public static final int FORMAT_VERSION = 1;
+    private static final int MAGIC = 0x43535152;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private final Logger logger;
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream entry = new ByteArrayOutputStream();
+    private final DataOutputStream entryOut = new DataOutputStream(entry);
+    private final long epochOffsetNanos;
+    private long recorded = 0;
+    private boolean closed = false;
+
+    /**
+     * Protected constructor to open a log for recording, appending to it if it already exists. An existing log is read
+     * to its last complete entry and truncated there, so entries are never appended after a partial one.
+     * @param file The log file.
+     * @param logger The logger to report failures to write the log to.
+     * @throws IOException If the file cannot be opened or is not a log of a supported version.
+     */
+    protected QueryRecorder(File file, Logger logger) throws IOException {
+        this.file = file;
+        this.logger = logger;
+        boolean exists = file.length() > 0;
+        if(exists) {
+            long complete;
+            try (Reader reader = new Reader(file)) {
+                while(reader.next() != null) { }
+                complete = reader.getPosition();
+            }
+            if(complete < file.length()) {
+                logger.log(Level.WARNING, "Discarding " + (file.length() - complete) + " bytes of an incomplete entry at the end of " + file.getPath());
+                try (RandomAccessFile truncate = new RandomAccessFile(file, "rw")) {
+                    truncate.setLength(complete);
+                }
+            }
+        }
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), BUFFER_SIZE));
+        if(!exists) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+        }
+        this.epochOffsetNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - System.nanoTime();
+    }
+
+    /**
+     * @return The log file entries are written to.
+     */
+    public File getFile() { return file; }
+
+    /**
+     * @return The amount of entries written since recording started.
+     */
+    public synchronized long getRecorded() { return recorded; }
+
+    @Override
+    public void beforeStatement(StatementEvent event) { }
+
+    /**
+     * Appends a finished statement to the log. Failures to write are logged and stop the recording, and never affect
+     * the statement.
+     */
+    @Override
+    public synchronized void afterStatement(StatementEvent event) {
+        if(closed) {
+            return;
+        }
+        entry.reset();
+        try {
+            encode(event, entryOut);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to record statement to " + file.getPath() + ": " + e.getMessage());
+            return;
+        }
+        try {
+            entry.writeTo(out);
+            recorded++;
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Unable to record statement to " + file.getPath() + ", recording stopped: " + e.getMessage());
+            closed = true;
+            try {
+                out.close();
+            } catch (IOException ex) {
+                // The log is already failing.
+            }
+        }
+    }
+
+    private void encode(StatementEvent event, DataOutputStream out) throws IOException {
+        out.writeByte(event.getKind().ordinal());
+        out.writeLong(epochOffsetNanos + event.getStartNanos());
+        out.writeLong(event.getDurationNanos());
+        out.writeByte(event.getPriority().ordinal());
+        out.writeUTF(event.getThread());
+        ValueCodec.writeString(event.getSql(), out);
+        out.writeInt(event.getParamSets().size());
+        for(Object[] params : event.getParamSets()) {
+            out.writeInt(params.length);
+            for(Object param : params) {
+                if(param instanceof InputStream) {
+                    param = new byte[0];
+                } else if(param instanceof java.io.Reader) {
+                    param = "";
+                }
+                ValueCodec.writeObject(param, out);
+            }
+        }
+        out.writeInt(event.getRows());
+        out.writeBoolean(event.getError() != null);
+        if(event.getError() != null) {
+            ValueCodec.writeString(String.valueOf(event.getError().getMessage()), out);
+        }
+    }
+
+    /**
+     * Writes buffered entries to the log file.
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException {
+        if(!closed) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Writes buffered entries and closes the log file. Statements finishing afterwards are not recorded.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if(!closed) {
+            closed = true;
+            out.close();
+        }
+    }
+
+    private static void readHeader(DataInputStream in) throws IOException {
+        if(in.readInt() != MAGIC) {
+            throw new IOException("Not a CobraSQLib query log.");
+        }
+        int version = in.readInt();
+        if(version > FORMAT_VERSION) {
+            throw new IOException("Unsupported query log version " + version);
+        }
+    }
+
+    /**
+     * Reads the entries of a log one at a time. A log that ends part way through an entry, such as after a crash, is
+     * read up to the last complete entry.
+     */
+    public static class Reader implements Closeable {
+        private final CountingInputStream counter;
+        private final DataInputStream in;
+        private long position;
+
+        /**
+         * Opens a log for reading.
+         * @param file The log file.
+         * @throws IOException If the file cannot be opened or is not a log of a supported version.
+         */
+        public Reader(File file) throws IOException {
+            this.counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+            this.in = new DataInputStream(counter);
+            try {
+                readHeader(in);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            this.position = counter.count;
+        }
+
+        /**
+         * @return The offset in the log just past the last complete entry read, or past the header if none was read.
+         */
+        public long getPosition() { return position; }
+
+        /**
+         * @return The next entry of the log, or <tt>null</tt> if there are no more.
+         * @throws IOException
+         */
+        public Entry next() throws IOException {
+            int kind = in.read();
+            if(kind < 0) {
+                return null;
+            }
+            try {
+                long start = in.readLong();
+                long duration = in.readLong();
+                Priority priority = Priority.values()[in.readByte()];
+                String thread = in.readUTF();
+                String sql = ValueCodec.readString(in);
+                int sets = in.readInt();
+                List<Object[]> paramSets = new ArrayList<>(sets);
+                for(int i = 0; i < sets; i++) {
+                    Object[] params = new Object[in.readInt()];
+                    for(int j = 0; j < params.length; j++) {
+                        params[j] = ValueCodec.readObject(in);
+                    }
+                    paramSets.add(params);
+                }
+                int rows = in.readInt();
+                String error = in.readBoolean() ? ValueCodec.readString(in) : null;
+                position = counter.count;
+                return new Entry(StatementEvent.Kind.values()[kind], start, duration, priority, thread, sql, paramSets, rows, error);
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Counts the bytes read through it, so the end of the last complete entry is known.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long count = 0;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if(b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if(read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() { return false; }
+    }
+
+    /**
+     * A statement read from a log.
+     */
+    public static class Entry {
+        private final StatementEvent.Kind kind;
+        private final long startNanos;
+        private final long durationNanos;
+        private final Priority priority;
+        private final String thread;
+        private final String sql;
+        private final List<Object[]> paramSets;
+        private final int rows;
+        private final String error;
+
+        protected Entry(StatementEvent.Kind kind, long startNanos, long durationNanos, Priority priority, String thread, String sql,
+                List<Object[]> paramSets, int rows, String error) {
+            this.kind = kind;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+            this.priority = priority;
+            this.thread = thread;
+            this.sql = sql;
+            this.paramSets = Collections.unmodifiableList(paramSets);
+            this.rows = rows;
+            this.error = error;
+        }
+
+        public StatementEvent.Kind getKind() { return kind; }
+
+        /**
+         * @return When the statement started, in nanoseconds since the epoch.
+         */
+        public long getStartNanos() { return startNanos; }
+
+        /**
+         * @return How long the statement took, in nanoseconds.
+         */
+        public long getDurationNanos() { return durationNanos; }
+
+        /**
+         * @return The priority of the operation that ran the statement, or <tt>Priority.NORMAL</tt> if it ran synchronously.
+         */
+        public Priority getPriority() { return priority; }
+
+        /**
+         * @return The name of the thread that ran the statement.
+         */
+        public String getThread() { return thread; }
+
+        public String getSql() { return sql; }
+
+        /**
+         * @return The parameters of every execution of the statement. Queries and updates have a single set.
+         */
+        public List<Object[]> getParamSets() { return paramSets; }
+
+        /**
+         * @return The amount of rows returned by a query or affected by an update.
+         */
+        public int getRows() { return rows; }
+
+        /**
+         * @return The error message of the statement, or <tt>null</tt> if it succeeded.
+         */
+        public String getError() { return error; }
+
+        @Override
+        public String toString() {
+            return "Entry[kind=" + kind + ", sql=" + sql + ", durationNanos=" + durationNanos + (error == null ? "" : ", error=" + error) + "]";
+        }
+    }
+}
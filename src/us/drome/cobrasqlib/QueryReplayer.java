@@ -0,0 +1,243 @@
+package us.drome.cobrasqlib;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a log written by <tt>QueryRecorder</tt> against a <tt>SQLEngine</tt>, for load testing a database with a captured
+ * workload. Statements are queued on the engine with the priority they were recorded with, either paced like the original
+ * workload, sped up or slowed down by a factor, or as fast as the engine accepts them.
+ *
+ * The latency of a statement is measured from the time it was due to be queued to the time it completed, so time spent
+ * waiting behind other statements is included as it would be for the original caller. Completions are counted on the
+ * query executor itself, so a replay never waits on the engine's <tt>DeliveryScheduler</tt>.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class QueryReplayer {
+    private final SQLEngine engine;
+    private final Object lock = new Object();
+    private int maxOutstanding = 1000;
+    private int outstanding;
+    private long[] latencies;
+    private int completed;
+    private int errors;
+
+    /**
+     * Initializes a new <tt>QueryReplayer</tt>.
+     * @param engine The engine to replay statements against.
+     */
+    public QueryReplayer(SQLEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Sets how many statements may be queued and not yet completed. Reading the log pauses while the limit is reached,
+     * which keeps an as-fast-as-possible replay from queueing the entire log at once.
+     * @param maxOutstanding The largest amount of outstanding statements. Defaults to 1000.
+     */
+    public void setMaxOutstanding(int maxOutstanding) { this.maxOutstanding = Math.max(1, maxOutstanding); }
+
+    /**
+     * Replays every statement of a log and waits for them to complete.
+     * @param log The log file to replay.
+     * @param speed The factor to replay the original pacing at, such as 1 for the original speed or 2 for twice as fast,
+     * or 0 to replay as fast as possible.
+     * @return The throughput and latencies of the replay.
+     * @throws IOException If the log cannot be read.
+     * @throws InterruptedException If the calling thread was interrupted while pacing or waiting for statements.
+     */
+    public ReplayReport replay(File log, double speed) throws IOException, InterruptedException {
+        synchronized(lock) {
+            outstanding = 0;
+            latencies = new long[1024];
+            completed = 0;
+            errors = 0;
+        }
+        long replayStart = System.nanoTime();
+        long logStart = -1;
+        try (QueryRecorder.Reader reader = new QueryRecorder.Reader(log)) {
+            QueryRecorder.Entry entry;
+            while((entry = reader.next()) != null) {
+                long due = System.nanoTime();
+                if(speed > 0) {
+                    if(logStart < 0) {
+                        logStart = entry.getStartNanos();
+                    }
+                    due = replayStart + (long) ((entry.getStartNanos() - logStart) / speed);
+                    long wait = due - System.nanoTime();
+                    if(wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                }
+                synchronized(lock) {
+                    while(outstanding >= maxOutstanding) {
+                        lock.wait();
+                    }
+                    outstanding++;
+                }
+                dispatch(entry, due);
+            }
+        }
+        synchronized(lock) {
+            while(outstanding > 0) {
+                lock.wait();
+            }
+            return new ReplayReport(completed, errors, System.nanoTime() - replayStart, Arrays.copyOf(latencies, completed));
+        }
+    }
+
+    private void dispatch(final QueryRecorder.Entry entry, final long due) {
+        try {
+            engine.getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    boolean failed = false;
+                    try {
+                        execute(entry);
+                    } catch (SQLException | RuntimeException e) {
+                        failed = true;
+                    }
+                    finished(due, failed);
+                }
+            }, entry.getPriority(), null);
+        } catch (RuntimeException e) {
+            synchronized(lock) {
+                outstanding--;
+                lock.notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Runs a recorded statement on the engine's connection. Unlike <tt>runQuery</tt> and <tt>runUpdate</tt>, failures are
+     * thrown so they are counted in the report.
+     */
+    private Integer execute(QueryRecorder.Entry entry) throws SQLException {
+        Connection conn = engine.getConnection();
+        if(conn == null) {
+            throw new SQLException("No connection to replay against.");
+        }
+        int rows = 0;
+        switch(entry.getKind()) {
+            case QUERY:
+                try (PreparedStatement statement = engine.prepare(conn, entry.getSql(), entry.getParamSets().get(0));
+                        ResultSet result = statement.executeQuery()) {
+                    while(result.next()) {
+                        rows++;
+                    }
+                }
+                break;
+            case UPDATE:
+                try (PreparedStatement statement = engine.prepare(conn, entry.getSql(), entry.getParamSets().get(0))) {
+                    rows = statement.executeUpdate();
+                }
+                engine.invalidateReads(entry.getSql());
+                break;
+            default:
+                conn.setAutoCommit(false);
+                try (PreparedStatement statement = engine.prepare(conn, entry.getSql())) {
+                    for(Object[] params : entry.getParamSets()) {
+                        engine.bindParameters(statement, params);
+                        statement.addBatch();
+                    }
+                    rows = statement.executeBatch().length;
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+                engine.invalidateReads(entry.getSql());
+        }
+        return rows;
+    }
+
+    private void finished(long due, boolean failed) {
+        long latency = System.nanoTime() - due;
+        synchronized(lock) {
+            if(completed == latencies.length) {
+                latencies = Arrays.copyOf(latencies, completed * 2);
+            }
+            latencies[completed++] = latency;
+            if(failed) {
+                errors++;
+            }
+            outstanding--;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * The outcome of a replay.
+     */
+    public static class ReplayReport {
+        private final int statements;
+        private final int errors;
+        private final long elapsedNanos;
+        private final long[] latencies;
+
+        protected ReplayReport(int statements, int errors, long elapsedNanos, long[] latencies) {
+            this.statements = statements;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+            this.latencies = latencies;
+            Arrays.sort(this.latencies);
+        }
+
+        /**
+         * @return The amount of statements replayed.
+         */
+        public int getStatements() { return statements; }
+
+        /**
+         * @return The amount of statements that failed or timed out.
+         */
+        public int getErrors() { return errors; }
+
+        /**
+         * @return The time from the start of the replay until the last statement completed, in nanoseconds.
+         */
+        public long getElapsedNanos() { return elapsedNanos; }
+
+        /**
+         * @return The amount of statements completed per second.
+         */
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : statements * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+
+        /**
+         * @param percentile The percentile between 0 and 100, such as 99 for the 99th percentile.
+         * @return The latency below which the provided percentage of statements completed, in nanoseconds.
+         */
+        public long getLatencyPercentile(double percentile) {
+            if(latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(Math.max(0, Math.min(100, percentile)) / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, index)];
+        }
+
+        /**
+         * @return The highest latency of any statement, in nanoseconds.
+         */
+        public long getMaxLatencyNanos() { return latencies.length == 0 ? 0 : latencies[latencies.length - 1]; }
+
+        @Override
+        public String toString() {
+            return String.format("ReplayReport[statements=%d, errors=%d, elapsed=%dms, throughput=%.1f/s, p50=%.2fms, p90=%.2fms, p99=%.2fms, max=%.2fms]",
+                    statements, errors, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), getThroughput(),
+                    getLatencyPercentile(50) / 1e6, getLatencyPercentile(90) / 1e6, getLatencyPercentile(99) / 1e6, getMaxLatencyNanos() / 1e6);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package us.drome.cobrasqlib;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tracks the reads that are queued or running on an engine so that identical reads, with the same SQL and the same
+ * parameters, can share a single execution. Later callers are attached to the pending read and receive the same result.
+ *
+ * A write detaches every pending read of the tables it modifies, so reads issued after a write are never answered
+ * by an execution that was queued before it. Nothing is kept once a read has finished.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class ReadCoalescer {
+    private final Map<QueryCache.Key, Load> pending = new HashMap<>();
+
+    /**
+     * Registers a caller waiting for a query result. If the query is not already pending a new load is started
+     * and the caller is responsible for executing it and passing the load to <tt>finish</tt>.
+     * @param key The key of the query.
+     * @param callback The callback to invoke with the result.
+     * @return The new load to execute, or <tt>null</tt> if the caller was attached to a pending load.
+     */
+    protected synchronized Load join(QueryCache.Key key, Callback callback) {
+        Load load = pending.get(key);
+        if(load != null) {
+            load.waiters.add(callback);
+            return null;
+        }
+        load = new Load(key, QueryCache.tablesOf(key.sql));
+        load.waiters.add(callback);
+        pending.put(key, load);
+        return load;
+    }
+
+    /**
+     * Marks a load as finished so that no more callers are attached to it.
+     * @param load The load that finished.
+     * @return The callbacks waiting for the result.
+     */
+    protected synchronized List<Callback> finish(Load load) {
+        if(pending.get(load.key) == load) {
+            pending.remove(load.key);
+        }
+        return load.waiters;
+    }
+
+    /**
+     * Detaches every pending load that reads from the specified table and marks it as stale.
+     * @param table The name of the table that was written to.
+     */
+    public synchronized void invalidate(String table) {
+        Iterator<Load> loadIt = pending.values().iterator();
+        while(loadIt.hasNext()) {
+            Load load = loadIt.next();
+            if(load.tables.isEmpty() || load.tables.contains(table.toLowerCase())) {
+                load.stale = true;
+                loadIt.remove();
+            }
+        }
+    }
+
+    /**
+     * Detaches every pending load that reads from a table a statement may modify. If no table can be found
+     * in the statement, every pending load is detached.
+     * @param update The SQL statement that modifies the database.
+     */
+    protected synchronized void invalidateFor(String update) {
+        if(pending.isEmpty()) {
+            return;
+        }
+        Set<String> tables = QueryCache.tablesOf(update);
+        if(tables.isEmpty()) {
+            for(Load load : pending.values()) {
+                load.stale = true;
+            }
+            pending.clear();
+        } else {
+            for(String table : tables) {
+                invalidate(table);
+            }
+        }
+    }
+
+    /**
+     * A query that is queued or running, together with every caller waiting for its result.
+     */
+    protected static class Load {
+        private final QueryCache.Key key;
+        private final Set<String> tables;
+        private final List<Callback> waiters = new ArrayList<>();
+        private volatile boolean stale = false;
+
+        private Load(QueryCache.Key key, Set<String> tables) {
+            this.key = key;
+            this.tables = tables;
+        }
+
+        /**
+         * @return true if one of the tables this load reads from was written after it was queued.
+         */
+        protected boolean isStale() { return stale; }
+    }
+}
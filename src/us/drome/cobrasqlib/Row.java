@@ -3,6 +3,7 @@ package us.drome.cobrasqlib;
 import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
@@ -24,7 +25,7 @@ public class Row {
      */
     protected Row(Table parent, Column... columns) {
         this.parent = parent;
-        this.columns = (Set<Column>) Arrays.asList(columns);
+        this.columns = new LinkedHashSet<>(Arrays.asList(columns));
     }
     
     /**
@@ -0,0 +1,262 @@
+package us.drome.cobrasqlib;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Streams the result of a query to <tt>RowSubscriber</tt>s one <tt>Row</tt> at a time. Rows are pulled from the
+ * <tt>ResultSet</tt> only as subscriber demand allows, so the full result is never held in memory.
+ * 
+ * Every subscription executes the query separately on its own connection. Rows are fetched on a cursor thread shared
+ * by all publishers in batches no larger than the outstanding demand, so a slow subscriber never holds up the engine's
+ * query executor.
+ *
+ * An open SQLite cursor holds a read lock that keeps writes on other connections from committing, so on a
+ * <tt>SQLiteEngine</tt> every batch is read with its own <tt>LIMIT</tt> and <tt>OFFSET</tt> and the cursor is closed
+ * before the rows are delivered. Rows written while such a stream is read may then be skipped or delivered twice.
+ * 
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class RowPublisher {
+    /**
+     * The largest JDBC fetch size that will be requested, regardless of the outstanding demand.
+     */
+    public static final int MAX_FETCH_SIZE = 1000;
+    
+    private static final AtomicInteger cursorThreads = new AtomicInteger();
+    private static final ExecutorService cursors = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "CobraSQLib-cursor-" + cursorThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    
+    private final SQLEngine engine;
+    private final String query;
+    private final Object[] params;
+    
+    /**
+     * Protected constructor to initialize a new <tt>RowPublisher</tt>.
+     * @param engine The database the query is run against.
+     * @param query A string of the full SQL query to execute.
+     * @param params Values to bind to the <tt>?</tt> placeholders in the query.
+     */
+    protected RowPublisher(SQLEngine engine, String query, Object... params) {
+        this.engine = engine;
+        this.query = query;
+        this.params = params;
+    }
+    
+    /**
+     * Subscribes to the result of this publisher's query. The query is executed once the subscriber first requests rows.
+     * @param subscriber The <tt>RowSubscriber</tt> that will receive the rows.
+     */
+    public void subscribe(RowSubscriber subscriber) {
+        subscriber.onSubscribe(new CursorSubscription(subscriber));
+    }
+    
+    private class CursorSubscription implements RowSubscription, Runnable {
+        private final RowSubscriber subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean cancelled = false;
+        private volatile Throwable failure;
+        private volatile PreparedStatement statement;
+        private final boolean paged = engine instanceof SQLiteEngine;
+        private long offset = 0;
+        private boolean done = false;
+        private Connection conn;
+        private ResultSet result;
+        private ResultSetMetaData resultMeta;
+        private Table table;
+        
+        private CursorSubscription(RowSubscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+        
+        @Override
+        public void request(long n) {
+            if(n <= 0) {
+                // Signalled from the cursor thread, as it may be delivering a row right now.
+                failure = new IllegalArgumentException("Requested row count must be positive, was " + n + ".");
+                cancel();
+                return;
+            }
+            long current, next;
+            do {
+                current = demand.get();
+                next = current + n < 0 ? Long.MAX_VALUE : current + n;
+            } while(!demand.compareAndSet(current, next));
+            schedule();
+        }
+        
+        @Override
+        public void cancel() {
+            cancelled = true;
+            PreparedStatement running = statement;
+            if(running != null) {
+                try {
+                    running.cancel();
+                } catch (SQLException e) {
+                    engine.logger.log(Level.WARNING, e.getMessage());
+                }
+            }
+            schedule();
+        }
+        
+        private void schedule() {
+            if(scheduled.compareAndSet(false, true)) {
+                try {
+                    cursors.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                    close();
+                }
+            }
+        }
+        
+        @Override
+        public void run() {
+            try {
+                if(done) {
+                    return;
+                } else if(cancelled) {
+                    close();
+                    if(failure != null) {
+                        subscriber.onError(failure);
+                    }
+                    return;
+                }
+                int batch = (int)Math.min(demand.get(), MAX_FETCH_SIZE);
+                if(paged) {
+                    if(emitPage(batch)) {
+                        return;
+                    }
+                } else {
+                    if(result == null) {
+                        open(query, params);
+                    }
+                    result.setFetchSize(batch);
+                    for(int emitted = 0; emitted < batch && !cancelled; emitted++) {
+                        if(!result.next()) {
+                            close();
+                            subscriber.onComplete();
+                            return;
+                        }
+                        emit(engine.readRow(table, result, resultMeta));
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                boolean wasCancelled = cancelled;
+                close();
+                if(!wasCancelled) {
+                    engine.logger.log(Level.SEVERE, e.getMessage());
+                    subscriber.onError(e);
+                } else if(failure != null) {
+                    subscriber.onError(failure);
+                }
+                return;
+            } finally {
+                scheduled.set(false);
+            }
+            if(!done && (cancelled || demand.get() > 0)) {
+                schedule();
+            }
+        }
+        
+        /**
+         * Reads the next page of at most <tt>batch</tt> rows and closes its cursor before delivering them.
+         * @return true if the stream completed.
+         */
+        private boolean emitPage(int batch) throws SQLException {
+            Object[] pageParams = Arrays.copyOf(params, params.length + 2);
+            pageParams[params.length] = batch;
+            pageParams[params.length + 1] = offset;
+            open("SELECT * FROM (" + query + ") LIMIT ? OFFSET ?", pageParams);
+            List<Row> page = new ArrayList<>(batch);
+            try {
+                while(result.next()) {
+                    page.add(engine.readRow(table, result, resultMeta));
+                }
+            } finally {
+                closeCursor();
+            }
+            offset += page.size();
+            for(Row row : page) {
+                if(cancelled) {
+                    return false;
+                }
+                emit(row);
+            }
+            if(page.size() < batch && !cancelled) {
+                close();
+                subscriber.onComplete();
+                return true;
+            }
+            return false;
+        }
+        
+        private void emit(Row row) {
+            if(demand.get() != Long.MAX_VALUE) {
+                demand.decrementAndGet();
+            }
+            subscriber.onNext(row);
+        }
+        
+        private void open(String query, Object[] params) throws SQLException {
+            if(conn == null) {
+                conn = engine.openConnection();
+            }
+            PreparedStatement prepared = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            prepared.setFetchSize((int)Math.min(demand.get(), MAX_FETCH_SIZE));
+            engine.bindParameters(prepared, params);
+            statement = prepared;
+            result = prepared.executeQuery();
+            resultMeta = result.getMetaData();
+            if(table == null) {
+                table = engine.getTable(resultMeta.getTableName(1));
+            }
+        }
+        
+        private void closeCursor() {
+            try {
+                if(result != null) { result.close(); }
+                if(statement != null) { statement.close(); }
+            } catch (SQLException e) {
+                engine.logger.log(Level.SEVERE, e.getMessage());
+            } finally {
+                result = null;
+                statement = null;
+            }
+        }
+        
+        private void close() {
+            done = true;
+            closeCursor();
+            try {
+                if(conn != null) { conn.close(); }
+            } catch (SQLException e) {
+                engine.logger.log(Level.SEVERE, e.getMessage());
+            } finally {
+                conn = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package us.drome.cobrasqlib;
+
+/**
+ * Receiver of <tt>Row</tt>s streamed from a <tt>RowPublisher</tt>. Mirrors the contract of a reactive streams subscriber:
+ * no rows are delivered until they are requested through the <tt>RowSubscription</tt>, and all signals for one
+ * subscription are delivered sequentially.
+ * 
+ * @author TheAcademician
+ * @since 0.1
+ */
+public interface RowSubscriber {
+    /**
+     * Called once before any other signal with the subscription used to request rows or cancel.
+     * @param subscription The subscription for this subscriber.
+     */
+    void onSubscribe(RowSubscription subscription);
+    
+    /**
+     * Called for every row, never more often than the amount of rows requested.
+     * @param row The next <tt>Row</tt> of the result.
+     */
+    void onNext(Row row);
+    
+    /**
+     * Called at most once if the query failed. No further signals follow.
+     * @param throwable The cause of the failure.
+     */
+    void onError(Throwable throwable);
+    
+    /**
+     * Called at most once after the last row has been delivered. No further signals follow.
+     */
+    void onComplete();
+}
@@ -0,0 +1,20 @@
+package us.drome.cobrasqlib;
+
+/**
+ * Link between a <tt>RowPublisher</tt> and a <tt>RowSubscriber</tt> used to signal demand or cancel the stream.
+ * 
+ * @author TheAcademician
+ * @since 0.1
+ */
+public interface RowSubscription {
+    /**
+     * Requests up to <tt>n</tt> more rows. Demand is cumulative.
+     * @param n The amount of additional rows to deliver, must be positive.
+     */
+    void request(long n);
+    
+    /**
+     * Stops the stream, cancels the running statement and releases its connection.
+     */
+    void cancel();
+}
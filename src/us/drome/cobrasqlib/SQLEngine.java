@@ -1,16 +1,34 @@
 package us.drome.cobrasqlib;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 import java.lang.reflect.InvocationTargetException;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,14 +44,51 @@ public abstract class SQLEngine {
     protected List<Table> tables;
     protected Connection connection;
     /**
-     * ExecutorService is used to run queries asynchronously. It is instantiated
-     * as a SingleThreadExecutor to queue all database operations so they are executed in order.
+     * The number of seconds a connection validation may take before the connection is considered broken.
      */
-    private final ExecutorService queryExecutor;
+    private static final int VALIDATION_TIMEOUT = 5;
+    private static final long SHUTDOWN_TIMEOUT = 30;
+    private final EngineMetrics metrics = new EngineMetrics();
+    private volatile long lastUsed;
+    private long validateAfterIdleMillis = 30000;
+    private long keepAliveMillis = 60000;
+    private ScheduledFuture<?> keepAlive;
+    /**
+     * PriorityExecutor is used to run queries asynchronously. It runs a single worker so the shared connection is only
+     * used by one operation at a time, and orders queued operations by their <tt>Priority</tt>.
+     */
+    private final PriorityExecutor queryExecutor;
+    /**
+     * ScheduledExecutorService is used to trigger periodic maintenance such as mirror refreshes. Scheduled work
+     * only queues tasks on the query executor and never touches the database itself.
+     */
+    private ScheduledExecutorService scheduler;
+    private volatile QueryCache queryCache;
+    private final ReadCoalescer inFlightReads = new ReadCoalescer();
+    private volatile boolean coalesceReads = false;
+    private volatile long defaultTimeout = 0;
+    private volatile long largeValueThreshold = -1;
+    private volatile int compressionThreshold = 256;
+    private volatile QueryRecorder recorder;
+    private final List<ChangeSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile ChangeLog changeLog;
+    private final List<PartitionedLogTable> logTables = new CopyOnWriteArrayList<>();
+    private volatile DeliveryScheduler deliveryScheduler = DeliveryScheduler.DIRECT;
+    private static final StatementListener[] NO_LISTENERS = new StatementListener[0];
+    /**
+     * The registered statement listeners, replaced as a whole when one is added or removed so the array can be read
+     * without locking. Statements check its length before creating an event.
+     */
+    private volatile StatementListener[] listeners = NO_LISTENERS;
+    /**
+     * The operation being executed by the query executor, used to apply its deadline to the statements it runs.
+     */
+    private final ThreadLocal<QueryHandle> currentHandle = new ThreadLocal<>();
     
     protected SQLEngine (Logger logger) throws InvalidSQLConfigException {
         this.logger = logger;
-        this.queryExecutor = Executors.newSingleThreadExecutor();
+        this.tables = new CopyOnWriteArrayList<>();
+        this.queryExecutor = new PriorityExecutor(1, metrics);
     }
 
     /**
@@ -47,34 +102,471 @@ public abstract class SQLEngine {
      * @param query A string of the full SQL query to execute against this database.
      * @param callback A <tt>Callback</tt> object that contains the class reference and method that will
      * be executed once the query is finished. This method must accept a parameter of <tt>List&lt;Map&lt;String, Object&gt;&gt;</tt>.
+     * @param params Values to bind to the <tt>?</tt> placeholders in the query, in order.
+     */
+    public QueryHandle runAsyncQuery (final String query, final Callback callback, final Object... params){
+        return runTimedQuery(query, defaultTimeout, callback, params);
+    }
+    
+    /**
+     * Runs a natively asynchronous query against this database with a deadline that covers both the time spent waiting
+     * in the queue and executing. If the deadline passes, the query is dropped or its statement cancelled and a
+     * <tt>SQLTimeoutException</tt> is passed to the callback's error method instead of a result.
+     * 
+     * @param query A string of the full SQL query to execute against this database.
+     * @param timeoutMillis The deadline for the query in milliseconds from now, or 0 for no deadline.
+     * @param callback Method to run on query completion. Must accept a <tt>List&lt;Row&gt;</tt> as a parameter.
+     * @param params Values to bind to the <tt>?</tt> placeholders in the query, in order.
+     * @return A <tt>QueryHandle</tt> that can be used to cancel the query.
+     */
+    public QueryHandle runTimedQuery(final String query, long timeoutMillis, final Callback callback, final Object... params) {
+        return runKeyedQuery(null, query, timeoutMillis, callback, params);
+    }
+    
+    /**
+     * Runs a natively asynchronous query that is kept in order with every other operation queued with the same key,
+     * whatever their priority.
+     * 
+     * @param key The ordering key of the query, such as a table and primary key, or <tt>null</tt> for none.
+     * @param query A string of the full SQL query to execute against this database.
+     * @param timeoutMillis The deadline for the query in milliseconds from now, or 0 for no deadline.
+     * @param callback Method to run on query completion. Must accept a <tt>List&lt;Row&gt;</tt> as a parameter.
+     * @param params Values to bind to the <tt>?</tt> placeholders in the query, in order.
+     * @return A <tt>QueryHandle</tt> that can be used to cancel the query.
+     */
+    protected QueryHandle runKeyedQuery(String key, final String query, long timeoutMillis, final Callback callback, final Object... params) {
+        if(coalesceReads) {
+            return runSharedQuery(key, query, params, timeoutMillis, callback, null, 0);
+        }
+        return queue(timeoutMillis, callback, key, new Callable<Object>() {
+            @Override
+            public Object call() {
+                return runQuery(query, params);
+            }
+        });
+    }
+    
+    /**
+     * Runs a natively asynchronous query whose result may be answered from, and is stored in, the query cache.
+     * Results are only cached while the cache is enabled with <tt>enableQueryCache</tt>, otherwise this behaves like
+     * <tt>runAsyncQuery</tt>. Cache hits invoke the callback immediately on the calling thread.
+     * 
+     * Cached results are shared between callers and must not be modified.
+     * 
+     * @param query A string of the full SQL query to execute against this database.
+     * @param ttlMillis How long the result may be served from the cache, in milliseconds.
+     * @param callback Method to run on query completion. Must accept a <tt>List&lt;Row&gt;</tt> as a parameter.
+     * @param params Values to bind to the <tt>?</tt> placeholders in the query, in order.
+     * @return A <tt>QueryHandle</tt> that can be used to cancel delivery of the result.
+     */
+    public QueryHandle runCachedQuery(final String query, final long ttlMillis, final Callback callback, final Object... params) {
+        QueryCache cache = queryCache;
+        if(cache == null) {
+            return runAsyncQuery(query, callback, params);
+        }
+        List<Row> cached = cache.get(new QueryCache.Key(query, params));
+        if(cached != null) {
+            deliver(callback, cached);
+            return QueryHandle.completed();
+        }
+        return runSharedQuery(null, query, params, defaultTimeout, callback, cache, ttlMillis);
+    }
+    
+    /**
+     * Queues a query unless an identical query is already pending, in which case the callback is attached to it.
+     * The result is delivered to every attached callback as one shared, unmodifiable list. The deadline of each caller
+     * only applies to its own delivery, the shared statement is not cancelled.
+     */
+    private QueryHandle runSharedQuery(String orderKey, final String query, final Object[] params, long timeoutMillis, final Callback callback, final QueryCache cache, final long ttlMillis) {
+        final QueryHandle handle = new QueryHandle(timeoutMillis);
+        watch(handle, callback);
+        Callback waiter = new Callback() {
+            @Override
+            public void invoke(Object result) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+                if(handle.complete()) {
+                    callback.invoke(result);
+                }
+            }
+            
+            @Override
+            public boolean handlesErrors() { return callback.handlesErrors(); }
+            
+            @Override
+            public void invokeError(Throwable error) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+                if(handle.complete()) {
+                    callback.invokeError(error);
+                }
+            }
+        };
+        final QueryCache.Key key = new QueryCache.Key(query, params);
+        final ReadCoalescer.Load load = inFlightReads.join(key, waiter);
+        if(load == null) {
+            return handle;
+        }
+        try {
+            queryExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    List<Row> result = null;
+                    RuntimeException failure = null;
+                    boolean cacheable = false;
+                    try {
+                        result = Collections.unmodifiableList(queryRows(query, params));
+                        cacheable = true;
+                    } catch (SQLException e) {
+                        result = Collections.emptyList();
+                    } catch (RuntimeException e) {
+                        failure = e;
+                    } finally {
+                        finishShared(load, key, result, failure, cacheable ? cache : null, ttlMillis);
+                    }
+                }
+            }, PriorityExecutor.currentPriority(), orderKey);
+        } catch (RejectedExecutionException e) {
+            finishShared(load, key, null, e, null, 0);
+        }
+        return handle;
+    }
+    
+    /**
+     * Detaches a shared load and delivers its result, or its failure, to every caller attached to it. Only results of
+     * loads that were not invalidated while running are cached. A failed query is delivered as an empty result, like
+     * <tt>runQuery</tt> does, but never cached.
+     */
+    private void finishShared(ReadCoalescer.Load load, QueryCache.Key key, List<Row> result, Throwable failure, QueryCache cache, long ttlMillis) {
+        List<Callback> waiters = inFlightReads.finish(load);
+        if(failure == null && cache != null && !load.isStale()) {
+            cache.put(key, result, ttlMillis);
+        }
+        for(Callback waiter : waiters) {
+            if(failure == null) {
+                deliver(waiter, result);
+            } else {
+                deliverError(waiter, failure);
+            }
+        }
+    }
+    
+    /**
+     * Queues work on the query executor under a new <tt>QueryHandle</tt>. The work is dropped if the handle is cancelled
+     * or times out while queued, and its result is only delivered if the handle is still active when it finishes.
+     * 
+     * @param timeoutMillis The deadline for the work in milliseconds from now, or 0 for no deadline.
+     * @param callback The callback to deliver the result to, or <tt>null</tt> if there is none.
+     * @param work The work to run. Statements it executes through this engine honor the handle's deadline.
+     * @return The handle of the queued work.
+     */
+    protected QueryHandle queue(long timeoutMillis, Callback callback, Callable<?> work) {
+        return queue(timeoutMillis, callback, null, work);
+    }
+    
+    /**
+     * Queues work on the query executor under a new <tt>QueryHandle</tt>, with the priority of the calling thread and
+     * kept in order with every other operation queued with the same key.
+     * 
+     * @param timeoutMillis The deadline for the work in milliseconds from now, or 0 for no deadline.
+     * @param callback The callback to deliver the result to, or <tt>null</tt> if there is none.
+     * @param key The ordering key of the work, or <tt>null</tt> for none.
+     * @param work The work to run. Statements it executes through this engine honor the handle's deadline.
+     * @return The handle of the queued work.
      */
-    public void runAsyncQuery (final String query, final Callback callback){
+    protected QueryHandle queue(long timeoutMillis, final Callback callback, String key, final Callable<?> work) {
+        final QueryHandle handle = new QueryHandle(timeoutMillis);
         queryExecutor.execute(new Runnable() {
             @Override
             public void run() {
+                if(!handle.start()) {
+                    return;
+                }
+                Object result;
+                currentHandle.set(handle);
                 try {
-                    callback.invoke(runQuery(query));
-                } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
-                    Logger.getLogger(SQLiteEngine.class.getName()).log(Level.SEVERE, null, ex);
+                    result = work.call();
+                } catch (Exception e) {
+                    if(handle.complete()) {
+                        deliverError(callback, e);
+                    }
+                    return;
+                } finally {
+                    currentHandle.remove();
+                }
+                if(handle.complete() && callback != null) {
+                    deliver(callback, result);
                 }
             }
-        });
+        }, PriorityExecutor.currentPriority(), key);
+        watch(handle, callback);
+        return handle;
+    }
+    
+    /**
+     * Runs work on the query executor and waits for its result, or runs it directly if called from a query callback or
+     * after the executor was shut down, so synchronous reads on the shared connection never interleave with queued work.
+     * 
+     * @param priority The priority to queue the work with.
+     * @param timeoutMillis The deadline for the work in milliseconds from now, or 0 for no deadline.
+     * @param work The work to run. Statements it executes through this engine honor the deadline.
+     * @return The result of the work.
+     * @throws SQLException If the work fails, its deadline passes or the wait is interrupted.
+     */
+    protected <T> T onExecutor(Priority priority, long timeoutMillis, final Callable<T> work) throws SQLException {
+        PriorityExecutor executor = getExecutor();
+        try {
+            if(executor.isWorker() || executor.isShutdown()) {
+                return work.call();
+            }
+            final QueryHandle handle = new QueryHandle(timeoutMillis);
+            FutureTask<T> future = new FutureTask<>(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    if(!handle.start()) {
+                        throw handle.timeoutException();
+                    }
+                    currentHandle.set(handle);
+                    try {
+                        return work.call();
+                    } catch (SQLException e) {
+                        throw handle.isTimedOut() ? handle.timeoutException() : e;
+                    } finally {
+                        currentHandle.remove();
+                        handle.complete();
+                    }
+                }
+            });
+            executor.execute(future, priority, null);
+            watch(handle, null);
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the query executor.", e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException(e.getCause());
+        } catch (SQLException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException(e);
+        }
+    }
+    
+    /**
+     * Schedules the expiry of a handle at its deadline, passing a <tt>SQLTimeoutException</tt> to the callback if it expires.
+     */
+    private void watch(final QueryHandle handle, final Callback callback) {
+        if(handle.getTimeout() <= 0) {
+            return;
+        }
+        handle.setWatchdog(getScheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                if(handle.expire()) {
+                    deliverError(callback, handle.timeoutException());
+                }
+            }
+        }, handle.getTimeout(), TimeUnit.MILLISECONDS));
+    }
+    
+    /**
+     * Sets the deadline applied to asynchronous operations that do not specify their own. The deadline covers
+     * both the time spent waiting in the queue and executing.
+     * 
+     * @param timeoutMillis The default deadline in milliseconds, or 0 for no deadline.
+     */
+    public void setDefaultTimeout(long timeoutMillis) { this.defaultTimeout = timeoutMillis; }
+    
+    /**
+     * @return The deadline in milliseconds applied to asynchronous operations that do not specify their own, or 0 for none.
+     */
+    public long getDefaultTimeout() { return defaultTimeout; }
+    
+    /**
+     * Enables or disables coalescing of identical reads made through <tt>runAsyncQuery</tt> and <tt>Table.getRows</tt>.
+     * While enabled, a read with the same SQL and parameters as a read that is still queued or running is attached
+     * to it instead of being executed again, and all callers receive the same unmodifiable result. Reads issued after
+     * a write to one of the tables they read from are never attached to reads queued before that write.
+     * 
+     * @param coalesce true to share identical in-flight reads.
+     */
+    public void setCoalesceReads(boolean coalesce) { this.coalesceReads = coalesce; }
+    
+    /**
+     * Enables the query result cache used by <tt>runCachedQuery</tt>, replacing any existing cache.
+     * @param maxBytes The estimated amount of memory in bytes that cached results may hold.
+     */
+    public void enableQueryCache(long maxBytes) {
+        queryCache = new QueryCache(maxBytes);
+    }
+    
+    /**
+     * Disables and clears the query result cache.
+     */
+    public void disableQueryCache() {
+        queryCache = null;
     }
     
+    /**
+     * @return The query result cache, or <tt>null</tt> if it is not enabled.
+     */
+    public QueryCache getQueryCache() { return queryCache; }
+    
     /**
      * Runs a natively asynchronous update against this database.
      * 
      * @param update A string of the full SQL update statement to execute against this database.
+     * @param params Values to bind to the <tt>?</tt> placeholders in the statement, in order.
      */
-    public void runAsyncUpdate (final String update) {
-        queryExecutor.execute(new Runnable() {
-           @Override
-           public void run() {
-               runUpdate(update);
-           }
+    public QueryHandle runAsyncUpdate (final String update, final Object... params) {
+        return runTimedUpdate(update, defaultTimeout, params);
+    }
+    
+    /**
+     * Runs a natively asynchronous update against this database with a deadline that covers both the time spent waiting
+     * in the queue and executing. If the deadline passes, the update is dropped or its statement cancelled.
+     * 
+     * @param update A string of the full SQL update statement to execute against this database.
+     * @param timeoutMillis The deadline for the update in milliseconds from now, or 0 for no deadline.
+     * @param params Values to bind to the <tt>?</tt> placeholders in the statement, in order.
+     * @return A <tt>QueryHandle</tt> that can be used to cancel the update.
+     */
+    public QueryHandle runTimedUpdate(final String update, long timeoutMillis, final Object... params) {
+        return runKeyedUpdate(null, update, timeoutMillis, params);
+    }
+    
+    /**
+     * Runs a natively asynchronous update that is kept in order with every other operation queued with the same key,
+     * whatever their priority.
+     * 
+     * @param key The ordering key of the update, such as a table and primary key, or <tt>null</tt> for none.
+     * @param update A string of the full SQL update statement to execute against this database.
+     * @param timeoutMillis The deadline for the update in milliseconds from now, or 0 for no deadline.
+     * @param params Values to bind to the <tt>?</tt> placeholders in the statement, in order.
+     * @return A <tt>QueryHandle</tt> that can be used to cancel the update.
+     */
+    protected QueryHandle runKeyedUpdate(String key, final String update, long timeoutMillis, final Object... params) {
+        return runTrackedUpdate(key, null, update, timeoutMillis, params);
+    }
+    
+    /**
+     * Runs a natively asynchronous update like <tt>runKeyedUpdate</tt> and publishes a change to the change listeners
+     * once it has committed and affected at least one row.
+     * 
+     * @param key The ordering key of the update, such as a table and primary key, or <tt>null</tt> for none.
+     * @param change The change made by the update, or <tt>null</tt> if it is not published.
+     * @param update A string of the full SQL update statement to execute against this database.
+     * @param timeoutMillis The deadline for the update in milliseconds from now, or 0 for no deadline.
+     * @param params Values to bind to the <tt>?</tt> placeholders in the statement, in order.
+     * @return A <tt>QueryHandle</tt> that can be used to cancel the update.
+     */
+    protected QueryHandle runTrackedUpdate(String key, final ChangeEvent change, final String update, long timeoutMillis, final Object... params) {
+        invalidateReads(update);
+        return queue(timeoutMillis, null, key, new Callable<Object>() {
+            @Override
+            public Object call() {
+                int rows = executeUpdate(update, params);
+                invalidateReads(update);
+                if(rows > 0 && change != null) {
+                    publishChanges(Collections.singletonList(change));
+                }
+                return null;
+            }
         });
     }
     
+    /**
+     * Sets the scheduler that decides on which thread callbacks are invoked with the results of asynchronous operations.
+     * 
+     * @param scheduler The scheduler, or <tt>null</tt> to invoke callbacks directly on the query executor, which is the default.
+     */
+    public void setDeliveryScheduler(DeliveryScheduler scheduler) {
+        this.deliveryScheduler = scheduler == null ? DeliveryScheduler.DIRECT : scheduler;
+    }
+    
+    /**
+     * @return The scheduler that decides on which thread callbacks are invoked.
+     */
+    public DeliveryScheduler getDeliveryScheduler() { return deliveryScheduler; }
+    
+    /**
+     * Invokes a callback with a result through the delivery scheduler, logging any failure.
+     * @param callback The callback to invoke.
+     * @param result The result to pass to the callback.
+     */
+    protected void deliver(final Callback callback, final Object result) {
+        DeliveryScheduler scheduler = deliveryScheduler;
+        if(scheduler == DeliveryScheduler.DIRECT) {
+            invoke(callback, result);
+            return;
+        }
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                invoke(callback, result);
+            }
+        }, PriorityExecutor.currentPriority());
+    }
+    
+    private void invoke(Callback callback, Object result) {
+        try {
+            callback.invoke(result);
+        } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
+            logger.log(Level.SEVERE, ex.getMessage());
+        }
+    }
+    
+    /**
+     * Passes a failure to a callback's error method through the delivery scheduler, or logs it if the callback has none.
+     * @param callback The callback to notify, or <tt>null</tt> if there is none.
+     * @param error The cause of the failure.
+     */
+    protected void deliverError(final Callback callback, final Throwable error) {
+        if(callback == null || !callback.handlesErrors()) {
+            logger.log(Level.WARNING, error.getMessage());
+            return;
+        }
+        DeliveryScheduler scheduler = deliveryScheduler;
+        if(scheduler == DeliveryScheduler.DIRECT) {
+            invokeError(callback, error);
+            return;
+        }
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                invokeError(callback, error);
+            }
+        }, PriorityExecutor.currentPriority());
+    }
+    
+    private void invokeError(Callback callback, Throwable error) {
+        try {
+            callback.invokeError(error);
+        } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
+            logger.log(Level.SEVERE, ex.getMessage());
+        }
+    }
+    
+    /**
+     * Prepares a statement on the provided connection and binds its parameters. If the calling thread is running
+     * an operation with a deadline, the statement is registered with it so it can be cancelled and its query timeout
+     * is limited to the time left.
+     * 
+     * @param conn The connection to prepare the statement on.
+     * @param sql The SQL of the statement.
+     * @param params Values to bind to the <tt>?</tt> placeholders in the statement, in order.
+     * @return The prepared statement.
+     * @throws SQLException
+     */
+    protected PreparedStatement prepare(Connection conn, String sql, Object... params) throws SQLException {
+        PreparedStatement statement = conn.prepareStatement(sql);
+        QueryHandle handle = currentHandle.get();
+        if(handle != null) {
+            handle.attach(statement);
+        }
+        bindParameters(statement, params);
+        return statement;
+    }
+    
     /**
      * Runs a synchronous query against this database.
      * 
@@ -83,30 +575,41 @@ public abstract class SQLEngine {
      * key: column name, value: column contents.
      * 
      * @param query A string of the full SQL query to execute against this database.
+     * @param params Values to bind to the <tt>?</tt> placeholders in the query, in order.
      * @return a <tt>List&lt;Map&lt;String, Object&gt;&gt;</tt> representing the result set.
      */
-    public List<Row> runQuery(String query) {
+    public List<Row> runQuery(String query, Object... params) {
+        try {
+            return queryRows(query, params);
+        } catch (SQLException e) {
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * Runs a synchronous query like <tt>runQuery</tt>, but passes a failure on after logging it and rolling back, so it can
+     * be told apart from an empty result.
+     */
+    private List<Row> queryRows(String query, Object[] params) throws SQLException {
         Connection conn = getConnection();
-        ResultSet result;
-        ResultSetMetaData resultMeta;
         List<Row> resultList = new ArrayList<>();
-        PreparedStatement statement;
+        StatementEvent event = beginStatement(StatementEvent.Kind.QUERY, query, Collections.singletonList(params));
+        SQLException failure = null;
         
         try {
             conn.setAutoCommit(false);
-            statement = conn.prepareStatement(query);
-            result = statement.executeQuery();
-            resultMeta = result.getMetaData();
-            Table table = this.getTable(resultMeta.getTableName(1));
-            while(result.next()) {
-                Row row = new Row(this.getTable(resultMeta.getTableName(1)));
-                for(int i = 1 ; i <= resultMeta.getColumnCount() ; i++) {
-                    row.addColumn(new Column(row, table.getColumn(resultMeta.getColumnName(i)), result.getObject(i)));
+            try (PreparedStatement statement = prepare(conn, query, params);
+                    ResultSet result = statement.executeQuery()) {
+                ResultSetMetaData resultMeta = result.getMetaData();
+                Table table = this.getTable(resultMeta.getTableName(1));
+                while(result.next()) {
+                    resultList.add(readRow(table, result, resultMeta));
                 }
-                resultList.add(row);
             }
         } catch (SQLException e) {
+            failure = e;
             logger.log(Level.SEVERE, e.getMessage());
+            checkConnectionError(e);
             if(conn != null) {
                 try {
                     logger.log(Level.SEVERE, e.getMessage() + " Attempting to roll back query.");
@@ -116,7 +619,11 @@ public abstract class SQLEngine {
                 }
             }
         } finally {
-            try { conn.setAutoCommit(true); conn.close(); } catch (SQLException e) { logger.log(Level.SEVERE, e.getMessage()); }
+            try { conn.setAutoCommit(true); } catch (SQLException e) { logger.log(Level.SEVERE, e.getMessage()); }
+        }
+        endStatement(event, resultList.size(), failure);
+        if(failure != null) {
+            throw failure;
         }
         return resultList;
     }
@@ -126,79 +633,998 @@ public abstract class SQLEngine {
      * Runs a synchronous update against this database.
      * 
      * @param update A string of the full SQL update statement to execute against this database.
+     * @param params Values to bind to the <tt>?</tt> placeholders in the statement, in order.
+     */
+    public void runUpdate(String update, Object... params) {
+        executeUpdate(update, params);
+        invalidateReads(update);
+    }
+    
+    /**
+     * Runs a set of parameterized update statements against this database as batches in a single transaction.
+     * If any statement fails the whole set is rolled back.
+     * 
+     * @param batches A map of SQL update statements to the parameter sets to execute each statement with.
+     * @return true if the transaction was committed.
      */
-    public void runUpdate(String update) {
+    public boolean runBatchUpdate(Map<String, List<Object[]>> batches) {
         Connection conn = getConnection();
-        PreparedStatement statement;
+        boolean committed = false;
+        List<StatementEvent> events = new ArrayList<>();
+        SQLException failure = null;
         try {
             conn.setAutoCommit(false);
-            statement = conn.prepareStatement(update);
-            statement.executeUpdate();
+            for(Map.Entry<String, List<Object[]>> batch : batches.entrySet()) {
+                StatementEvent event = beginStatement(StatementEvent.Kind.BATCH, batch.getKey(), batch.getValue());
+                if(event != null) {
+                    events.add(event);
+                }
+                try (PreparedStatement statement = prepare(conn, batch.getKey())) {
+                    for(Object[] params : batch.getValue()) {
+                        bindParameters(statement, params);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            }
+            conn.commit();
+            committed = true;
         } catch (SQLException e) {
+            failure = e;
             logger.log(Level.SEVERE, e.getMessage());
-             try {
-                logger.log(Level.SEVERE, e.getMessage() + " Attempting to roll back update.");
+            checkConnectionError(e);
+            try {
+                logger.log(Level.SEVERE, e.getMessage() + " Attempting to roll back batch update.");
                 conn.rollback();
             } catch (SQLException ex) {
                 logger.log(Level.SEVERE, e.getMessage());
             }
         } finally {
-            try { conn.setAutoCommit(true); conn.close(); } catch (SQLException e) { logger.log(Level.SEVERE, e.getMessage()); }
+            try { conn.setAutoCommit(true); } catch (SQLException e) { logger.log(Level.SEVERE, e.getMessage()); }
         }
-        
+        for(StatementEvent event : events) {
+            endStatement(event, committed ? event.getParamSets().size() : 0, failure);
+        }
+        for(String update : batches.keySet()) {
+            invalidateReads(update);
+        }
+        return committed;
     }
- 
-    public abstract Connection getConnection();
     
     /**
-     * Closes any open connections to the database.
+     * Runs a natively asynchronous insert of one or more rows in a single transaction and delivers the keys the database
+     * generated for them, so the new rows do not have to be queried for afterwards.
+     * 
+     * @param insert A string of the full SQL insert statement to execute against this database.
+     * @param rows The values to bind to the <tt>?</tt> placeholders in the statement, one set per row to insert.
+     * @param callback The callback to pass a <tt>List&lt;Long&gt;</tt> of the generated keys to, one per row and in the order
+     * of <tt>rows</tt>, or <tt>null</tt> if there is none. Its error method is passed the failure if the insert was rolled back.
+     * @return A <tt>QueryHandle</tt> that can be used to cancel the insert.
      */
-    public void closeConnection() {
-        if(connection != null) {
-            try {
-                connection.close();
-                connection = null;
-            } catch (SQLException e) {
-                logger.log(Level.SEVERE, e.getMessage());
-            }
-        } else {
-            logger.log(Level.WARNING, "There are no connections to close.");
-        }
+    public QueryHandle runAsyncInsert(final String insert, final List<Object[]> rows, Callback callback) {
+        return runTrackedInsert(insert, rows, null, callback);
     }
     
     /**
-     * Properly shuts down this database connection including the query executor that could potentially hang the process it is running on.
+     * Runs a natively asynchronous insert like <tt>runAsyncInsert</tt> and publishes the inserts of its rows to the change
+     * listeners once it has committed, with the keys the database generated for them.
+     * 
+     * @param insert A string of the full SQL insert statement to execute against this database.
+     * @param rows The values to bind to the <tt>?</tt> placeholders in the statement, one set per row to insert.
+     * @param changes The insert of every row, in the order of <tt>rows</tt>, or <tt>null</tt> if they are not published.
+     * @param callback The callback to pass a <tt>List&lt;Long&gt;</tt> of the generated keys to, or <tt>null</tt> if there is none.
+     * @return A <tt>QueryHandle</tt> that can be used to cancel the insert.
      */
-    public void shutdown() {
-        if(queryExecutor != null) {
-            queryExecutor.shutdown();
-        }
-        if(connection != null) {
-            closeConnection();
-        }
-        logger.log(Level.INFO, "Database engine has been successfully shut down.");
+    protected QueryHandle runTrackedInsert(final String insert, final List<Object[]> rows, final List<ChangeEvent> changes, Callback callback) {
+        invalidateReads(insert);
+        return queue(defaultTimeout, callback, new Callable<Object>() {
+            @Override
+            public Object call() throws SQLException {
+                List<Long> keys;
+                try {
+                    keys = executeInsert(insert, rows);
+                } finally {
+                    invalidateReads(insert);
+                }
+                if(changes != null) {
+                    List<ChangeEvent> keyed = new ArrayList<>(changes.size());
+                    for(int i = 0; i < changes.size(); i++) {
+                        keyed.add(changes.get(i).withKey(keys.get(i)));
+                    }
+                    publishChanges(keyed);
+                }
+                return keys;
+            }
+        });
     }
     
     /**
-     * Protected method to retrieve the asynchronous executor.
-     * @return The executor used to run asynchronous queries.
+     * Whether the driver returns the generated keys of every row of a batch. If not, rows are inserted one statement at a
+     * time within the transaction so the key of each can be read.
+     * 
+     * @return true if generated keys can be read after executing a batch.
      */
-    protected ExecutorService getExecutor() { return this.queryExecutor; }
-    
-    public abstract Table createTable(String name, ColumnDef... columns);
-    
-    public abstract Table getTable(String name);
+    protected boolean batchesGeneratedKeys() { return true; }
     
     /**
-     * Function to rename a table to the provided new name.
-     * @param oldName The old table name.
-     * @param newName The new table name.
+     * Inserts rows in a single transaction and reads the keys the database generated for them.
+     * 
+     * @param insert The SQL insert statement.
+     * @param rows The parameters of every row to insert.
+     * @return The generated keys, one per row and in order.
+     * @throws SQLException If the rows cannot be inserted or a key was not generated for every row, after rolling back.
      */
-    public void renameTable(String oldName, String newName) {
-        runAsyncUpdate("ALTER TABLE " + oldName + "RENAME TO " + newName);
-        for(Table table : tables) {
-            if(table.getName().equalsIgnoreCase(oldName)) {
-                table.rename(newName);
+    protected List<Long> executeInsert(String insert, List<Object[]> rows) throws SQLException {
+        Connection conn = getConnection();
+        if(conn == null) {
+            throw new SQLException("No connection to the database.");
+        }
+        StatementEvent event = beginStatement(rows.size() == 1 ? StatementEvent.Kind.UPDATE : StatementEvent.Kind.BATCH, insert, rows);
+        List<Long> keys = new ArrayList<>(rows.size());
+        SQLException failure = null;
+        try {
+            conn.setAutoCommit(false);
+            try (PreparedStatement statement = conn.prepareStatement(insert, Statement.RETURN_GENERATED_KEYS)) {
+                QueryHandle handle = currentHandle.get();
+                if(handle != null) {
+                    handle.attach(statement);
+                }
+                if(batchesGeneratedKeys() && rows.size() > 1) {
+                    for(Object[] params : rows) {
+                        bindParameters(statement, params);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                    readGeneratedKeys(statement, keys);
+                } else {
+                    for(Object[] params : rows) {
+                        bindParameters(statement, params);
+                        statement.executeUpdate();
+                        readGeneratedKeys(statement, keys);
+                    }
+                }
+            }
+            if(keys.size() != rows.size()) {
+                throw new SQLException("Inserted " + rows.size() + " rows but the database generated " + keys.size() + " keys.");
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            failure = e;
+            logger.log(Level.SEVERE, e.getMessage());
+            checkConnectionError(e);
+            try {
+                logger.log(Level.SEVERE, e.getMessage() + " Attempting to roll back insert.");
+                conn.rollback();
+            } catch (SQLException ex) {
+                logger.log(Level.SEVERE, e.getMessage());
+            }
+            throw e;
+        } finally {
+            try { conn.setAutoCommit(true); } catch (SQLException e) { logger.log(Level.SEVERE, e.getMessage()); }
+            endStatement(event, failure == null ? rows.size() : 0, failure);
+        }
+        return keys;
+    }
+    
+    private static void readGeneratedKeys(PreparedStatement statement, List<Long> keys) throws SQLException {
+        try (ResultSet generated = statement.getGeneratedKeys()) {
+            while(generated != null && generated.next()) {
+                keys.add(generated.getLong(1));
+            }
+        }
+    }
+    
+    /**
+     * Detaches pending reads and removes cached results of every table a statement may modify.
+     * Must be called when a write is queued so that later reads are not answered with older data, and again once it has
+     * executed, since a read of a more urgent priority may have run and been cached in between.
+     * 
+     * @param update The SQL statement that modifies the database.
+     */
+    protected void invalidateReads(String update) {
+        inFlightReads.invalidateFor(update);
+        QueryCache cache = queryCache;
+        if(cache != null) {
+            cache.invalidateFor(update);
+        }
+    }
+    
+    /**
+     * @return The amount of rows affected, or -1 if the update failed and was rolled back.
+     */
+    private int executeUpdate(String update, Object... params) {
+        Connection conn = getConnection();
+        StatementEvent event = beginStatement(StatementEvent.Kind.UPDATE, update, Collections.singletonList(params));
+        int rows = 0;
+        SQLException failure = null;
+        try {
+            conn.setAutoCommit(false);
+            try (PreparedStatement statement = prepare(conn, update, params)) {
+                rows = statement.executeUpdate();
+            }
+        } catch (SQLException e) {
+            failure = e;
+            logger.log(Level.SEVERE, e.getMessage());
+            checkConnectionError(e);
+             try {
+                logger.log(Level.SEVERE, e.getMessage() + " Attempting to roll back update.");
+                conn.rollback();
+            } catch (SQLException ex) {
+                logger.log(Level.SEVERE, e.getMessage());
+            }
+        } finally {
+            try { conn.setAutoCommit(true); } catch (SQLException e) { logger.log(Level.SEVERE, e.getMessage()); }
+        }
+        endStatement(event, rows, failure);
+        return failure == null ? rows : -1;
+    }
+    
+    /**
+     * Starts writing every statement run through <tt>runQuery</tt>, <tt>runUpdate</tt>, <tt>runBatchUpdate</tt> and the
+     * asynchronous methods built on them, including those made by tables, to a log that can be replayed with <tt>QueryReplayer</tt>.
+     * Recording to a file that is already a log appends to it. Any recording in progress is stopped first.
+     * 
+     * @param file The log file to write to.
+     * @throws IOException If the log cannot be opened.
+     */
+    public void startRecording(File file) throws IOException {
+        QueryRecorder next = new QueryRecorder(file, logger);
+        QueryRecorder previous;
+        synchronized(this) {
+            previous = recorder;
+            recorder = next;
+        }
+        addStatementListener(next);
+        if(previous != null) {
+            removeStatementListener(previous);
+            previous.close();
+        }
+    }
+    
+    /**
+     * Stops recording statements and closes the log, if recording was started.
+     */
+    public void stopRecording() {
+        QueryRecorder previous;
+        synchronized(this) {
+            previous = recorder;
+            recorder = null;
+        }
+        if(previous != null) {
+            removeStatementListener(previous);
+            try {
+                previous.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Unable to close query log " + previous.getFile().getPath() + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * @return The recorder statements are currently written to, or <tt>null</tt> if recording is off.
+     */
+    public QueryRecorder getRecorder() { return recorder; }
+    
+    /**
+     * Subscribes a listener to the changes made through the <tt>Table</tt>s of this engine, delivered after they commit.
+     * 
+     * @param listener The listener to add.
+     */
+    public void subscribe(ChangeListener listener) {
+        subscribe(null, listener);
+    }
+    
+    /**
+     * Subscribes a listener to the changes made to a single table, or to every table.
+     * 
+     * @param table The name of the table, or <tt>null</tt> for every table.
+     * @param listener The listener to add.
+     */
+    protected void subscribe(String table, ChangeListener listener) {
+        subscriptions.add(new ChangeSubscription(table, listener));
+    }
+    
+    /**
+     * Removes every subscription of a listener, whether made through this engine or one of its tables.
+     * 
+     * @param listener The listener to remove.
+     */
+    public void unsubscribe(ChangeListener listener) {
+        for(ChangeSubscription subscription : subscriptions) {
+            if(subscription.listener == listener) {
+                subscriptions.remove(subscription);
+            }
+        }
+    }
+    
+    /**
+     * @return The current change subscriptions.
+     */
+    protected List<ChangeSubscription> getChangeSubscriptions() { return Collections.unmodifiableList(subscriptions); }
+    
+    /**
+     * @return true if changes are published, so <tt>Table</tt> has to describe the changes of its writes.
+     */
+    protected boolean tracksChanges() { return !subscriptions.isEmpty() || changeLog != null; }
+    
+    /**
+     * Publishes committed local changes to the change log, if it is enabled, and the change listeners. Must be run by
+     * the query executor, so changes are published in the order they were committed.
+     * 
+     * @param changes The changes, in commit order.
+     */
+    protected void publishChanges(List<ChangeEvent> changes) {
+        ChangeLog log = changeLog;
+        if(log != null) {
+            log.write(changes);
+        }
+        deliverChanges(changes);
+    }
+    
+    /**
+     * Delivers changes to the listeners subscribed to their tables.
+     * 
+     * @param changes The changes, in commit order.
+     */
+    protected void deliverChanges(List<ChangeEvent> changes) {
+        for(ChangeSubscription subscription : subscriptions) {
+            List<ChangeEvent> matched = changes;
+            if(subscription.table != null) {
+                matched = new ArrayList<>();
+                for(ChangeEvent change : changes) {
+                    if(change.getTable().equalsIgnoreCase(subscription.table)) {
+                        matched.add(change);
+                    }
+                }
+            }
+            if(matched.isEmpty()) {
+                continue;
+            }
+            try {
+                subscription.listener.onChanges(Collections.unmodifiableList(matched));
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Change listener failed: " + e);
+            }
+        }
+    }
+    
+    /**
+     * Shares the changes made through this engine with other engines on the same database, in this or other processes,
+     * through a change log table that every engine with the change log enabled polls. Changes read from the log are
+     * delivered to the change listeners as remote changes.
+     * 
+     * @param pollMillis The interval between polls of the change log in milliseconds.
+     * @return The change log.
+     */
+    public synchronized ChangeLog enableChangeLog(long pollMillis) {
+        if(changeLog == null) {
+            ChangeLog log = new ChangeLog(this);
+            log.start(pollMillis);
+            changeLog = log;
+        }
+        return changeLog;
+    }
+    
+    /**
+     * Stops writing changes to and polling the change log. The change log table is kept.
+     */
+    public synchronized void disableChangeLog() {
+        if(changeLog != null) {
+            changeLog.stop();
+            changeLog = null;
+        }
+    }
+    
+    /**
+     * @return The change log, or <tt>null</tt> if it is not enabled.
+     */
+    public ChangeLog getChangeLog() { return changeLog; }
+    
+    /**
+     * Registers a listener that is called before and after every statement run through <tt>runQuery</tt>,
+     * <tt>runUpdate</tt>, <tt>runBatchUpdate</tt> and the asynchronous methods built on them.
+     * 
+     * @param listener The listener to add.
+     */
+    public synchronized void addStatementListener(StatementListener listener) {
+        StatementListener[] current = listeners;
+        StatementListener[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = listener;
+        listeners = updated;
+    }
+    
+    /**
+     * Removes a listener added with <tt>addStatementListener</tt>.
+     * 
+     * @param listener The listener to remove.
+     */
+    public synchronized void removeStatementListener(StatementListener listener) {
+        List<StatementListener> updated = new ArrayList<>(Arrays.asList(listeners));
+        updated.remove(listener);
+        listeners = updated.isEmpty() ? NO_LISTENERS : updated.toArray(new StatementListener[updated.size()]);
+    }
+    
+    /**
+     * @return The registered statement listeners.
+     */
+    public List<StatementListener> getStatementListeners() { return Collections.unmodifiableList(Arrays.asList(listeners)); }
+    
+    /**
+     * Notifies the statement listeners that a statement is about to run.
+     * @return The event of the statement, or <tt>null</tt> if there are no listeners.
+     */
+    private StatementEvent beginStatement(StatementEvent.Kind kind, String sql, List<Object[]> paramSets) {
+        StatementListener[] current = listeners;
+        if(current.length == 0) {
+            return null;
+        }
+        StatementEvent event = new StatementEvent(this, kind, sql, paramSets);
+        for(StatementListener listener : current) {
+            try {
+                listener.beforeStatement(event);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Statement listener failed: " + e);
+            }
+        }
+        return event;
+    }
+    
+    /**
+     * Notifies the statement listeners that a statement has finished.
+     * @param event The event returned by <tt>beginStatement</tt>, or <tt>null</tt> if there were no listeners.
+     */
+    private void endStatement(StatementEvent event, int rows, Throwable error) {
+        if(event == null) {
+            return;
+        }
+        event.finish(rows, error);
+        for(StatementListener listener : listeners) {
+            try {
+                listener.afterStatement(event);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Statement listener failed: " + e);
+            }
+        }
+    }
+    
+    /**
+     * Builds the statement that shows how the database would execute a statement. Engines override this when their syntax differs.
+     * @param sql The statement to explain.
+     * @return The SQL statement.
+     */
+    protected String explainStatement(String sql) {
+        return "EXPLAIN " + sql;
+    }
+ 
+    /**
+     * Returns a publisher that streams the result of a query <tt>Row</tt> by <tt>Row</tt> instead of
+     * buffering the entire result set in memory. Nothing is executed until a <tt>RowSubscriber</tt> subscribes
+     * and requests rows, and rows are only pulled from the <tt>ResultSet</tt> as fast as the subscriber demands them.
+     * 
+     * Each subscription runs on its own connection so the cursor survives other queries on this engine. Be aware
+     * that on SQLite an open cursor holds a read lock, so writes will wait until the subscription completes or is cancelled.
+     * 
+     * @param query A string of the full SQL query to execute against this database.
+     * @param params Values to bind to the <tt>?</tt> placeholders in the query, in order.
+     * @return A <tt>RowPublisher</tt> for the query result.
+     */
+    public RowPublisher publish(String query, Object... params) {
+        return new RowPublisher(this, query, params);
+    }
+    
+    /**
+     * Runs a synchronous query against this database and stores the result column by column in primitive arrays.
+     * Intended for large analytical scans, where the result is far smaller and faster to aggregate than a <tt>List&lt;Row&gt;</tt>.
+     * The query runs on its own connection and reads the result in chunks of <tt>ColumnarResult.CHUNK_SIZE</tt> rows.
+     * 
+     * @param query A string of the full SQL query to execute against this database.
+     * @param params Values to bind to the <tt>?</tt> placeholders in the query, in order.
+     * @return A <tt>ColumnarResult</tt> holding the result set.
+     * @throws SQLException
+     */
+    public ColumnarResult queryColumnar(String query, Object... params) throws SQLException {
+        try (Connection conn = openConnection();
+                PreparedStatement statement = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(ColumnarResult.CHUNK_SIZE);
+            bindParameters(statement, params);
+            try (ResultSet result = statement.executeQuery()) {
+                return new ColumnarResult(result);
+            }
+        }
+    }
+    
+    /**
+     * Builds the statement that computes aggregates of a table per group of key column values.
+     * 
+     * @param table The name of the table.
+     * @param keyColumns The columns to group by, or none to aggregate the whole table as a single group.
+     * @param functions The aggregate functions.
+     * @param columns The column of each function, or <tt>null</tt> to count rows.
+     * @param where The predicate on the rows to aggregate, or <tt>null</tt> for every row.
+     * @return The parameterized SQL statement, selecting the key columns followed by the aggregates.
+     */
+    protected String aggregateStatement(String table, String[] keyColumns, Aggregate[] functions, String[] columns, Where where) {
+        String keys = "";
+        for(String column : keyColumns) {
+            keys += (keys.isEmpty() ? "" : ",") + column;
+        }
+        String select = keys;
+        for(int i = 0; i < functions.length; i++) {
+            select += (select.isEmpty() ? "" : ",") + functions[i].name() + "(" + (columns[i] == null ? "*" : columns[i]) + ")";
+        }
+        return "SELECT " + select + " FROM " + table + (where == null ? "" : where.toSql()) + (keys.isEmpty() ? "" : " GROUP BY " + keys);
+    }
+    
+    /**
+     * Runs a synchronous aggregation built by <tt>aggregateStatement</tt> and reads its groups without building a <tt>Row</tt>
+     * for each of them.
+     * 
+     * @param query The aggregation statement.
+     * @param params Values to bind to the <tt>?</tt> placeholders in the statement, in order.
+     * @param keyColumns The columns the statement groups by.
+     * @param labels The labels of the aggregates it selects.
+     * @return The groups and their aggregates.
+     * @throws SQLException
+     */
+    protected GroupedResult queryGroups(String query, Object[] params, String[] keyColumns, String[] labels) throws SQLException {
+        Connection conn = getConnection();
+        if(conn == null) {
+            throw new SQLException("No connection to the database.");
+        }
+        StatementEvent event = beginStatement(StatementEvent.Kind.QUERY, query, Collections.singletonList(params));
+        List<Object[]> keys = new ArrayList<>();
+        List<double[]> values = new ArrayList<>();
+        SQLException failure = null;
+        try (PreparedStatement statement = prepare(conn, query, params);
+                ResultSet result = statement.executeQuery()) {
+            while(result.next()) {
+                Object[] key = new Object[keyColumns.length];
+                for(int i = 0; i < key.length; i++) {
+                    key[i] = result.getObject(i + 1);
+                }
+                double[] aggregates = new double[labels.length];
+                for(int i = 0; i < aggregates.length; i++) {
+                    aggregates[i] = result.getDouble(key.length + i + 1);
+                    if(result.wasNull()) {
+                        aggregates[i] = Double.NaN;
+                    }
+                }
+                keys.add(key);
+                values.add(aggregates);
+            }
+        } catch (SQLException e) {
+            failure = e;
+            checkConnectionError(e);
+            throw e;
+        } finally {
+            endStatement(event, keys.size(), failure);
+        }
+        double[][] columns = new double[labels.length][keys.size()];
+        for(int group = 0; group < keys.size(); group++) {
+            for(int i = 0; i < labels.length; i++) {
+                columns[i][group] = values.get(group)[i];
+            }
+        }
+        return new GroupedResult(keyColumns, labels, keys.toArray(new Object[keys.size()][]), columns);
+    }
+    
+    /**
+     * Reads the current row of a <tt>ResultSet</tt> into a new <tt>Row</tt> object.
+     * 
+     * @param table The <tt>Table</tt> the result was queried from.
+     * @param result The <tt>ResultSet</tt> positioned on the row to read.
+     * @param resultMeta The metadata of the <tt>ResultSet</tt>.
+     * @return A <tt>Row</tt> containing every column of the current result row.
+     * @throws SQLException
+     */
+    protected Row readRow(Table table, ResultSet result, ResultSetMetaData resultMeta) throws SQLException {
+        Row row = new Row(table);
+        long threshold = largeValueThreshold;
+        for(int i = 1 ; i <= resultMeta.getColumnCount() ; i++) {
+            ColumnDef def = table.getColumn(resultMeta.getColumnName(i));
+            Object data;
+            if(def != null && def.isCompressed) {
+                data = ColumnCompression.decompress(result.getBytes(i), def.type != null && def.type.isText(), metrics);
+            } else if(threshold >= 0 && def != null && def.type != null && def.type.isLarge()) {
+                data = readLargeValue(table, def, result, resultMeta, i, threshold);
+            } else {
+                data = result.getObject(i);
+            }
+            row.addColumn(new Column(row, def, data));
+        }
+        return row;
+    }
+    
+    /**
+     * Reads the value of a large column, or a <tt>LargeValue</tt> handle on it if it is larger than the threshold and
+     * the result includes the primary key of its row.
+     */
+    private Object readLargeValue(Table table, ColumnDef def, ResultSet result, ResultSetMetaData resultMeta, int column, long threshold) throws SQLException {
+        ColumnDef key = table.getPrimaryKey();
+        int keyIndex = -1;
+        for(int i = 1; key != null && i <= resultMeta.getColumnCount(); i++) {
+            if(resultMeta.getColumnName(i).equalsIgnoreCase(key.name)) {
+                keyIndex = i;
+            }
+        }
+        if(keyIndex < 0) {
+            return result.getObject(column);
+        }
+        try {
+            if(def.type.isText()) {
+                try (Reader reader = result.getCharacterStream(column)) {
+                    String text = reader == null ? null : LargeValue.readFully(reader, threshold);
+                    if(reader == null || text != null) {
+                        return text;
+                    }
+                }
+            } else {
+                try (InputStream in = result.getBinaryStream(column)) {
+                    byte[] bytes = in == null ? null : LargeValue.readFully(in, threshold);
+                    if(in == null || bytes != null) {
+                        return bytes;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new SQLException("Unable to read column " + def.name + " of " + table.getName(), e);
+        }
+        return new LargeValue(this, table.getName(), def, key.name, result.getObject(keyIndex));
+    }
+    
+    /**
+     * Sets the size above which values of large columns, such as <tt>BLOB</tt>, <tt>CLOB</tt> and <tt>LONGVARCHAR</tt>, are
+     * not loaded when rows are read. Such columns hold a <tt>LargeValue</tt> handle instead, which reads the value by the
+     * primary key of its row when a stream is opened with <tt>Column.getInputStream</tt> or <tt>Column.getReader</tt>.
+     * Values of rows read without their primary key are always loaded.
+     * 
+     * @param bytes The largest size in bytes, or characters for text, of values that are loaded, 0 to never load large
+     * values, or -1 to always load them. Defaults to -1.
+     */
+    public void setLargeValueThreshold(long bytes) { this.largeValueThreshold = bytes; }
+    
+    /**
+     * @return The size above which values of large columns are not loaded, or -1 if they are always loaded.
+     */
+    public long getLargeValueThreshold() { return largeValueThreshold; }
+    
+    /**
+     * Sets the size below which values of compressed columns are stored without being compressed, as small values
+     * rarely shrink enough to be worth the time spent compressing and decompressing them.
+     * 
+     * @param bytes The smallest size in bytes of values that are compressed. Defaults to 256.
+     */
+    public void setCompressionThreshold(int bytes) { this.compressionThreshold = Math.max(0, bytes); }
+    
+    /**
+     * @return The size below which values of compressed columns are stored without being compressed.
+     */
+    public int getCompressionThreshold() { return compressionThreshold; }
+    
+    /**
+     * Converts a value to the form it is stored in for a column, compressing it if the column is compressed.
+     * 
+     * @param def The definition of the column the value is written to, or <tt>null</tt> if it is unknown.
+     * @param value The value to write.
+     * @return The value to bind to the statement.
+     */
+    protected Object storedValue(ColumnDef def, Object value) {
+        if(def == null || !def.isCompressed) {
+            return value;
+        }
+        return ColumnCompression.compress(value, compressionThreshold, metrics);
+    }
+    
+    /**
+     * Binds the provided values to the placeholders of a prepared statement. An <tt>InputStream</tt> is bound as a
+     * binary stream and a <tt>Reader</tt> as a character stream, so large values can be written without loading them.
+     * 
+     * @param statement The statement to bind the values to.
+     * @param params The values to bind, in placeholder order.
+     * @throws SQLException
+     */
+    protected void bindParameters(PreparedStatement statement, Object... params) throws SQLException {
+        for(int i = 0; i < params.length; i++) {
+            if(params[i] instanceof InputStream || params[i] instanceof Reader) {
+                bindStream(statement, i + 1, params[i]);
+            } else {
+                statement.setObject(i + 1, params[i]);
+            }
+        }
+    }
+    
+    /**
+     * Binds a stream to a placeholder of a prepared statement. Engines override this when their driver cannot stream parameters.
+     * 
+     * @param statement The statement to bind the stream to.
+     * @param index The index of the placeholder, starting at 1.
+     * @param stream An <tt>InputStream</tt> or <tt>Reader</tt>.
+     * @throws SQLException
+     */
+    protected void bindStream(PreparedStatement statement, int index, Object stream) throws SQLException {
+        if(stream instanceof InputStream) {
+            statement.setBinaryStream(index, (InputStream) stream);
+        } else {
+            statement.setCharacterStream(index, (Reader) stream);
+        }
+    }
+ 
+    /**
+     * Retrieves the connection shared by this engine, opening a new one if there is none. The connection is only
+     * validated when it has been idle for longer than the validation threshold, so the hot path never waits on a
+     * round trip to the database.
+     * 
+     * @return A <tt>Connection</tt> object to provide connectivity with the database.
+     */
+    public synchronized Connection getConnection() {
+        try {
+            if(connection != null && System.nanoTime() - lastUsed > TimeUnit.MILLISECONDS.toNanos(validateAfterIdleMillis) && !validate(connection)) {
+                discardConnection();
+            }
+            if(connection == null || connection.isClosed()) {
+                connection = openConnection();
+                metrics.connectionOpened();
+                startKeepAlive();
+            }
+            lastUsed = System.nanoTime();
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, e.getMessage());
+        }
+        return connection;
+    }
+    
+    /**
+     * Sets how connections are kept healthy. The shared connection is validated when it is borrowed after being idle longer
+     * than <tt>idleMillis</tt>, and a background task validates it every <tt>keepAliveMillis</tt> while it is idle.
+     * 
+     * @param idleMillis The idle time in milliseconds after which the connection is validated before use.
+     * @param keepAliveMillis The interval of the background validation in milliseconds, or 0 to disable it.
+     */
+    public synchronized void setConnectionValidation(long idleMillis, long keepAliveMillis) {
+        this.validateAfterIdleMillis = idleMillis;
+        this.keepAliveMillis = keepAliveMillis;
+        if(keepAlive != null) {
+            keepAlive.cancel(false);
+            keepAlive = null;
+        }
+        if(connection != null) {
+            startKeepAlive();
+        }
+    }
+    
+    /**
+     * @return The metrics collected by this engine.
+     */
+    public EngineMetrics getMetrics() { return metrics; }
+    
+    private void startKeepAlive() {
+        if(keepAlive != null || keepAliveMillis <= 0) {
+            return;
+        }
+        keepAlive = getScheduler().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                if(connection == null || System.nanoTime() - lastUsed < TimeUnit.MILLISECONDS.toNanos(keepAliveMillis)) {
+                    return;
+                }
+                queryExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized(SQLEngine.this) {
+                            if(connection != null && !validate(connection)) {
+                                discardConnection();
+                                getConnection();
+                            }
+                        }
+                    }
+                }, Priority.BACKGROUND, null);
+            }
+        }, keepAliveMillis, keepAliveMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    private boolean validate(Connection conn) {
+        long start = System.nanoTime();
+        boolean valid;
+        try {
+            valid = conn.isValid(VALIDATION_TIMEOUT);
+        } catch (SQLException e) {
+            valid = false;
+        }
+        metrics.validated(valid, System.nanoTime() - start);
+        lastUsed = System.nanoTime();
+        return valid;
+    }
+    
+    /**
+     * Discards the shared connection if an exception indicates that it is broken, so the next operation reconnects
+     * immediately instead of failing on the same connection.
+     * 
+     * @param e The exception raised by a database operation.
+     */
+    protected void checkConnectionError(SQLException e) {
+        String state = e.getSQLState();
+        if(e instanceof SQLRecoverableException || e instanceof SQLNonTransientConnectionException
+                || e instanceof SQLTransientConnectionException || (state != null && state.startsWith("08"))) {
+            synchronized(this) {
+                discardConnection();
+            }
+        }
+    }
+    
+    /**
+     * Closes the shared connection after it was found to be broken, so the next operation opens a new one. Must be
+     * called while holding the lock of this engine.
+     */
+    protected void discardConnection() {
+        if(connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException ex) {
+            // The connection is already broken.
+        }
+        connection = null;
+        metrics.connectionDiscarded();
+    }
+    
+    /**
+     * Opens a new connection to the database that is not shared with the rest of this engine.
+     * The caller is responsible for closing it.
+     * 
+     * @return A new <tt>Connection</tt> to the database.
+     * @throws SQLException
+     */
+    protected abstract Connection openConnection() throws SQLException;
+    
+    /**
+     * Closes any open connections to the database.
+     */
+    public synchronized void closeConnection() {
+        if(connection != null) {
+            try {
+                connection.close();
+                connection = null;
+            } catch (SQLException e) {
+                logger.log(Level.SEVERE, e.getMessage());
+            }
+        } else {
+            logger.log(Level.WARNING, "There are no connections to close.");
+        }
+    }
+    
+    /**
+     * Properly shuts down this database connection including the query executor that could potentially hang the process it is running on.
+     * Buffered table writes and rows appended to log tables are flushed first, and queued operations are given up to
+     * thirty seconds to finish before the connection is closed. Called from a query callback, it does not wait for them.
+     */
+    public void shutdown() {
+        for(Table table : tables) {
+            table.flushWrites();
+        }
+        for(PartitionedLogTable log : logTables) {
+            log.close();
+        }
+        synchronized(this) {
+            if(scheduler != null) {
+                scheduler.shutdownNow();
+            }
+        }
+        if(queryExecutor != null) {
+            queryExecutor.shutdown();
+            if(!queryExecutor.isWorker()) {
+                try {
+                    if(!queryExecutor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                        logger.log(Level.WARNING, "Queued operations did not finish within " + SHUTDOWN_TIMEOUT + " seconds of shutdown.");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        if(connection != null) {
+            closeConnection();
+        }
+        stopRecording();
+        disableChangeLog();
+        logger.log(Level.INFO, "Database engine has been successfully shut down.");
+    }
+    
+    /**
+     * Protected method to retrieve the asynchronous executor.
+     * @return The executor used to run asynchronous queries.
+     */
+    protected PriorityExecutor getExecutor() { return this.queryExecutor; }
+    
+    /**
+     * Runs work on the calling thread with every asynchronous operation it queues on any engine tagged with the provided
+     * priority, for example to let a login lookup overtake a queued autosave. Operations queued outside of this method use
+     * <tt>Priority.NORMAL</tt>, and work started by an operation inherits its priority.
+     * 
+     * @param priority The priority of the operations queued by the work.
+     * @param work The work to run.
+     */
+    public void withPriority(Priority priority, Runnable work) {
+        Priority previous = PriorityExecutor.setCurrentPriority(priority);
+        try {
+            work.run();
+        } finally {
+            PriorityExecutor.setCurrentPriority(previous);
+        }
+    }
+    
+    /**
+     * Sets how quickly queued operations of lower priorities catch up with newer operations of higher priorities so they
+     * are never starved. Queued operations are treated as one priority higher for every interval they have waited.
+     * 
+     * @param agingMillis The aging interval in milliseconds. Defaults to 500.
+     */
+    public void setPriorityAging(long agingMillis) { queryExecutor.setAging(agingMillis); }
+    
+    /**
+     * Protected method to retrieve the scheduler used for periodic maintenance, creating it on first use.
+     * @return The scheduler used to queue periodic work.
+     */
+    protected synchronized ScheduledExecutorService getScheduler() {
+        if(scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor();
+        }
+        return scheduler;
+    }
+    
+    public abstract Table createTable(String name, ColumnDef... columns);
+    
+    /**
+     * Function to create a new table for this database together with its secondary indexes.
+     * @param name The name of the table to create.
+     * @param columns An array of column definitions to construct the table.
+     * @param indexes The secondary indexes to create on the table.
+     * @return The newly created table object.
+     * @throws UnsupportedOperationException If an index is partial and this database does not support partial indexes.
+     */
+    public Table createTable(String name, ColumnDef[] columns, IndexDef... indexes) {
+        for(IndexDef index : indexes) {
+            createIndexStatement(name, index);
+        }
+        Table table = createTable(name, columns);
+        for(IndexDef index : indexes) {
+            table.createIndex(index);
+        }
+        return table;
+    }
+    
+    public abstract Table getTable(String name);
+    
+    /**
+     * Opens an append-only log of timestamped rows spread over one table per hour or day, creating the partitions as rows
+     * are appended. Partitions of the log that already exist are found again.
+     * @param name The name the partitions are named after.
+     * @param timeColumn The column holding the time of every row, as milliseconds since the epoch.
+     * @param period The length of time a single partition holds.
+     * @param columns An array of column definitions for every partition.
+     * @return The log.
+     * @throws IllegalArgumentException If the time column is not one of the columns.
+     */
+    public PartitionedLogTable createLogTable(String name, String timeColumn, PartitionedLogTable.Period period, ColumnDef... columns) {
+        PartitionedLogTable log = new PartitionedLogTable(this, name, timeColumn, period, columns);
+        logTables.add(log);
+        return log;
+    }
+    
+    /**
+     * Function to rename a table to the provided new name.
+     * @param oldName The old table name.
+     * @param newName The new table name.
+     */
+    public void renameTable(String oldName, String newName) {
+        runAsyncUpdate("ALTER TABLE " + oldName + " RENAME TO " + newName);
+        for(Table table : tables) {
+            if(table.getName().equalsIgnoreCase(oldName)) {
+                if(table.hasCompressedColumns()) {
+                    runAsyncUpdate("UPDATE " + ColumnCompression.TABLE + " SET table_name = ? WHERE table_name = ?",
+                            newName.toLowerCase(), oldName.toLowerCase());
+                }
+                table.rename(newName);
             }
         }
     }
@@ -209,11 +1635,227 @@ public abstract class SQLEngine {
      */
     public void dropTable(String name) { 
         runAsyncUpdate("DROP TABLE " + name);
-        Iterator<Table>  tableIt = tables.iterator();
-        while(tableIt.hasNext()) {
-            if(tableIt.next().getName().equalsIgnoreCase(name)) {
-                tableIt.remove();
+        for(Table table : tables) {
+            if(table.getName().equalsIgnoreCase(name)) {
+                if(table.hasCompressedColumns()) {
+                    runAsyncUpdate("DELETE FROM " + ColumnCompression.TABLE + " WHERE table_name = ?", name.toLowerCase());
+                }
+                tables.remove(table);
+            }
+        }
+    }
+    
+    /**
+     * Writes the definitions of every table in the database to a local snapshot file, which can be loaded
+     * with <tt>loadSchemaSnapshot</tt> on the next startup to skip table discovery.
+     * 
+     * @param file The file to write the snapshot to.
+     * @throws IOException
+     */
+    public void saveSchemaSnapshot(File file) throws IOException {
+        SchemaSnapshot snapshot = new SchemaSnapshot();
+        try {
+            DatabaseMetaData dbMeta = getConnection().getMetaData();
+            for(String table : ColumnDef.generateAllDefs(dbMeta).keySet()) {
+                Table known = getTable(table);
+                snapshot.put(known.getName(), known.getColumns().toArray(new ColumnDef[0]));
+            }
+        } catch (SQLException e) {
+            throw new IOException("Unable to read the database schema: " + e.getMessage(), e);
+        }
+        snapshot.save(file);
+    }
+    
+    /**
+     * Registers every table stored in a snapshot file written by <tt>saveSchemaSnapshot</tt> without querying
+     * the database. The snapshot is then checked against the database in the background, and only tables whose
+     * columns differ are reloaded from the database metadata, after which the snapshot file is rewritten.
+     * 
+     * Changes to primary keys alone are not detected by the background check.
+     * 
+     * @param file The snapshot file to load.
+     * @return true if the snapshot was loaded, false if it was missing or unreadable and tables will be discovered as usual.
+     */
+    public boolean loadSchemaSnapshot(final File file) {
+        final SchemaSnapshot snapshot;
+        try {
+            snapshot = SchemaSnapshot.load(file);
+        } catch (IOException | RuntimeException e) {
+            // A corrupt or outdated snapshot can also fail to parse, such as on a type that no longer exists.
+            logger.log(Level.WARNING, "Schema snapshot not loaded: " + e.getMessage());
+            return false;
+        }
+        for(Map.Entry<String, ColumnDef[]> entry : snapshot.getTables().entrySet()) {
+            registerTable(newTable(entry.getKey(), entry.getValue()));
+        }
+        queryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                verifySchemaSnapshot(snapshot, file);
             }
+        }, Priority.BACKGROUND, null);
+        return true;
+    }
+    
+    private void verifySchemaSnapshot(SchemaSnapshot snapshot, File file) {
+        try {
+            DatabaseMetaData dbMeta = getConnection().getMetaData();
+            Map<String, ColumnDef[]> live = ColumnDef.generateAllDefs(dbMeta);
+            boolean changed = false;
+            for(String name : snapshot.getTables().keySet()) {
+                if(!live.containsKey(name)) {
+                    for(Table table : tables) {
+                        if(table.getName().equals(name)) {
+                            tables.remove(table);
+                        }
+                    }
+                    changed = true;
+                } else {
+                    Table table = getTable(name);
+                    if(snapshot.getChecksum(name) != ColumnDef.checksum(live.get(name), false)) {
+                        if(table != null) {
+                            table.redefine(ColumnDef.generateDefs(name, dbMeta));
+                        }
+                        changed = true;
+                    }
+                    // Indexes are not part of the snapshot, so they are always read from the database.
+                    if(table != null) {
+                        table.defineIndexes(IndexDef.generateDefs(name, dbMeta));
+                    }
+                }
+            }
+            if(changed) {
+                logger.log(Level.INFO, "Schema snapshot was out of date and has been refreshed.");
+                saveSchemaSnapshot(file);
+            }
+        } catch (SQLException | IOException e) {
+            logger.log(Level.WARNING, "Unable to verify schema snapshot: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Adds a <tt>Table</tt> to the tables known by this engine, replacing any known table with the same name.
+     * @param table The <tt>Table</tt> to add.
+     */
+    /**
+     * Records the compressed columns of a new table in <tt>ColumnCompression.TABLE</tt>, so they are found compressed
+     * again when the table is discovered. The statements are queued behind the creation of the table.
+     * @param table The name of the table.
+     * @param columns The column definitions the table was created with.
+     */
+    protected void recordCompression(String table, ColumnDef... columns) {
+        boolean created = false;
+        for(ColumnDef def : columns) {
+            if(!def.isCompressed) {
+                continue;
+            } else if(!created) {
+                runAsyncUpdate("CREATE TABLE IF NOT EXISTS " + ColumnCompression.TABLE
+                        + " (table_name VARCHAR(64) NOT NULL, column_name VARCHAR(64) NOT NULL)");
+                runAsyncUpdate("DELETE FROM " + ColumnCompression.TABLE + " WHERE table_name = ?", table.toLowerCase());
+                created = true;
+            }
+            runAsyncUpdate("INSERT INTO " + ColumnCompression.TABLE + " (table_name, column_name) VALUES (?, ?)",
+                    table.toLowerCase(), def.name.toLowerCase());
+        }
+    }
+    
+    /**
+     * Marks the columns of a discovered table that were created compressed, as recorded by <tt>recordCompression</tt>.
+     * @param table The name of the table.
+     * @param definitions The column definitions read from the database metadata.
+     * @throws SQLException
+     */
+    protected void loadCompression(String table, ColumnDef[] definitions) throws SQLException {
+        Connection conn = getConnection();
+        try (ResultSet exists = conn.getMetaData().getTables(null, null, ColumnCompression.TABLE, null)) {
+            if(!exists.next()) {
+                return;
+            }
+        }
+        try (PreparedStatement statement = prepare(conn, "SELECT column_name FROM " + ColumnCompression.TABLE + " WHERE table_name = ?", table.toLowerCase());
+                ResultSet result = statement.executeQuery()) {
+            while(result.next()) {
+                for(ColumnDef def : definitions) {
+                    if(def.name.equalsIgnoreCase(result.getString(1))) {
+                        def.isCompressed = true;
+                    }
+                }
+            }
+        }
+    }
+    
+    protected void registerTable(Table table) {
+        for(Table known : tables) {
+            if(known.getName().equalsIgnoreCase(table.getName())) {
+                tables.remove(known);
+            }
+        }
+        tables.add(table);
+    }
+    
+    /**
+     * Adapts a column definition read from another database so it can be used to create a table in this one.
+     * Sizes and decimal places that the column's <tt>Type</tt> cannot hold, such as the placeholder sizes some drivers
+     * report for unsized columns, are dropped. Engines override this to handle their own restrictions.
+     * @param def The column definition from the other database.
+     * @return A new column definition for this database.
+     */
+    protected ColumnDef translateColumn(ColumnDef def) {
+        ColumnDef translated = def.copy();
+        if(def.type != null) {
+            if(def.size > def.type.getMaxSize()) {
+                translated.size = -1;
+            }
+            if(def.decimal > def.type.getMaxDecinal() || translated.size < 0) {
+                translated.decimal = -1;
+            }
+        }
+        return translated;
+    }
+    
+    /**
+     * Constructs the engine-specific <tt>Table</tt> object for an existing table without modifying the database.
+     * @param name The name of the table.
+     * @param columns The definitions of the table's columns.
+     * @return A new <tt>Table</tt> instance.
+     */
+    protected abstract Table newTable(String name, ColumnDef... columns);
+    
+    /**
+     * Builds the statement that creates a secondary index. Engines override this when their syntax differs.
+     * @param table The name of the table to index.
+     * @param index The definition of the index.
+     * @return The SQL statement.
+     */
+    protected String createIndexStatement(String table, IndexDef index) {
+        String columnString = "";
+        for(String column : index.columns) {
+            columnString += (columnString.isEmpty() ? "" : ",") + column;
+        }
+        return "CREATE " + (index.isUnique ? "UNIQUE " : "") + "INDEX " + index.name + " ON " + table + " (" + columnString + ")"
+                + (index.isPartial() ? " WHERE " + index.where : "");
+    }
+    
+    /**
+     * Builds the statement that drops a secondary index. Engines override this when their syntax differs.
+     * @param table The name of the indexed table.
+     * @param index The name of the index.
+     * @return The SQL statement.
+     */
+    protected String dropIndexStatement(String table, String index) {
+        return "DROP INDEX " + index;
+    }
+    
+    /**
+     * A listener subscribed to the changes of a single table, or of every table.
+     */
+    protected static class ChangeSubscription {
+        protected final String table;
+        protected final ChangeListener listener;
+        
+        protected ChangeSubscription(String table, ChangeListener listener) {
+            this.table = table;
+            this.listener = listener;
         }
     }
 }
@@ -1,11 +1,15 @@
 package us.drome.cobrasqlib;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.logging.Level;
@@ -54,24 +58,19 @@ public class SQLiteEngine extends SQLEngine {
     }
     
     /**
-     * @return A <tt>Connection</tt> object to provide connectivity with the database.
+     * Retrieve the JDBC URL that connections to this database are opened with.
+     * 
+     * @return The URL of the database.
      */
-    @Override
-    public Connection getConnection() {
-        try {
-            if(connection == null || !connection.isValid(10)) {
-                connection = openConnection(getFile());
-            }
-        } catch (SQLException e) {
-            logger.log(Level.SEVERE, e.getMessage());
-        }
-        return connection;
+    public String getUrl() {
+        return "jdbc:sqlite:" + getFile();
     }
     
-    private Connection openConnection(File db) throws SQLException {
+    @Override
+    protected Connection openConnection() throws SQLException {
         try {
             Class.forName(org.sqlite.JDBC.class.getName());
-            return DriverManager.getConnection("jdbc:sqlite:" + db);
+            return DriverManager.getConnection(getUrl());
         } catch (ClassNotFoundException ex) {
             throw new SQLException("Cannot load SQLite. Check your installation and try again.");
         }
@@ -101,7 +100,10 @@ public class SQLiteEngine extends SQLEngine {
                 if(rs.getString(3).equalsIgnoreCase(name)) {
                     table = rs.getString(3);
                     definitions = ColumnDef.generateDefs(table, dbMeta);
+                    loadCompression(table, definitions);
                     SQLiteTable thisTable = new SQLiteTable(this, table, definitions);
+                    thisTable.defineIndexes(IndexDef.generateDefs(table, dbMeta));
+                    registerTable(thisTable);
                     return thisTable;
                 }
             }
@@ -135,14 +137,64 @@ public class SQLiteEngine extends SQLEngine {
             tempDef += def.isNotNull ? " NOT NULL" : "";
             tempDef += def.isPrimary ? " PRIMARY KEY" : "";
             tempDef += def.isAutoincrement ? " AUTOINCREMENT" : "";
-            if(i == columns.length -1) {
+            if(i < columns.length - 1) {
                 tempDef += ",";
             }
             definitions += tempDef;
         }
         this.runAsyncUpdate("CREATE TABLE " + name + "(" + definitions + ")");
+        recordCompression(name, columns);
         SQLiteTable table = new SQLiteTable(this, name, columns);
         tables.add(table);
         return table;
     }
+    
+    /**
+     * SQLite only allows AUTOINCREMENT on a column declared exactly as INTEGER PRIMARY KEY, so auto-incrementing keys
+     * are translated to that declaration.
+     */
+    @Override
+    protected ColumnDef translateColumn(ColumnDef def) {
+        ColumnDef translated = super.translateColumn(def);
+        if(translated.isPrimary && translated.isAutoincrement) {
+            translated.type = Type.INTEGER;
+            translated.size = -1;
+            translated.decimal = -1;
+            translated.isUnsigned = false;
+        }
+        return translated;
+    }
+    
+    /**
+     * SQLite binds every value whole and its driver does not accept streams of unknown length, so streams are read fully
+     * before they are bound.
+     */
+    @Override
+    protected void bindStream(PreparedStatement statement, int index, Object stream) throws SQLException {
+        try {
+            if(stream instanceof InputStream) {
+                statement.setBytes(index, LargeValue.readFully((InputStream) stream, Long.MAX_VALUE));
+            } else {
+                statement.setString(index, LargeValue.readFully((Reader) stream, Long.MAX_VALUE));
+            }
+        } catch (IOException e) {
+            throw new SQLException("Unable to read stream parameter " + index, e);
+        }
+    }
+    
+    /**
+     * The SQLite driver only reports the row id of the last insert, so batches are inserted one row at a time.
+     */
+    @Override
+    protected boolean batchesGeneratedKeys() { return false; }
+    
+    @Override
+    protected String explainStatement(String sql) {
+        return "EXPLAIN QUERY PLAN " + sql;
+    }
+    
+    @Override
+    protected SQLiteTable newTable(String name, ColumnDef... columns) {
+        return new SQLiteTable(this, name, columns);
+    }
 }
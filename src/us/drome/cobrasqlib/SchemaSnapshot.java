@@ -0,0 +1,126 @@
+package us.drome.cobrasqlib;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The <tt>SchemaSnapshot</tt> class holds the column definitions of a set of tables so they can be persisted to a local file
+ * and loaded on the next startup without querying the database metadata.
+ *
+ * Each table is stored with a checksum of its column structure, which is compared against the live database to find
+ * the tables that have changed since the snapshot was written. The whole file is protected by a trailing CRC.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class SchemaSnapshot {
+    private static final int MAGIC = 0x43535153;
+    /**
+     * The version of the snapshot file format. Snapshots written with any other version are ignored.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    private final Map<String, ColumnDef[]> tables = new LinkedHashMap<>();
+    private final Map<String, Long> checksums = new LinkedHashMap<>();
+
+    /**
+     * Protected constructor to initialize an empty <tt>SchemaSnapshot</tt>.
+     */
+    protected SchemaSnapshot() { }
+
+    /**
+     * Adds a table to this snapshot.
+     * @param name The name of the table.
+     * @param columns The definitions of the table's columns.
+     */
+    protected void put(String name, ColumnDef[] columns) {
+        tables.put(name, columns);
+        checksums.put(name, ColumnDef.checksum(columns, false));
+    }
+
+    /**
+     * @return A map of table names to their column definitions.
+     */
+    public Map<String, ColumnDef[]> getTables() { return Collections.unmodifiableMap(tables); }
+
+    /**
+     * Retrieves the structural checksum of a table in this snapshot. Primary key flags are not part of the checksum.
+     * @param name The name of the table.
+     * @return The checksum of the table's columns, or <tt>null</tt> if the table is not in this snapshot.
+     */
+    public Long getChecksum(String name) { return checksums.get(name); }
+
+    /**
+     * Writes this snapshot to the provided file, replacing any previous contents.
+     * @param file The file to write to.
+     * @throws IOException
+     */
+    public void save(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(temp)), new CRC32());
+        try (DataOutputStream out = new DataOutputStream(checked)) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(tables.size());
+            for(Map.Entry<String, ColumnDef[]> entry : tables.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(checksums.get(entry.getKey()));
+                out.writeInt(entry.getValue().length);
+                for(ColumnDef def : entry.getValue()) {
+                    def.writeTo(out);
+                }
+            }
+            out.flush();
+            out.writeLong(checked.getChecksum().getValue());
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads a snapshot previously written with <tt>save</tt>.
+     * @param file The file to read from.
+     * @return The loaded <tt>SchemaSnapshot</tt>.
+     * @throws IOException If the file cannot be read, is corrupt or was written with another format version.
+     */
+    public static SchemaSnapshot load(File file) throws IOException {
+        CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)), new CRC32());
+        try (DataInputStream in = new DataInputStream(checked)) {
+            if(in.readInt() != MAGIC) {
+                throw new IOException(file.getPath() + " is not a schema snapshot.");
+            } else if(in.readInt() != FORMAT_VERSION) {
+                throw new IOException(file.getPath() + " was written with an unsupported snapshot version.");
+            }
+            SchemaSnapshot snapshot = new SchemaSnapshot();
+            int tableCount = in.readInt();
+            for(int i = 0; i < tableCount; i++) {
+                String name = in.readUTF();
+                long checksum = in.readLong();
+                ColumnDef[] columns = new ColumnDef[in.readInt()];
+                for(int c = 0; c < columns.length; c++) {
+                    columns[c] = ColumnDef.readFrom(in);
+                }
+                snapshot.tables.put(name, columns);
+                snapshot.checksums.put(name, checksum);
+            }
+            long expected = checked.getChecksum().getValue();
+            if(in.readLong() != expected) {
+                throw new IOException(file.getPath() + " failed its checksum and may be corrupt.");
+            }
+            return snapshot;
+        }
+    }
+}
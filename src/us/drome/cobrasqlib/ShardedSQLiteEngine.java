@@ -0,0 +1,851 @@
+package us.drome.cobrasqlib;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Spreads every table over several SQLite database files, called shards, so writes to different shards run in parallel
+ * on their own connections and executors. Each shard is a complete <tt>SQLiteEngine</tt>, stored in the file
+ * <tt>file.0</tt>, <tt>file.1</tt> and so on.
+ *
+ * Rows are placed on a shard by a hash of their primary key, so every table must have a primary key that is not
+ * auto-incremented. Reads and writes made through a <tt>ShardedTable</tt> by primary key go to a single shard, while
+ * other reads are run on every shard in parallel and their results are merged. Statements run directly on this
+ * engine, including DDL, are run on every shard, except for batches and inserts with generated keys, whose rows are
+ * placed by their primary key like any other. Results do not keep the order of an ORDER BY across shards.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class ShardedSQLiteEngine extends SQLEngine {
+    /**
+     * The amount of rows fetched and inserted at a time while resharding.
+     */
+    private static final int BATCH_SIZE = 1000;
+    private static final Pattern INSERT = Pattern.compile("^\\s*(?:INSERT|REPLACE)(?:\\s+OR\\s+\\w+)?\\s+INTO\\s+(\\w+)\\s*\\(([^)]*)\\)",
+            Pattern.CASE_INSENSITIVE);
+    private final String file;
+    private volatile SQLiteEngine[] shards;
+    private volatile boolean coalesceReads = false;
+    private volatile long queryCacheBytes = -1;
+    private long validateAfterIdleMillis = -1;
+    private long keepAliveMillis = 0;
+
+    /**
+     * Construct a new <tt>ShardedSQLiteEngine</tt> by specifying a logger for output, the path that shard files are
+     * named after, and the amount of shards.
+     *
+     * @param logger a <tt>Logger</tt> instance for sending output.
+     * @param file a <tt>String</tt> containing the path the shard files are named after.
+     * @param shardCount The amount of shards. Must match the amount used when the shards were created, or be changed with <tt>reshard</tt>.
+     * @throws InvalidSQLConfigException
+     */
+    public ShardedSQLiteEngine(Logger logger, String file, int shardCount) throws InvalidSQLConfigException {
+        super(logger);
+        if(file == null || file.isEmpty()) {
+            throw new InvalidSQLConfigException("File parameter is required for the Sharded SQLite Engine.");
+        } else if(shardCount < 1) {
+            throw new InvalidSQLConfigException("At least one shard is required for the Sharded SQLite Engine.");
+        }
+        this.file = file;
+        this.shards = openShards(file, shardCount);
+    }
+
+    private SQLiteEngine[] openShards(String path, int count) throws InvalidSQLConfigException {
+        SQLiteEngine[] opened = new SQLiteEngine[count];
+        for(int i = 0; i < count; i++) {
+            opened[i] = new SQLiteEngine(logger, path + "." + i);
+        }
+        return opened;
+    }
+
+    /**
+     * @return The amount of shards the tables are spread over.
+     */
+    public int getShardCount() { return shards.length; }
+
+    /**
+     * @param index The index of the shard.
+     * @return The <tt>SQLiteEngine</tt> of a single shard.
+     */
+    public SQLiteEngine getShard(int index) { return shards[index]; }
+
+    /**
+     * @param key A primary key value.
+     * @return The <tt>SQLiteEngine</tt> of the shard that holds the row with the provided primary key.
+     */
+    public SQLiteEngine getShardFor(Object key) { return shards[shardFor(key, shards.length)]; }
+
+    /**
+     * Computes the shard of a primary key. Keys are hashed by their string form so that the same key is placed on the same
+     * shard whether it is given as an Integer, a Long or a String.
+     */
+    protected static int shardFor(Object key, int shardCount) {
+        return (String.valueOf(key).hashCode() & Integer.MAX_VALUE) % shardCount;
+    }
+
+    /**
+     * A sharded engine has no single connection. Use the connections of the individual shards instead.
+     */
+    @Override
+    protected Connection openConnection() throws SQLException {
+        throw new SQLFeatureNotSupportedException("A sharded engine has no single connection, use the connection of a shard instead.");
+    }
+
+    /**
+     * A sharded engine has no single connection. Use the connections of the individual shards instead.
+     * @throws UnsupportedOperationException Always.
+     */
+    @Override
+    public Connection getConnection() {
+        throw new UnsupportedOperationException("A sharded engine has no single connection, use getShard(int).getConnection() instead.");
+    }
+
+    /**
+     * Runs a query on every shard in parallel and passes the merged rows to the callback once all shards have answered.
+     */
+    @Override
+    public QueryHandle runTimedQuery(final String query, final long timeoutMillis, Callback callback, final Object... params) {
+        return fanOut(callback, new ShardCall() {
+            @Override
+            public QueryHandle run(int shard, Callback merge) {
+                return shards[shard].runTimedQuery(query, timeoutMillis, merge, params);
+            }
+        });
+    }
+
+    /**
+     * Runs a query on every shard in parallel, answering from the query cache of each shard when possible.
+     */
+    @Override
+    public QueryHandle runCachedQuery(final String query, final long ttlMillis, Callback callback, final Object... params) {
+        return fanOut(callback, new ShardCall() {
+            @Override
+            public QueryHandle run(int shard, Callback merge) {
+                return shards[shard].runCachedQuery(query, ttlMillis, merge, params);
+            }
+        });
+    }
+
+    /**
+     * Runs an update on every shard. Each shard runs the update independently, so it is not atomic across shards.
+     */
+    @Override
+    public QueryHandle runTimedUpdate(String update, long timeoutMillis, Object... params) {
+        SQLiteEngine[] current = shards;
+        ShardedHandle handle = new ShardedHandle(current.length);
+        for(int i = 0; i < current.length; i++) {
+            handle.parts[i] = current[i].runTimedUpdate(update, timeoutMillis, params);
+        }
+        return handle;
+    }
+
+    /**
+     * Runs a synchronous query on every shard in turn and returns the concatenated rows.
+     */
+    @Override
+    public List<Row> runQuery(String query, Object... params) {
+        List<Row> result = new ArrayList<>();
+        for(SQLiteEngine shard : shards) {
+            result.addAll(shard.runQuery(query, params));
+        }
+        return result;
+    }
+
+    /**
+     * Runs a synchronous update on every shard in turn.
+     */
+    @Override
+    public void runUpdate(String update, Object... params) {
+        for(SQLiteEngine shard : shards) {
+            shard.runUpdate(update, params);
+        }
+    }
+
+    /**
+     * Runs every parameter set of the batches on the shard of its primary key, in one transaction per shard, so it is
+     * not atomic across shards. Only inserts that list the primary key among their columns can be routed.
+     * @return true if the transaction was committed on every shard.
+     * @throws UnsupportedOperationException If a statement is not an insert listing the primary key of a sharded table.
+     */
+    @Override
+    public boolean runBatchUpdate(Map<String, List<Object[]>> batches) {
+        SQLiteEngine[] current = shards;
+        List<Map<String, List<Object[]>>> routed = new ArrayList<>(current.length);
+        for(int i = 0; i < current.length; i++) {
+            routed.add(new LinkedHashMap<String, List<Object[]>>());
+        }
+        for(Map.Entry<String, List<Object[]>> batch : batches.entrySet()) {
+            int key = keyParameter(batch.getKey());
+            for(Object[] params : batch.getValue()) {
+                Map<String, List<Object[]>> target = routed.get(shardFor(params[key], current.length));
+                if(!target.containsKey(batch.getKey())) {
+                    target.put(batch.getKey(), new ArrayList<Object[]>());
+                }
+                target.get(batch.getKey()).add(params);
+            }
+        }
+        boolean committed = true;
+        for(int i = 0; i < current.length; i++) {
+            if(!routed.get(i).isEmpty()) {
+                committed &= current[i].runBatchUpdate(routed.get(i));
+            }
+        }
+        return committed;
+    }
+
+    /**
+     * Inserts every row on the shard of its primary key, in one transaction per shard, and delivers the keys generated
+     * by the shards in the order of <tt>rows</tt> once every shard has committed. If any shard fails, the failure is passed
+     * to the callback's error method instead, and the rows of the other shards may still have been inserted.
+     * @throws UnsupportedOperationException If the statement is not an insert listing the primary key of a sharded table.
+     */
+    @Override
+    protected QueryHandle runTrackedInsert(String insert, List<Object[]> rows, List<ChangeEvent> changes, final Callback callback) {
+        SQLiteEngine[] current = shards;
+        int key = keyParameter(insert);
+        List<List<Integer>> positions = new ArrayList<>(current.length);
+        for(int i = 0; i < current.length; i++) {
+            positions.add(new ArrayList<Integer>());
+        }
+        for(int row = 0; row < rows.size(); row++) {
+            positions.get(shardFor(rows.get(row)[key], current.length)).add(row);
+        }
+        int used = 0;
+        for(List<Integer> shardRows : positions) {
+            used += shardRows.isEmpty() ? 0 : 1;
+        }
+        if(used == 0) {
+            return queue(getDefaultTimeout(), callback, new Callable<Object>() {
+                @Override
+                public Object call() {
+                    return Collections.<Long>emptyList();
+                }
+            });
+        }
+        final Long[] keys = new Long[rows.size()];
+        final AtomicInteger remaining = new AtomicInteger(used);
+        final ShardedHandle handle = new ShardedHandle(used);
+        int part = 0;
+        for(int i = 0; i < current.length; i++) {
+            final List<Integer> shardRows = positions.get(i);
+            if(shardRows.isEmpty()) {
+                continue;
+            }
+            List<Object[]> params = new ArrayList<>(shardRows.size());
+            List<ChangeEvent> shardChanges = changes == null ? null : new ArrayList<ChangeEvent>(shardRows.size());
+            for(int row : shardRows) {
+                params.add(rows.get(row));
+                if(shardChanges != null) {
+                    shardChanges.add(changes.get(row));
+                }
+            }
+            handle.parts[part++] = current[i].runTrackedInsert(insert, params, shardChanges, new Callback() {
+                @Override
+                public void invoke(Object result) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+                    List<?> generated = (List<?>) result;
+                    for(int j = 0; j < shardRows.size(); j++) {
+                        keys[shardRows.get(j)] = (Long) generated.get(j);
+                    }
+                    if(remaining.decrementAndGet() == 0 && handle.complete()) {
+                        deliver(callback, Arrays.asList(keys));
+                    }
+                }
+
+                @Override
+                public boolean handlesErrors() { return true; }
+
+                @Override
+                public void invokeError(Throwable error) {
+                    if(handle.complete()) {
+                        deliverError(callback, error);
+                    }
+                }
+            });
+        }
+        return handle;
+    }
+
+    /**
+     * Finds the parameter that binds the primary key in an insert, so its rows can be placed on their shards.
+     * @return The index of the primary key among the parameters of a row.
+     * @throws UnsupportedOperationException If the statement is not an insert listing the primary key of a sharded table.
+     */
+    private int keyParameter(String statement) {
+        Matcher matcher = INSERT.matcher(statement);
+        ShardedTable table = matcher.find() ? getTable(matcher.group(1)) : null;
+        if(table != null) {
+            String[] columns = matcher.group(2).split(",");
+            for(int i = 0; i < columns.length; i++) {
+                if(columns[i].trim().equalsIgnoreCase(table.getPrimaryKey().name)) {
+                    return i;
+                }
+            }
+        }
+        throw new UnsupportedOperationException("Only inserts that list the primary key of a sharded table can be placed on a shard, "
+                + "use getShardFor(key) to run other statements: " + statement);
+    }
+
+    /**
+     * Streaming is only available from a single shard.
+     * @throws UnsupportedOperationException Always.
+     */
+    @Override
+    public RowPublisher publish(String query, Object... params) {
+        throw new UnsupportedOperationException("Rows can only be published from a single shard, use getShard(int).publish() instead.");
+    }
+
+    @Override
+    public void setCoalesceReads(boolean coalesce) {
+        coalesceReads = coalesce;
+        for(SQLiteEngine shard : shards) {
+            shard.setCoalesceReads(coalesce);
+        }
+    }
+
+    /**
+     * Enables a query cache on every shard, each limited to the provided weight.
+     */
+    @Override
+    public void enableQueryCache(long maxBytes) {
+        queryCacheBytes = maxBytes;
+        for(SQLiteEngine shard : shards) {
+            shard.enableQueryCache(maxBytes);
+        }
+    }
+
+    @Override
+    public void disableQueryCache() {
+        queryCacheBytes = -1;
+        for(SQLiteEngine shard : shards) {
+            shard.disableQueryCache();
+        }
+    }
+
+    @Override
+    public synchronized void setConnectionValidation(long idleMillis, long keepAliveMillis) {
+        this.validateAfterIdleMillis = idleMillis;
+        this.keepAliveMillis = keepAliveMillis;
+        for(SQLiteEngine shard : shards) {
+            shard.setConnectionValidation(idleMillis, keepAliveMillis);
+        }
+    }
+
+    @Override
+    public void setDefaultTimeout(long timeoutMillis) {
+        super.setDefaultTimeout(timeoutMillis);
+        for(SQLiteEngine shard : shards) {
+            shard.setDefaultTimeout(timeoutMillis);
+        }
+    }
+
+    @Override
+    public void setLargeValueThreshold(long bytes) {
+        super.setLargeValueThreshold(bytes);
+        for(SQLiteEngine shard : shards) {
+            shard.setLargeValueThreshold(bytes);
+        }
+    }
+
+    @Override
+    public void setDeliveryScheduler(DeliveryScheduler scheduler) {
+        super.setDeliveryScheduler(scheduler);
+        for(SQLiteEngine shard : shards) {
+            shard.setDeliveryScheduler(scheduler);
+        }
+    }
+
+    /**
+     * Applies the settings made on this engine, and its statement listeners and change subscriptions, to a new shard.
+     */
+    private synchronized void configure(SQLiteEngine shard) {
+        shard.setCoalesceReads(coalesceReads);
+        if(queryCacheBytes >= 0) {
+            shard.enableQueryCache(queryCacheBytes);
+        }
+        if(validateAfterIdleMillis >= 0) {
+            shard.setConnectionValidation(validateAfterIdleMillis, keepAliveMillis);
+        }
+        shard.setDefaultTimeout(getDefaultTimeout());
+        shard.setLargeValueThreshold(getLargeValueThreshold());
+        shard.setDeliveryScheduler(getDeliveryScheduler());
+        for(StatementListener listener : getStatementListeners()) {
+            shard.addStatementListener(listener);
+        }
+        for(ChangeSubscription subscription : getChangeSubscriptions()) {
+            shard.subscribe(subscription.table, subscription.listener);
+        }
+    }
+
+    @Override
+    public synchronized void closeConnection() {
+        for(SQLiteEngine shard : shards) {
+            shard.closeConnection();
+        }
+    }
+
+    /**
+     * Flushes buffered writes and shuts down every shard.
+     */
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        for(SQLiteEngine shard : shards) {
+            shard.shutdown();
+        }
+    }
+
+    /**
+     * Registers the listener on this engine and every shard, as statements are run by the shards.
+     */
+    @Override
+    public synchronized void addStatementListener(StatementListener listener) {
+        super.addStatementListener(listener);
+        for(SQLiteEngine shard : shards) {
+            shard.addStatementListener(listener);
+        }
+    }
+
+    @Override
+    public synchronized void removeStatementListener(StatementListener listener) {
+        super.removeStatementListener(listener);
+        for(SQLiteEngine shard : shards) {
+            shard.removeStatementListener(listener);
+        }
+    }
+
+    /**
+     * Subscribes the listener on this engine and every shard, as changes are committed by the shards.
+     */
+    @Override
+    protected synchronized void subscribe(String table, ChangeListener listener) {
+        super.subscribe(table, listener);
+        for(SQLiteEngine shard : shards) {
+            shard.subscribe(table, listener);
+        }
+    }
+
+    @Override
+    public synchronized void unsubscribe(ChangeListener listener) {
+        super.unsubscribe(listener);
+        for(SQLiteEngine shard : shards) {
+            shard.unsubscribe(listener);
+        }
+    }
+
+    /**
+     * Log tables are partitioned by time rather than by key, so they are created on a single shard instead.
+     * @throws UnsupportedOperationException Always.
+     */
+    @Override
+    public PartitionedLogTable createLogTable(String name, String timeColumn, PartitionedLogTable.Period period, ColumnDef... columns) {
+        throw new UnsupportedOperationException("Sharded engines do not support log tables, use getShard(int).createLogTable instead.");
+    }
+
+    /**
+     * Sharded engines keep every shard in its own file, so there is no single database to share a change log through.
+     * @throws UnsupportedOperationException Always.
+     */
+    @Override
+    public ChangeLog enableChangeLog(long pollMillis) {
+        throw new UnsupportedOperationException("Sharded engines do not support a change log.");
+    }
+
+    /**
+     * Creates a table on every shard.
+     * @throws IllegalArgumentException If the table has no primary key, or its primary key is auto-incremented.
+     */
+    @Override
+    public ShardedTable createTable(String name, ColumnDef... columns) {
+        checkKey(name, columns);
+        SQLiteEngine[] current = shards;
+        Table[] parts = new Table[current.length];
+        for(int i = 0; i < current.length; i++) {
+            parts[i] = current[i].createTable(name, columns);
+        }
+        ShardedTable table = new ShardedTable(this, name, parts, columns);
+        registerTable(table);
+        return table;
+    }
+
+    /**
+     * Returns the specified table if it is in the database. Tables are discovered on the first shard.
+     *
+     * @param name The name of the <tt>Table</tt> to return.
+     * @return <tt>Table</tt> instance matching the provided name, or <tt>null</tt> if table does not exist or has no
+     * primary key that can be used to place its rows.
+     */
+    @Override
+    public ShardedTable getTable(String name) {
+        for(Table table : tables) {
+            if(table.getName().equalsIgnoreCase(name)) {
+                return (ShardedTable)table;
+            }
+        }
+        Table first = shards[0].getTable(name);
+        if(first == null) {
+            return null;
+        }
+        ColumnDef[] columns = first.getColumns().toArray(new ColumnDef[0]);
+        try {
+            checkKey(name, columns);
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.SEVERE, e.getMessage());
+            return null;
+        }
+        ShardedTable table = new ShardedTable(this, first.getName(), shardTables(shards, first.getName()), columns);
+        registerTable(table);
+        return table;
+    }
+
+    private static Table[] shardTables(SQLiteEngine[] engines, String name) {
+        Table[] parts = new Table[engines.length];
+        for(int i = 0; i < engines.length; i++) {
+            parts[i] = engines[i].getTable(name);
+        }
+        return parts;
+    }
+
+    @Override
+    protected ShardedTable newTable(String name, ColumnDef... columns) {
+        SQLiteEngine[] current = shards;
+        Table[] parts = new Table[current.length];
+        for(int i = 0; i < current.length; i++) {
+            parts[i] = current[i].newTable(name, columns);
+            current[i].registerTable(parts[i]);
+        }
+        return new ShardedTable(this, name, parts, columns);
+    }
+
+    @Override
+    public void renameTable(String oldName, String newName) {
+        for(SQLiteEngine shard : shards) {
+            shard.renameTable(oldName, newName);
+        }
+        for(Table table : tables) {
+            if(table.getName().equalsIgnoreCase(oldName)) {
+                table.rename(newName);
+            }
+        }
+    }
+
+    @Override
+    public void dropTable(String name) {
+        for(SQLiteEngine shard : shards) {
+            shard.dropTable(name);
+        }
+        for(Table table : tables) {
+            if(table.getName().equalsIgnoreCase(name)) {
+                tables.remove(table);
+            }
+        }
+    }
+
+    /**
+     * Writes the schema of the first shard to a snapshot file. Every shard has the same schema.
+     */
+    @Override
+    public void saveSchemaSnapshot(File file) throws IOException {
+        shards[0].saveSchemaSnapshot(file);
+    }
+
+    /**
+     * Loads a snapshot file into every shard. Tables are registered with this engine when they are first requested.
+     */
+    @Override
+    public boolean loadSchemaSnapshot(File file) {
+        boolean loaded = true;
+        for(SQLiteEngine shard : shards) {
+            loaded &= shard.loadSchemaSnapshot(file);
+        }
+        return loaded;
+    }
+
+    private static void checkKey(String name, ColumnDef[] columns) {
+        for(ColumnDef def : columns) {
+            if(def.isPrimary) {
+                if(def.isAutoincrement) {
+                    throw new IllegalArgumentException("Table " + name + " cannot be sharded by an auto-incremented primary key.");
+                }
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Table " + name + " needs a primary key to be sharded.");
+    }
+
+    /**
+     * Moves every row to a new set of shards. Buffered writes are flushed and queued work on the current shards is completed
+     * first. The rows are copied into new shard files that replace the current ones once every table has been copied, so
+     * the current shards are left untouched if copying fails. The new shards keep the settings made on this engine and the
+     * write buffering of its tables. No other operations may be made on this engine while it is being resharded.
+     *
+     * @param shardCount The new amount of shards.
+     * @throws SQLException If the rows could not be copied or the shard files could not be replaced.
+     */
+    public synchronized void reshard(int shardCount) throws SQLException {
+        if(shardCount < 1) {
+            throw new IllegalArgumentException("At least one shard is required.");
+        }
+        SQLiteEngine[] current = shards;
+        List<String> names = new ArrayList<>();
+        try (Connection conn = current[0].openConnection();
+                ResultSet rs = conn.getMetaData().getTables(null, null, "%", new String[] {"TABLE"})) {
+            while(rs.next()) {
+                names.add(rs.getString("TABLE_NAME"));
+            }
+        }
+        List<ShardedTable> sharded = new ArrayList<>();
+        for(String name : names) {
+            ShardedTable table = getTable(name);
+            if(table != null) {
+                table.flushWrites();
+                sharded.add(table);
+            }
+        }
+        for(SQLiteEngine shard : current) {
+            await(shard);
+        }
+
+        SQLiteEngine[] next;
+        SQLiteEngine[] replacement;
+        try {
+            next = openShards(file + ".reshard", shardCount);
+            replacement = openShards(file, shardCount);
+        } catch (InvalidSQLConfigException e) {
+            throw new SQLException(e.getMessage(), e);
+        }
+        try {
+            for(ShardedTable table : sharded) {
+                ColumnDef[] columns = table.getColumns().toArray(new ColumnDef[0]);
+                for(SQLiteEngine shard : next) {
+                    Table created = shard.createTable(table.getName(), columns);
+                    for(IndexDef index : table.getIndexes()) {
+                        created.createIndex(index);
+                    }
+                    await(shard);
+                }
+                copyRows(table, current, next);
+            }
+        } finally {
+            for(SQLiteEngine shard : next) {
+                shard.shutdown();
+            }
+        }
+
+        for(SQLiteEngine shard : current) {
+            shard.shutdown();
+        }
+        try {
+            for(SQLiteEngine shard : current) {
+                Files.move(shard.getFile().toPath(), new File(shard.getFile().getPath() + ".old").toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            for(int i = 0; i < shardCount; i++) {
+                Files.move(next[i].getFile().toPath(), replacement[i].getFile().toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            for(SQLiteEngine shard : current) {
+                Files.deleteIfExists(new File(shard.getFile().getPath() + ".old").toPath());
+            }
+        } catch (IOException e) {
+            throw new SQLException("Unable to replace shard files, the previous shards were kept with the suffix .old", e);
+        }
+        shards = replacement;
+        for(SQLiteEngine shard : replacement) {
+            configure(shard);
+        }
+        for(ShardedTable table : sharded) {
+            table.setShards(shardTables(replacement, table.getName()));
+        }
+        logger.log(Level.INFO, "Resharded " + sharded.size() + " tables from " + current.length + " to " + shardCount + " shards.");
+    }
+
+    private void copyRows(ShardedTable table, SQLiteEngine[] from, SQLiteEngine[] to) throws SQLException {
+        List<ColumnDef> columns = table.getColumns();
+        String columnString = "";
+        String valueString = "";
+        for(ColumnDef def : columns) {
+            columnString += (columnString.isEmpty() ? "" : ",") + def.name;
+            valueString += (valueString.isEmpty() ? "?" : ",?");
+        }
+        int keyIndex = columns.indexOf(table.getPrimaryKey()) + 1;
+        Connection[] outs = new Connection[to.length];
+        PreparedStatement[] inserts = new PreparedStatement[to.length];
+        int[] pending = new int[to.length];
+        try {
+            for(int i = 0; i < to.length; i++) {
+                outs[i] = to[i].openConnection();
+                outs[i].setAutoCommit(false);
+                inserts[i] = outs[i].prepareStatement("INSERT INTO " + table.getName() + " (" + columnString + ") VALUES (" + valueString + ")");
+            }
+            for(SQLiteEngine shard : from) {
+                try (Connection in = shard.openConnection();
+                        PreparedStatement query = in.prepareStatement("SELECT " + columnString + " FROM " + table.getName(),
+                            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    query.setFetchSize(BATCH_SIZE);
+                    try (ResultSet rows = query.executeQuery()) {
+                        while(rows.next()) {
+                            int target = shardFor(rows.getObject(keyIndex), to.length);
+                            for(int c = 1; c <= columns.size(); c++) {
+                                inserts[target].setObject(c, rows.getObject(c));
+                            }
+                            inserts[target].addBatch();
+                            if(++pending[target] == BATCH_SIZE) {
+                                inserts[target].executeBatch();
+                                pending[target] = 0;
+                            }
+                        }
+                    }
+                }
+            }
+            for(int i = 0; i < to.length; i++) {
+                inserts[i].executeBatch();
+                outs[i].commit();
+            }
+        } finally {
+            for(int i = 0; i < to.length; i++) {
+                if(outs[i] != null) {
+                    try { outs[i].close(); } catch (SQLException e) { logger.log(Level.SEVERE, e.getMessage()); }
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until the work queued on a shard before this call has been executed.
+     */
+    private static void await(SQLiteEngine shard) throws SQLException {
+        try {
+            shard.getExecutor().barrier().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a shard.", e);
+        } catch (ExecutionException e) {
+            throw new SQLException(e.getCause());
+        }
+    }
+
+    /**
+     * Runs an asynchronous read on every shard and passes the concatenated results to the callback once every shard has
+     * answered. If any shard fails, the failure is passed to the callback's error method instead and no result is delivered.
+     *
+     * @param callback The callback to deliver the merged result to.
+     * @param call Starts the read on a single shard, delivering its result to the provided callback.
+     * @return A handle that cancels the read on every shard.
+     */
+    protected QueryHandle fanOut(final Callback callback, ShardCall call) {
+        final int count = shards.length;
+        final Object[] results = new Object[count];
+        final AtomicInteger remaining = new AtomicInteger(count);
+        final ShardedHandle handle = new ShardedHandle(count);
+        for(int i = 0; i < count; i++) {
+            final int index = i;
+            handle.parts[i] = call.run(i, new Callback() {
+                @Override
+                public void invoke(Object result) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+                    results[index] = result;
+                    if(remaining.decrementAndGet() == 0 && handle.complete()) {
+                        List<Object> merged = new ArrayList<>();
+                        for(Object part : results) {
+                            merged.addAll((List<?>) part);
+                        }
+                        deliver(callback, merged);
+                    }
+                }
+
+                @Override
+                public boolean handlesErrors() { return true; }
+
+                @Override
+                public void invokeError(Throwable error) {
+                    if(handle.complete()) {
+                        handle.cancelParts();
+                        deliverError(callback, error);
+                    }
+                }
+            });
+        }
+        return handle;
+    }
+
+    /**
+     * Starts an asynchronous operation on a single shard.
+     */
+    protected interface ShardCall {
+        /**
+         * @param shard The index of the shard.
+         * @param merge The callback the shard's result must be delivered to.
+         * @return The handle of the operation on the shard, or <tt>null</tt> if it has none.
+         */
+        QueryHandle run(int shard, Callback merge);
+    }
+
+    /**
+     * A handle for an operation that runs on several shards.
+     */
+    private static class ShardedHandle extends QueryHandle {
+        private final QueryHandle[] parts;
+
+        private ShardedHandle(int count) {
+            super(0);
+            this.parts = new QueryHandle[count];
+        }
+
+        @Override
+        public boolean cancel() {
+            boolean result = super.cancel();
+            cancelParts();
+            return result;
+        }
+
+        private void cancelParts() {
+            for(QueryHandle part : parts) {
+                if(part != null) {
+                    part.cancel();
+                }
+            }
+        }
+
+        @Override
+        public boolean isDone() {
+            if(super.isDone()) {
+                return true;
+            }
+            for(QueryHandle part : parts) {
+                if(part == null || !part.isDone()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isTimedOut() {
+            for(QueryHandle part : parts) {
+                if(part != null && part.isTimedOut()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
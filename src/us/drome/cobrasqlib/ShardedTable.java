@@ -0,0 +1,323 @@
+package us.drome.cobrasqlib;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A table of a <tt>ShardedSQLiteEngine</tt> that is spread over the same table on every shard. Reads and writes by
+ * primary key are made on the table of a single shard, other reads are made on every shard and merged.
+ *
+ * Rows returned by a <tt>ShardedTable</tt> belong to the table of the shard they were read from, so updating or deleting
+ * them through <tt>Row</tt> goes straight to that shard. Write buffering is applied to every shard separately.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class ShardedTable extends Table {
+    private volatile Table[] shards;
+    private long bufferFlushMillis = -1;
+    private int bufferMaxPending;
+
+    protected ShardedTable(ShardedSQLiteEngine parent, String name, Table[] shards, ColumnDef... columns) {
+        super(parent, name, columns);
+        this.shards = shards;
+    }
+
+    /**
+     * Replaces the tables of the shards after the engine was resharded, buffering their writes if this table buffers them.
+     * @param shards The table of every shard, in shard order.
+     */
+    protected synchronized void setShards(Table[] shards) {
+        if(bufferFlushMillis >= 0) {
+            for(Table shard : shards) {
+                shard.bufferWrites(bufferFlushMillis, bufferMaxPending);
+            }
+        }
+        this.shards = shards;
+    }
+
+    /**
+     * @param key A primary key value.
+     * @return The table of the shard that holds the row with the provided primary key.
+     */
+    public Table getShardFor(Object key) {
+        Table[] current = shards;
+        return current[ShardedSQLiteEngine.shardFor(key, current.length)];
+    }
+
+    private boolean isKey(String column) {
+        ColumnDef key = getPrimaryKey();
+        return key != null && key.name.equalsIgnoreCase(column);
+    }
+
+    private ShardedSQLiteEngine engine() { return (ShardedSQLiteEngine) parent; }
+
+    @Override
+    public List<IndexDef> getIndexes() { return shards[0].getIndexes(); }
+
+    /**
+     * Creates the index on the table of every shard.
+     */
+    @Override
+    public void createIndex(IndexDef index) {
+        for(Table shard : shards) {
+            shard.createIndex(index);
+        }
+    }
+
+    @Override
+    public void dropIndex(String indexName) {
+        for(Table shard : shards) {
+            shard.dropIndex(indexName);
+        }
+    }
+
+    /**
+     * Reads the secondary indexes from the first shard, as every shard has the same indexes.
+     */
+    @Override
+    public List<IndexDef> listIndexes() { return shards[0].listIndexes(); }
+
+    @Override
+    public QueryHandle getRows(final String[] selectColumns, final String whereColumn, final Object whereValue, Callback callback) {
+        if(isMirrored()) {
+            return super.getRows(selectColumns, whereColumn, whereValue, callback);
+        } else if(isKey(whereColumn)) {
+            return getShardFor(whereValue).getRows(selectColumns, whereColumn, whereValue, callback);
+        }
+        final Table[] current = shards;
+        return engine().fanOut(callback, new ShardedSQLiteEngine.ShardCall() {
+            @Override
+            public QueryHandle run(int shard, Callback merge) {
+                return current[shard].getRows(selectColumns, whereColumn, whereValue, merge);
+            }
+        });
+    }
+
+    @Override
+    public QueryHandle getCachedRows(final String column, final Object value, final long ttlMillis, Callback callback) {
+        if(isKey(column)) {
+            return getShardFor(value).getCachedRows(column, value, ttlMillis, callback);
+        }
+        final Table[] current = shards;
+        return engine().fanOut(callback, new ShardedSQLiteEngine.ShardCall() {
+            @Override
+            public QueryHandle run(int shard, Callback merge) {
+                return current[shard].getCachedRows(column, value, ttlMillis, merge);
+            }
+        });
+    }
+
+    @Override
+    public QueryHandle getValues(final String selectColumn, final String whereColumn, final Object whereValue, Callback callback) {
+        if(isMirrored()) {
+            return super.getValues(selectColumn, whereColumn, whereValue, callback);
+        } else if(isKey(whereColumn)) {
+            return getShardFor(whereValue).getValues(selectColumn, whereColumn, whereValue, callback);
+        }
+        final Table[] current = shards;
+        return engine().fanOut(callback, new ShardedSQLiteEngine.ShardCall() {
+            @Override
+            public QueryHandle run(int shard, Callback merge) {
+                return current[shard].getValues(selectColumn, whereColumn, whereValue, merge);
+            }
+        });
+    }
+
+    /**
+     * Aggregates the table of every shard and combines their groups. Averages are computed from the sum and count of
+     * every shard.
+     */
+    @Override
+    protected GroupedResult aggregate(String[] keyColumns, Aggregate[] functions, String[] columns, Where where) throws SQLException {
+        List<Aggregate> partialFunctions = new ArrayList<>();
+        List<String> partialColumns = new ArrayList<>();
+        for(int i = 0; i < functions.length; i++) {
+            partialFunctions.add(functions[i] == Aggregate.AVG ? Aggregate.SUM : functions[i]);
+            partialColumns.add(columns[i]);
+            if(functions[i] == Aggregate.AVG) {
+                partialFunctions.add(Aggregate.COUNT);
+                partialColumns.add(columns[i]);
+            }
+        }
+        Aggregate[] partial = partialFunctions.toArray(new Aggregate[0]);
+        String[] partialOf = partialColumns.toArray(new String[0]);
+        Map<List<Object>, Object[]> keys = new LinkedHashMap<>();
+        Map<List<Object>, double[]> totals = new LinkedHashMap<>();
+        for(Table shard : shards) {
+            GroupedResult result = shard.aggregate(keyColumns, partial, partialOf, where);
+            for(int group = 0; group < result.getGroupCount(); group++) {
+                Object[] key = result.getKey(group);
+                List<Object> normalized = new ArrayList<>(key.length);
+                for(Object value : key) {
+                    normalized.add(value instanceof Number ? (Object) ((Number) value).doubleValue() : value);
+                }
+                double[] total = totals.get(normalized);
+                if(total == null) {
+                    total = new double[partial.length];
+                    Arrays.fill(total, Double.NaN);
+                    totals.put(normalized, total);
+                    keys.put(normalized, key);
+                }
+                for(int i = 0; i < partial.length; i++) {
+                    total[i] = partial[i].combine(total[i], result.getValue(group, i));
+                }
+            }
+        }
+        String[] labels = new String[functions.length];
+        for(int i = 0; i < functions.length; i++) {
+            labels[i] = functions[i].label(columns[i]);
+        }
+        double[][] values = new double[functions.length][totals.size()];
+        int group = 0;
+        for(double[] total : totals.values()) {
+            for(int i = 0, j = 0; i < functions.length; i++, j++) {
+                if(functions[i] == Aggregate.AVG) {
+                    values[i][group] = total[j + 1] > 0 ? total[j] / total[j + 1] : Double.NaN;
+                    j++;
+                } else {
+                    values[i][group] = total[j];
+                }
+            }
+            group++;
+        }
+        return new GroupedResult(keyColumns, labels, keys.values().toArray(new Object[keys.size()][]), values);
+    }
+
+    /**
+     * Rows are spread over the shards by the hash of their key, so there is no single key order to page through.
+     * @throws UnsupportedOperationException Always.
+     */
+    @Override
+    public TablePages pages(int pageSize, Object afterKey) {
+        throw new UnsupportedOperationException("Sharded tables cannot be paged, page through the table of every shard instead.");
+    }
+
+    /**
+     * Streams the matching rows from a single shard. Only primary key lookups can be streamed from a sharded table.
+     * @throws UnsupportedOperationException If <tt>whereColumn</tt> is not the primary key.
+     */
+    @Override
+    public RowPublisher publishRows(String whereColumn, Object whereValue) {
+        if(!isKey(whereColumn)) {
+            throw new UnsupportedOperationException("Sharded tables can only publish rows by primary key.");
+        }
+        return getShardFor(whereValue).publishRows(whereColumn, whereValue);
+    }
+
+    /**
+     * Streaming every row is only available from the table of a single shard.
+     * @throws UnsupportedOperationException Always.
+     */
+    @Override
+    public RowPublisher publishRows() {
+        throw new UnsupportedOperationException("Sharded tables can only publish rows by primary key.");
+    }
+
+    /**
+     * Writes to a sharded table are queued on the executors of the shards, so a mirror reload waits for every shard.
+     */
+    @Override
+    protected void awaitWrites() {
+        for(Table shard : shards) {
+            try {
+                shard.parent.getExecutor().barrier().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                // Barriers do no work of their own and cannot fail.
+            }
+        }
+    }
+
+    @Override
+    public void insert(String... values) {
+        getShardFor(values[getColumns().indexOf(getPrimaryKey())]).insert(values);
+        refreshMirror();
+    }
+
+    @Override
+    public void insertValues(Object... values) {
+        getShardFor(values[getColumns().indexOf(getPrimaryKey())]).insertValues(values);
+        refreshMirror();
+    }
+
+    @Override
+    public void updateRow(Row row) {
+        getShardFor(row.getColumn(getPrimaryKey().name).getData()).updateRow(row);
+        refreshMirror();
+    }
+
+    /**
+     * Updates the matching rows on every shard.
+     * @throws UnsupportedOperationException If <tt>column</tt> is the primary key, as the rows may have to move to another shard.
+     */
+    @Override
+    public void update(String column, Object oldValue, Object newValue) {
+        if(isKey(column)) {
+            throw new UnsupportedOperationException("The primary key of a sharded table cannot be updated.");
+        }
+        for(Table shard : shards) {
+            shard.update(column, oldValue, newValue);
+        }
+        refreshMirror();
+    }
+
+    @Override
+    public void deleteRow(Row row) {
+        Column key = row.getColumn(getPrimaryKey().name);
+        if(key != null) {
+            getShardFor(key.getData()).deleteRow(row);
+        } else {
+            for(Table shard : shards) {
+                shard.deleteRow(row);
+            }
+        }
+        refreshMirror();
+    }
+
+    @Override
+    public void delete(String column, Object value) {
+        if(isKey(column)) {
+            getShardFor(value).delete(column, value);
+        } else {
+            for(Table shard : shards) {
+                shard.delete(column, value);
+            }
+        }
+        refreshMirror();
+    }
+
+    @Override
+    public synchronized void bufferWrites(long flushMillis, int maxPending) {
+        bufferFlushMillis = Math.max(0, flushMillis);
+        bufferMaxPending = maxPending;
+        for(Table shard : shards) {
+            shard.bufferWrites(flushMillis, maxPending);
+        }
+    }
+
+    @Override
+    public synchronized void unbufferWrites() {
+        bufferFlushMillis = -1;
+        for(Table shard : shards) {
+            shard.unbufferWrites();
+        }
+    }
+
+    @Override
+    public boolean isWriteBuffered() { return shards[0].isWriteBuffered(); }
+
+    @Override
+    public void flushWrites() {
+        for(Table shard : shards) {
+            shard.flushWrites();
+        }
+    }
+}
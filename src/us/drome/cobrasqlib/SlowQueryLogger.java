@@ -0,0 +1,210 @@
+package us.drome.cobrasqlib;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A <tt>StatementListener</tt> that logs statements slower than a threshold, registered with <tt>SQLEngine.addStatementListener</tt>.
+ *
+ * Every slow statement is counted against its shape, the statement with its literals replaced by placeholders. At most one
+ * record per shape is logged every repeat interval, carrying the amount of slow statements of that shape that were not
+ * logged since. Records are single lines of <tt>key=value</tt> fields so they can be collected and aggregated by shape.
+ *
+ * The record of a sampled statement includes the plan the database chose for it, read with <tt>EXPLAIN</tt> on MySQL or
+ * <tt>EXPLAIN QUERY PLAN</tt> on SQLite. Plans are read as <tt>Priority.BACKGROUND</tt> work on the engine that ran
+ * the statement, so the statement itself is never held up, and the record is logged once the plan has been read.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class SlowQueryLogger implements StatementListener {
+    private final Logger out;
+    private final long thresholdNanos;
+    private volatile double explainSampleRate = 1;
+    private volatile long repeatIntervalNanos = TimeUnit.MINUTES.toNanos(1);
+    private final ConcurrentHashMap<String, ShapeStats> shapes = new ConcurrentHashMap<>();
+
+    /**
+     * Initializes a new <tt>SlowQueryLogger</tt>.
+     * @param out The logger to write records to, at <tt>Level.WARNING</tt>.
+     * @param thresholdMillis The duration in milliseconds above which a statement is slow.
+     */
+    public SlowQueryLogger(Logger out, long thresholdMillis) {
+        this.out = out;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    /**
+     * Sets the share of logged records that include the plan of their statement. Batched statements are never explained.
+     * @param rate The share between 0 for no plans and 1 for every record. Defaults to 1.
+     */
+    public void setExplainSampleRate(double rate) { this.explainSampleRate = Math.max(0, Math.min(1, rate)); }
+
+    /**
+     * Sets how often a record is logged for slow statements of the same shape.
+     * @param intervalMillis The least time in milliseconds between two records of the same shape, or 0 to log every slow statement. Defaults to one minute.
+     */
+    public void setRepeatInterval(long intervalMillis) { this.repeatIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, intervalMillis)); }
+
+    /**
+     * @return The statistics of every shape that had a slow statement, keyed by shape.
+     */
+    public Map<String, ShapeStats> getShapeStats() { return Collections.unmodifiableMap(shapes); }
+
+    @Override
+    public void beforeStatement(StatementEvent event) { }
+
+    @Override
+    public void afterStatement(final StatementEvent event) {
+        if(event.getDurationNanos() < thresholdNanos) {
+            return;
+        }
+        String shape = event.getShape();
+        ShapeStats stats = shapes.get(shape);
+        if(stats == null) {
+            stats = new ShapeStats();
+            ShapeStats existing = shapes.putIfAbsent(shape, stats);
+            if(existing != null) {
+                stats = existing;
+            }
+        }
+        final long suppressed = stats.add(event.getDurationNanos(), repeatIntervalNanos);
+        if(suppressed < 0) {
+            return;
+        }
+        if(event.getKind() == StatementEvent.Kind.BATCH || ThreadLocalRandom.current().nextDouble() >= explainSampleRate) {
+            write(event, suppressed, null);
+            return;
+        }
+        final SQLEngine engine = event.getEngine();
+        try {
+            engine.getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    write(event, suppressed, explain(engine, event));
+                }
+            }, Priority.BACKGROUND, null);
+        } catch (RejectedExecutionException e) {
+            write(event, suppressed, null);
+        }
+    }
+
+    /**
+     * Reads the plan of a statement on the connection of the engine that ran it. Must be run by the engine's query executor.
+     */
+    private static String explain(SQLEngine engine, StatementEvent event) {
+        Connection conn = engine.getConnection();
+        if(conn == null) {
+            return "unavailable: no connection";
+        }
+        StringBuilder plan = new StringBuilder();
+        try (PreparedStatement statement = engine.prepare(conn, engine.explainStatement(event.getSql()), event.getParamSets().get(0));
+                ResultSet result = statement.executeQuery()) {
+            int columns = result.getMetaData().getColumnCount();
+            while(result.next()) {
+                if(plan.length() > 0) {
+                    plan.append("; ");
+                }
+                for(int i = 1; i <= columns; i++) {
+                    plan.append(i > 1 ? " | " : "").append(result.getString(i));
+                }
+            }
+        } catch (SQLException e) {
+            return "unavailable: " + e.getMessage();
+        }
+        return plan.toString();
+    }
+
+    private void write(StatementEvent event, long suppressed, String plan) {
+        StringBuilder record = new StringBuilder("slow_statement");
+        record.append(" kind=").append(event.getKind());
+        record.append(" duration_ms=").append(String.format("%.3f", event.getDurationNanos() / 1e6));
+        record.append(" rows=").append(event.getRows());
+        record.append(" priority=").append(event.getPriority());
+        record.append(" suppressed=").append(suppressed);
+        field(record, "thread", event.getThread());
+        field(record, "shape", event.getShape());
+        if(event.getError() != null) {
+            field(record, "error", String.valueOf(event.getError().getMessage()));
+        }
+        if(plan != null) {
+            field(record, "plan", plan);
+        }
+        out.log(Level.WARNING, record.toString());
+    }
+
+    private static void field(StringBuilder record, String key, String value) {
+        record.append(' ').append(key).append("=\"");
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == '"' || c == '\\') {
+                record.append('\\').append(c);
+            } else if(c == '\n' || c == '\r') {
+                record.append(' ');
+            } else {
+                record.append(c);
+            }
+        }
+        record.append('"');
+    }
+
+    /**
+     * The slow statements of a single shape.
+     */
+    public static class ShapeStats {
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+        private long lastLogged;
+        private long suppressed;
+
+        /**
+         * Counts a slow statement.
+         * @return The amount of statements suppressed since the last record if this one should be logged, or -1 if it should not.
+         */
+        private synchronized long add(long durationNanos, long repeatIntervalNanos) {
+            count++;
+            totalNanos += durationNanos;
+            maxNanos = Math.max(maxNanos, durationNanos);
+            long now = System.nanoTime();
+            if(count > 1 && now - lastLogged < repeatIntervalNanos) {
+                suppressed++;
+                return -1;
+            }
+            lastLogged = now;
+            long skipped = suppressed;
+            suppressed = 0;
+            return skipped;
+        }
+
+        /**
+         * @return The amount of slow statements of this shape.
+         */
+        public synchronized long getCount() { return count; }
+
+        /**
+         * @return The combined duration of the slow statements of this shape, in nanoseconds.
+         */
+        public synchronized long getTotalNanos() { return totalNanos; }
+
+        /**
+         * @return The duration of the slowest statement of this shape, in nanoseconds.
+         */
+        public synchronized long getMaxNanos() { return maxNanos; }
+
+        @Override
+        public synchronized String toString() {
+            return "ShapeStats[count=" + count + ", totalNanos=" + totalNanos + ", maxNanos=" + maxNanos + "]";
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package us.drome.cobrasqlib;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Describes a statement executed by a <tt>SQLEngine</tt>, passed to every <tt>StatementListener</tt> before and after the
+ * statement runs. The timing, row count and failure are only set once the statement has finished.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class StatementEvent {
+    /**
+     * The kinds of statements executed by an engine.
+     */
+    public enum Kind {
+        /**
+         * A statement run with <tt>runQuery</tt>, or one of the asynchronous query methods built on it.
+         */
+        QUERY,
+        /**
+         * A statement run with <tt>runUpdate</tt>, or one of the asynchronous update methods built on it.
+         */
+        UPDATE,
+        /**
+         * A statement of a <tt>runBatchUpdate</tt> transaction, with one parameter set per batched execution.
+         */
+        BATCH;
+    }
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+    private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\?(?:\\s*,\\s*\\?)+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final SQLEngine engine;
+    private final Kind kind;
+    private final String sql;
+    private final List<Object[]> paramSets;
+    private final long startNanos = System.nanoTime();
+    private final String thread = Thread.currentThread().getName();
+    private final Priority priority = PriorityExecutor.currentPriority();
+    private String shape;
+    private long durationNanos = -1;
+    private int rows;
+    private Throwable error;
+
+    protected StatementEvent(SQLEngine engine, Kind kind, String sql, List<Object[]> paramSets) {
+        this.engine = engine;
+        this.kind = kind;
+        this.sql = sql;
+        this.paramSets = Collections.unmodifiableList(paramSets);
+    }
+
+    /**
+     * Marks the statement as finished.
+     * @param rows The amount of rows returned or affected.
+     * @param error The failure of the statement, or <tt>null</tt> if it succeeded.
+     */
+    protected void finish(int rows, Throwable error) {
+        this.durationNanos = System.nanoTime() - startNanos;
+        this.rows = rows;
+        this.error = error;
+    }
+
+    /**
+     * @return The engine that executed the statement.
+     */
+    public SQLEngine getEngine() { return engine; }
+
+    public Kind getKind() { return kind; }
+
+    public String getSql() { return sql; }
+
+    /**
+     * Returns the statement with every literal replaced by a placeholder, lists of placeholders collapsed into one and
+     * whitespace normalized, so statements that only differ in their values share a shape and can be aggregated.
+     * @return The shape of the statement.
+     */
+    public synchronized String getShape() {
+        if(shape == null) {
+            String normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+            normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+            normalized = PLACEHOLDER_LIST.matcher(normalized).replaceAll("?");
+            shape = WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+        }
+        return shape;
+    }
+
+    /**
+     * @return The parameters of every execution of the statement. Queries and updates have a single set.
+     */
+    public List<Object[]> getParamSets() { return paramSets; }
+
+    /**
+     * @return The <tt>System.nanoTime</tt> at which the statement started.
+     */
+    public long getStartNanos() { return startNanos; }
+
+    /**
+     * @return How long the statement took in nanoseconds, or -1 if it has not finished.
+     */
+    public long getDurationNanos() { return durationNanos; }
+
+    /**
+     * @return The amount of rows returned by a query or affected by an update, once the statement has finished.
+     */
+    public int getRows() { return rows; }
+
+    /**
+     * @return The failure of the statement, or <tt>null</tt> if it succeeded or has not finished.
+     */
+    public Throwable getError() { return error; }
+
+    /**
+     * @return The name of the thread that ran the statement.
+     */
+    public String getThread() { return thread; }
+
+    /**
+     * @return The priority of the operation that ran the statement, or <tt>Priority.NORMAL</tt> if it ran synchronously.
+     */
+    public Priority getPriority() { return priority; }
+
+    @Override
+    public String toString() {
+        return "StatementEvent[kind=" + kind + ", sql=" + sql + ", durationNanos=" + durationNanos + (error == null ? "" : ", error=" + error.getMessage()) + "]";
+    }
+}
@@ -0,0 +1,26 @@
+package us.drome.cobrasqlib;
+
+/**
+ * Interface for observing the statements executed by a <tt>SQLEngine</tt>, registered with <tt>addStatementListener</tt>.
+ *
+ * Listeners are called on the thread that runs the statement, usually the engine's query executor, so they must return
+ * quickly and hand any slow work off to another thread. Exceptions thrown by a listener are logged and do not affect
+ * the statement. When no listener is registered, statements are executed without creating events.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public interface StatementListener {
+    /**
+     * Called before a statement is executed.
+     * @param event The statement about to be executed.
+     */
+    void beforeStatement(StatementEvent event);
+
+    /**
+     * Called after a statement has finished, whether it succeeded or failed. The event is the same instance passed to
+     * <tt>beforeStatement</tt>, now holding the timing, row count and failure of the statement.
+     * @param event The finished statement.
+     */
+    void afterStatement(StatementEvent event);
+}
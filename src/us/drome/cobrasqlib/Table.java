@@ -1,10 +1,21 @@
 package us.drome.cobrasqlib;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 /**
@@ -14,9 +25,21 @@ import java.util.logging.Level;
  * @since 0.1
  */
 public abstract class Table {
+    /**
+     * The amount of flushes a buffered update may fail before it is given up.
+     */
+    public static final int MAX_FLUSH_ATTEMPTS = 3;
     protected final SQLEngine parent;
     protected String name;
-    protected final ArrayList<ColumnDef> columns;
+    protected volatile List<ColumnDef> columns;
+    private volatile List<IndexDef> indexes = new ArrayList<>();
+    private volatile TableMirror mirror;
+    private volatile String[] mirrorIndexes;
+    private ScheduledFuture<?> mirrorRefresh;
+    private final AtomicLong mirrorTicket = new AtomicLong();
+    private volatile WriteBuffer writeBuffer;
+    private int writeBufferLimit;
+    private ScheduledFuture<?> writeFlush;
     
     /**
      * Construct a new <tt>Table</tt> object.
@@ -27,7 +50,7 @@ public abstract class Table {
     protected Table(SQLEngine parent, String name, ColumnDef... columns) {
         this.parent = parent;
         this.name = name;
-        this.columns = (ArrayList<ColumnDef>) Arrays.asList(columns);
+        this.columns = new ArrayList<>(Arrays.asList(columns));
     }
     
     /**
@@ -41,11 +64,38 @@ public abstract class Table {
      */
     protected void rename(String newName) { name = newName; }
     
+    /**
+     * Replaces the column definitions of this <tt>Table</tt> instance after the table was changed in the database.
+     * Columns that were compressed stay compressed, as compression cannot be read from the database.
+     * @param columns The new column definitions.
+     */
+    protected void redefine(ColumnDef... columns) {
+        for(ColumnDef def : columns) {
+            ColumnDef old = getColumn(def.name);
+            if(old != null && old.isCompressed) {
+                def.isCompressed = true;
+            }
+        }
+        this.columns = new ArrayList<>(Arrays.asList(columns));
+    }
+    
     /**
      * @return The <tt>Set</tt> of <tt>ColumnDef</tt> objects that define the <tt>Table</tt>'s columns. 
      */
     public List<ColumnDef> getColumns() { return columns; }
     
+    /**
+     * @return true if any column of the <tt>Table</tt> is compressed.
+     */
+    protected boolean hasCompressedColumns() {
+        for(ColumnDef def : columns) {
+            if(def.isCompressed) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     /**
      * Get the definition for the specified column.
      * @param name The name of the column to return
@@ -73,6 +123,66 @@ public abstract class Table {
         return null;
     }
     
+    /**
+     * Replaces the index definitions of this <tt>Table</tt> instance with those read from the database.
+     * @param indexes The new index definitions.
+     */
+    protected void defineIndexes(IndexDef... indexes) { this.indexes = new ArrayList<>(Arrays.asList(indexes)); }
+    
+    /**
+     * @return The secondary indexes of this <tt>Table</tt> as they were last read from the database, including those
+     * created or dropped through this instance since.
+     */
+    public List<IndexDef> getIndexes() { return Collections.unmodifiableList(indexes); }
+    
+    /**
+     * Creates a secondary index on this <tt>Table</tt>. Lookups on the leading columns of an index no longer scan the table.
+     * @param index The definition of the index.
+     * @throws UnsupportedOperationException If the index is partial and the database does not support partial indexes.
+     */
+    public void createIndex(IndexDef index) {
+        String statement = parent.createIndexStatement(name, index);
+        parent.runAsyncUpdate(statement);
+        List<IndexDef> updated = new ArrayList<>(indexes);
+        removeIndex(updated, index.name);
+        updated.add(index);
+        indexes = updated;
+    }
+    
+    /**
+     * Drops a secondary index from this <tt>Table</tt>.
+     * @param indexName The name of the index to drop.
+     */
+    public void dropIndex(String indexName) {
+        parent.runAsyncUpdate(parent.dropIndexStatement(name, indexName));
+        List<IndexDef> updated = new ArrayList<>(indexes);
+        removeIndex(updated, indexName);
+        indexes = updated;
+    }
+    
+    private static void removeIndex(List<IndexDef> indexes, String indexName) {
+        Iterator<IndexDef> iterator = indexes.iterator();
+        while(iterator.hasNext()) {
+            if(iterator.next().name.equalsIgnoreCase(indexName)) {
+                iterator.remove();
+            }
+        }
+    }
+    
+    /**
+     * Reads the secondary indexes of this <tt>Table</tt> from the database metadata. Indexes created with <tt>createIndex</tt>
+     * are only listed once their statement has run.
+     * @return The index definitions, or those last known if the metadata could not be read.
+     */
+    public List<IndexDef> listIndexes() {
+        try {
+            defineIndexes(IndexDef.generateDefs(name, parent.getConnection().getMetaData()));
+        } catch (SQLException e) {
+            parent.logger.log(Level.SEVERE, e.getMessage());
+        }
+        return getIndexes();
+    }
+    
     /**
      * Runs a query against this <tt>Table</tt> that returns all <tt>Row</tt>s that match the specified column and value.
      * 
@@ -80,27 +190,25 @@ public abstract class Table {
      * @param whereColumn The name of the column to search.
      * @param whereValue The Object to search for.
      * @param callback Method to run on query completion. Must accept a <tt>List&lt;Row&gt;</tt> as a parameter.
+     * @return A <tt>QueryHandle</tt> that can be used to cancel the query.
      */
-    public void getRows(String[] selectColumns, final String whereColumn, final Object whereValue, final Callback callback) {
-        final String name = this.name;
+    public QueryHandle getRows(String[] selectColumns, final String whereColumn, final Object whereValue, final Callback callback) {
+        TableMirror current = mirror;
+        if(current != null && selectColumns.length == 1 && selectColumns[0].equals("*")) {
+            parent.deliver(overlayWrites(callback), current.getRows(whereColumn, whereValue));
+            return QueryHandle.completed();
+        }
         String select = "";
         for(int i=0; i<selectColumns.length; i++) {
             select += selectColumns[i];
             if(i < selectColumns.length-1)
                 select += ",";
         }
-        final String selectString = select;
-        parent.getExecutor().execute(new Runnable() {
-            @Override
-            public void run() {
-                List<Row> result = parent.runQuery("SELECT " + selectString + " FROM " + name + " WHERE " + whereColumn + " = '" + whereValue.toString() + "'");
-                try {
-                    callback.invoke(result);
-                } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
-                    parent.logger.log(Level.SEVERE, ex.getMessage());
-                }
-            }
-        });
+        String query = "SELECT " + select + " FROM " + name + " WHERE " + whereColumn + " = ?";
+        if(getPrimaryKey() != null && getPrimaryKey().name.equalsIgnoreCase(whereColumn)) {
+            return parent.runKeyedQuery(rowKey(whereValue), query, parent.getDefaultTimeout(), overlayWrites(callback), whereValue);
+        }
+        return parent.runAsyncQuery(query, overlayWrites(callback), whereValue);
     }
     
     /**
@@ -109,9 +217,10 @@ public abstract class Table {
      * @param column The name of the column to search.
      * @param value The Object to search for.
      * @param callback Method to run on query completion. Must accept a <tt>List&lt;Row&gt;</tt> as a parameter.
+     * @return A <tt>QueryHandle</tt> that can be used to cancel the query.
      */
-    public void getRows(final String column, final Object value, final Callback callback) {
-        getRows(new String[] {"*"}, column, value, callback);
+    public QueryHandle getRows(final String column, final Object value, final Callback callback) {
+        return getRows(new String[] {"*"}, column, value, callback);
     }
     
     /**
@@ -120,9 +229,24 @@ public abstract class Table {
      * 
      * @param match The name of the column to search.
      * @param callback Method to run on query completion. Must accept a <tt>List&lt;Row&gt;</tt> as a parameter.
+     * @return A <tt>QueryHandle</tt> that can be used to cancel the query.
+     */
+    public QueryHandle getRows(final Object match, final Callback callback) {
+        return getRows(this.getPrimaryKey().name, match, callback);
+    }
+    
+    /**
+     * Runs a query against this <tt>Table</tt> that returns all <tt>Row</tt>s that match the specified column and value,
+     * answering from the engine's query cache when possible. Behaves like <tt>getRows</tt> when the cache is not enabled.
+     * 
+     * @param column The name of the column to search.
+     * @param value The Object to search for.
+     * @param ttlMillis How long the result may be served from the cache, in milliseconds.
+     * @param callback Method to run on query completion. Must accept a <tt>List&lt;Row&gt;</tt> as a parameter.
+     * @return A <tt>QueryHandle</tt> that can be used to cancel delivery of the result.
      */
-    public void getRows(final Object match, final Callback callback) {
-        getRows(this.getPrimaryKey().name, match, callback);
+    public QueryHandle getCachedRows(String column, Object value, long ttlMillis, Callback callback) {
+        return parent.runCachedQuery("SELECT * FROM " + name + " WHERE " + column + " = ?", ttlMillis, overlayWrites(callback), value);
     }
     
     /**
@@ -132,31 +256,249 @@ public abstract class Table {
      * @param whereColumn The name of the column to search.
      * @param whereValue The Object to search for.
      * @param callback Method to run on query completion. Must accept a <tt>List&lt;Column&gt;</tt> as a parameter.
+     * @return A <tt>QueryHandle</tt> that can be used to cancel the query.
+     */
+    public QueryHandle getValues(final String selectColumn, final String whereColumn, final Object whereValue, final Callback callback) {
+        TableMirror current = mirror;
+        if(current != null) {
+            parent.deliver(overlayWrites(selectValues(selectColumn, callback)), current.getRows(whereColumn, whereValue));
+            return QueryHandle.completed();
+        }
+        // The primary key is selected as well so buffered values can be applied to the result.
+        ColumnDef key = getPrimaryKey();
+        String[] select = key == null || key.name.equalsIgnoreCase(selectColumn) ? new String[] {selectColumn} : new String[] {selectColumn, key.name};
+        return getRows(select, whereColumn, whereValue, selectValues(selectColumn, callback));
+    }
+    
+    /**
+     * Starts iterating over every <tt>Row</tt> of this <tt>Table</tt> one page at a time, in primary key order.
+     * 
+     * @param pageSize The largest amount of rows per page.
+     * @param afterKey The primary key to start after, such as the last key of an interrupted iteration, or <tt>null</tt> to start at the first row.
+     * @return An iterator over the pages that must be closed if it is not read to the end.
+     * @throws IllegalStateException If the <tt>Table</tt> has no primary key.
      */
-    public void getValues(final String selectColumn, final String whereColumn, final Object whereValue, final Callback callback) {
-        final String name = this.name;
-        parent.getExecutor().execute(new Runnable() {
+    public TablePages pages(int pageSize, Object afterKey) {
+        return new TablePages(this, pageSize, afterKey);
+    }
+    
+    /**
+     * Passes every <tt>Row</tt> of this <tt>Table</tt> to a consumer one page at a time, in primary key order, on the
+     * calling thread.
+     * 
+     * @param pageSize The largest amount of rows per page.
+     * @param consumer The consumer of the pages.
+     * @return The amount of rows processed.
+     * @throws SQLException If a page cannot be read or the consumer failed.
+     */
+    public long forEachPage(int pageSize, PageConsumer consumer) throws SQLException {
+        return forEachPage(pageSize, 1, null, consumer);
+    }
+    
+    /**
+     * Passes every <tt>Row</tt> of this <tt>Table</tt> to a consumer one page at a time, checkpointing progress so an
+     * interrupted job resumes where it stopped. Pages are read in primary key order on the calling thread and processed
+     * by up to <tt>workers</tt> threads, so at most one page per worker and the page being read are held in memory.
+     * 
+     * The checkpoint holds the last key of the longest run of completed pages from the start, so after a crash pages
+     * that completed out of order may be processed again but none are skipped. It is deleted once every page completed.
+     * 
+     * @param pageSize The largest amount of rows per page.
+     * @param workers The amount of threads processing pages, or 1 to process them on the calling thread.
+     * @param checkpoint The file to resume from and checkpoint to, or <tt>null</tt> to not checkpoint.
+     * @param consumer The consumer of the pages, called concurrently if there are several workers.
+     * @return The amount of rows processed.
+     * @throws SQLException If a page cannot be read, the checkpoint cannot be written or the consumer failed.
+     */
+    public long forEachPage(int pageSize, int workers, File checkpoint, PageConsumer consumer) throws SQLException {
+        return TablePages.forEach(this, pageSize, workers, checkpoint, consumer);
+    }
+    
+    /**
+     * Counts the <tt>Row</tt>s of this <tt>Table</tt> that match a predicate, without reading them.
+     * 
+     * @param where The predicate, or <tt>null</tt> to count every row.
+     * @return The amount of matching rows.
+     * @throws SQLException
+     */
+    public long count(Where where) throws SQLException {
+        return (long) aggregate(Aggregate.COUNT, null, where);
+    }
+    
+    /**
+     * Counts the <tt>Row</tt>s of this <tt>Table</tt> that match a predicate asynchronously.
+     * 
+     * @param where The predicate, or <tt>null</tt> to count every row.
+     * @param callback Method to run on completion. Must accept a <tt>Long</tt> as a parameter.
+     * @return A <tt>QueryHandle</tt> that can be used to cancel the count.
+     */
+    public QueryHandle count(final Where where, Callback callback) {
+        return parent.queue(parent.getDefaultTimeout(), callback, new Callable<Object>() {
             @Override
-            public void run() {
-                List<Row> result = parent.runQuery("SELECT " + selectColumn + " FROM " + name + " WHERE " + whereColumn + " = '" + whereValue.toString() + "'");
-                List<Column> finalResult = new ArrayList<>();
-                for(Row row : result) {
-                    finalResult.add(row.getColumn(name));
-                }
-                try {
-                    callback.invoke(finalResult);
-                } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
-                    parent.logger.log(Level.SEVERE, ex.getMessage());
-                }
+            public Object call() throws SQLException {
+                return count(where);
+            }
+        });
+    }
+    
+    /**
+     * @param column The numeric column to total.
+     * @param where The predicate, or <tt>null</tt> for every row.
+     * @return The total of the column over the matching rows, or <tt>NaN</tt> if no row has a value.
+     * @throws SQLException
+     */
+    public double sum(String column, Where where) throws SQLException { return aggregate(Aggregate.SUM, column, where); }
+    
+    /**
+     * @param column The numeric column to average.
+     * @param where The predicate, or <tt>null</tt> for every row.
+     * @return The average of the column over the matching rows, or <tt>NaN</tt> if no row has a value.
+     * @throws SQLException
+     */
+    public double avg(String column, Where where) throws SQLException { return aggregate(Aggregate.AVG, column, where); }
+    
+    /**
+     * @param column The numeric column.
+     * @param where The predicate, or <tt>null</tt> for every row.
+     * @return The smallest value of the column over the matching rows, or <tt>NaN</tt> if no row has a value.
+     * @throws SQLException
+     */
+    public double min(String column, Where where) throws SQLException { return aggregate(Aggregate.MIN, column, where); }
+    
+    /**
+     * @param column The numeric column.
+     * @param where The predicate, or <tt>null</tt> for every row.
+     * @return The largest value of the column over the matching rows, or <tt>NaN</tt> if no row has a value.
+     * @throws SQLException
+     */
+    public double max(String column, Where where) throws SQLException { return aggregate(Aggregate.MAX, column, where); }
+    
+    /**
+     * Computes an aggregate of a column over the <tt>Row</tt>s of this <tt>Table</tt> that match a predicate asynchronously.
+     * 
+     * @param function The aggregate function.
+     * @param column The numeric column to aggregate, or <tt>null</tt> to count rows.
+     * @param where The predicate, or <tt>null</tt> for every row.
+     * @param callback Method to run on completion. Must accept a <tt>Double</tt> as a parameter, which is <tt>NaN</tt> if no row has a value.
+     * @return A <tt>QueryHandle</tt> that can be used to cancel the aggregation.
+     */
+    public QueryHandle aggregate(final Aggregate function, final String column, final Where where, Callback callback) {
+        return parent.queue(parent.getDefaultTimeout(), callback, new Callable<Object>() {
+            @Override
+            public Object call() throws SQLException {
+                return aggregate(function, column, where);
+            }
+        });
+    }
+    
+    private double aggregate(Aggregate function, String column, Where where) throws SQLException {
+        GroupedResult result = aggregate(new String[0], new Aggregate[] {function}, new String[] {column}, where);
+        return result.getGroupCount() == 0 ? Double.NaN : result.getValue(0, 0);
+    }
+    
+    /**
+     * Starts an aggregation of the <tt>Row</tt>s of this <tt>Table</tt> per group of key column values.
+     * 
+     * @param columns The columns to group by.
+     * @return A <tt>GroupBy</tt> to add the aggregates to and run.
+     */
+    public GroupBy groupBy(String... columns) {
+        return new GroupBy(this, columns);
+    }
+    
+    /**
+     * Computes aggregates of this <tt>Table</tt> per group of key column values in the database. The aggregation is queued
+     * on the query executor, in order with the operations queued before it, and the calling thread waits for it.
+     * 
+     * @param keyColumns The columns to group by, or none to aggregate the matching rows as a single group.
+     * @param functions The aggregate functions.
+     * @param columns The column of each function, or <tt>null</tt> to count rows.
+     * @param where The predicate on the rows to aggregate, or <tt>null</tt> for every row.
+     * @return The groups and their aggregates.
+     * @throws SQLException
+     */
+    protected GroupedResult aggregate(final String[] keyColumns, Aggregate[] functions, String[] columns, final Where where) throws SQLException {
+        final String[] labels = new String[functions.length];
+        for(int i = 0; i < functions.length; i++) {
+            labels[i] = functions[i].label(columns[i]);
+        }
+        final String statement = parent.aggregateStatement(name, keyColumns, functions, columns, where);
+        return parent.onExecutor(PriorityExecutor.currentPriority(), parent.getDefaultTimeout(), new Callable<GroupedResult>() {
+            @Override
+            public GroupedResult call() throws SQLException {
+                return parent.queryGroups(statement, where == null ? new Object[0] : where.getParams(), keyColumns, labels);
             }
         });
     }
     
+    /**
+     * Streams all <tt>Row</tt>s that match the specified column and value to subscribers as they request them,
+     * without holding the full result in memory.
+     *
+     * @param whereColumn The name of the column to search.
+     * @param whereValue The Object to search for.
+     * @return A <tt>RowPublisher</tt> for the matching rows.
+     */
+    public RowPublisher publishRows(String whereColumn, Object whereValue) {
+        return parent.publish("SELECT * FROM " + name + " WHERE " + whereColumn + " = ?", whereValue);
+    }
+
+    /**
+     * Streams every <tt>Row</tt> in this <tt>Table</tt> to subscribers as they request them,
+     * without holding the full result in memory.
+     *
+     * @return A <tt>RowPublisher</tt> for all rows of this <tt>Table</tt>.
+     */
+    public RowPublisher publishRows() {
+        return parent.publish("SELECT * FROM " + name);
+    }
+
+    /**
+     * Writes every <tt>Row</tt> of this <tt>Table</tt> to a binary dump file with deflated blocks. Rows are streamed
+     * from the database on a dedicated connection, so the table is never held in memory.
+     *
+     * @param path The file to write to. Any previous contents are replaced.
+     * @return The amount of rows written.
+     * @throws IOException If the file cannot be written or the table cannot be read.
+     */
+    public long exportTo(Path path) throws IOException {
+        return exportTo(path, true);
+    }
+
+    /**
+     * Writes every <tt>Row</tt> of this <tt>Table</tt> to a binary dump file. Rows are streamed from the database
+     * on a dedicated connection, so the table is never held in memory.
+     *
+     * @param path The file to write to. Any previous contents are replaced.
+     * @param compress Whether to deflate the blocks of the dump.
+     * @return The amount of rows written.
+     * @throws IOException If the file cannot be written or the table cannot be read.
+     */
+    public long exportTo(Path path, boolean compress) throws IOException {
+        return TableDump.export(this, path, compress);
+    }
+
+    /**
+     * Inserts every <tt>Row</tt> of a dump file written by <tt>exportTo</tt> into this <tt>Table</tt>. Rows are inserted
+     * on a dedicated connection in batches, with one transaction per block of the dump.
+     *
+     * @param path The file to read from.
+     * @return The amount of rows inserted.
+     * @throws IOException If the file cannot be read or the rows cannot be inserted.
+     */
+    public long importFrom(Path path) throws IOException {
+        return TableDump.importInto(this, path);
+    }
+
     /**
      * Insert the specified values as a new row into the <tt>Table</tt>.
      * @param values The column values, in order, to insert into the <tt>Table</tt>.
      */
     public void insert(String... values) {
+        if(hasCompressedColumns()) {
+            insertValues((Object[]) values);
+            return;
+        }
         String columnString = "(";
         String valueString = "(";
         int count = 0;
@@ -179,7 +521,102 @@ public abstract class Table {
                 valueString += ")";
             }
         }
-        parent.runAsyncUpdate("INSERT INTO " + name + " " + columnString + " VALUES " + valueString);
+        ColumnDef key = getPrimaryKey();
+        if(key != null && !key.isAutoincrement) {
+            submitKeyedUpdate(values[columns.indexOf(key)], insertChange(values), "INSERT INTO " + name + " " + columnString + " VALUES " + valueString);
+        } else {
+            submitUpdate(insertChange(values), "INSERT INTO " + name + " " + columnString + " VALUES " + valueString);
+        }
+    }
+    
+    /**
+     * Inserts the specified values as a new row into the <tt>Table</tt> as statement parameters. Unlike <tt>insert</tt>,
+     * values keep their type, and large values can be passed as an <tt>InputStream</tt> or <tt>Reader</tt> to be written
+     * without loading them whole.
+     * @param values The column values, in order, to insert into the <tt>Table</tt>, leaving out an auto-incremented primary key.
+     */
+    public void insertValues(Object... values) {
+        String insert = insertStatement();
+        Object[] params = storedRow(values);
+        ColumnDef key = getPrimaryKey();
+        if(key != null && !key.isAutoincrement) {
+            submitKeyedUpdate(values[columns.indexOf(key)], insertChange(values), insert, params);
+        } else {
+            submitUpdate(insertChange(values), insert, params);
+        }
+    }
+    
+    /**
+     * Inserts the specified values as a new row into the <tt>Table</tt> and delivers the primary key the database generated
+     * for it, saving a query to find the new row.
+     * @param callback The callback to pass a <tt>List&lt;Long&gt;</tt> holding the generated key to, or <tt>null</tt> if there is none.
+     * @param values The column values, in order, to insert into the <tt>Table</tt>, leaving out the auto-incremented primary key.
+     * @return A <tt>QueryHandle</tt> that can be used to cancel the insert.
+     * @throws IllegalStateException If the primary key of the <tt>Table</tt> is not auto-incremented.
+     */
+    public QueryHandle insertWithKey(Callback callback, Object... values) {
+        return insertBatch(Collections.singletonList(values), callback);
+    }
+    
+    /**
+     * Inserts the specified rows into the <tt>Table</tt> in a single transaction and delivers the primary keys the database
+     * generated for them.
+     * @param rows The column values of every row, in order, leaving out the auto-incremented primary key.
+     * @param callback The callback to pass a <tt>List&lt;Long&gt;</tt> of the generated keys to, one per row and in the
+     * order of <tt>rows</tt>, or <tt>null</tt> if there is none.
+     * @return A <tt>QueryHandle</tt> that can be used to cancel the insert.
+     * @throws IllegalStateException If the primary key of the <tt>Table</tt> is not auto-incremented.
+     */
+    public QueryHandle insertBatch(List<Object[]> rows, Callback callback) {
+        ColumnDef key = getPrimaryKey();
+        if(key == null || !key.isAutoincrement) {
+            throw new IllegalStateException(name + " has no auto-incremented primary key to return.");
+        }
+        List<Object[]> params = new ArrayList<>(rows.size());
+        List<ChangeEvent> changes = parent.tracksChanges() ? new ArrayList<ChangeEvent>(rows.size()) : null;
+        for(Object[] values : rows) {
+            params.add(storedRow(values));
+            if(changes != null) {
+                changes.add(insertChange(values));
+            }
+        }
+        QueryHandle handle = parent.runTrackedInsert(insertStatement(), params, changes, callback);
+        refreshMirror();
+        return handle;
+    }
+    
+    /**
+     * @return A parameterized insert of every column, leaving out an auto-incremented primary key.
+     */
+    private String insertStatement() {
+        String columnString = "";
+        String valueString = "";
+        for(ColumnDef def : columns) {
+            if(def.isPrimary && def.isAutoincrement) {
+                continue;
+            }
+            columnString += (columnString.isEmpty() ? "" : ",") + def.name;
+            valueString += (valueString.isEmpty() ? "?" : ",?");
+        }
+        return "INSERT INTO " + name + " (" + columnString + ") VALUES (" + valueString + ")";
+    }
+    
+    /**
+     * @return The values of a row as they are stored, with the values of compressed columns compressed.
+     */
+    private Object[] storedRow(Object[] values) {
+        if(!hasCompressedColumns()) {
+            return values;
+        }
+        Object[] params = values.clone();
+        int i = 0;
+        for(ColumnDef def : columns) {
+            if(!def.isPrimary || !def.isAutoincrement) {
+                params[i] = parent.storedValue(def, params[i]);
+                i++;
+            }
+        }
+        return params;
     }
     
     /**
@@ -189,29 +626,62 @@ public abstract class Table {
      */
     public void updateRow(Row row) {
         String pKey = this.getPrimaryKey().name;
-        String setString = "SET";
-        Iterator<Column> colIt = row.Iterator();
-        while(colIt.hasNext()) {
-            Column next = colIt.next();
-            if(!colIt.next().isPrimaryKey()) {
-                setString += " " + next.getName() + "='" + next.getData().toString() + "'";
-                if(colIt.hasNext()) {
-                    setString +=",";
+        Object key = row.getColumn(pKey).getData();
+        WriteBuffer buffer = writeBuffer;
+        if(buffer != null) {
+            Map<String, Object> values = new LinkedHashMap<>();
+            for(Column column : row.toArray()) {
+                if(!column.isPrimaryKey() && column.isLoaded()) {
+                    values.put(column.getName(), column.getData());
+                }
+            }
+            if(buffer.merge(key, values) >= writeBufferLimit) {
+                flushWrites();
+            }
+            return;
+        }
+        
+        String setString = "";
+        List<Object> params = new ArrayList<>();
+        for(Column column : row.toArray()) {
+            if(!column.isPrimaryKey() && column.isLoaded()) {
+                setString += (params.isEmpty() ? "" : ",") + column.getName() + " = ?";
+                params.add(parent.storedValue(getColumn(column.getName()), column.getData()));
+            }
+        }
+        params.add(key);
+        ChangeEvent change = null;
+        if(parent.tracksChanges()) {
+            Map<String, Object> values = new LinkedHashMap<>();
+            for(Column column : row.toArray()) {
+                if(!column.isPrimaryKey() && column.isLoaded()) {
+                    values.put(column.getName(), column.getData());
                 }
             }
+            change = change(ChangeEvent.Kind.UPDATE, key, values);
         }
-        parent.runAsyncUpdate("UPDATE " + name + setString + " WHERE " + pKey + " ='" + row.getColumn(pKey).getData().toString() + "'");
+        submitKeyedUpdate(key, change, "UPDATE " + name + " SET " + setString + " WHERE " + pKey + " = ?", params.toArray());
     }
     
     /**
      * Update a specific column in the <tt>Table</tt> to a new value where the column's value matches the provided value.
+     * Its change is published with the primary key of the row only when <tt>column</tt> is the primary key.
      * 
      * @param column The name of the column to update.
-     * @param oldValue The Object to search for.
+     * @param oldValue The Object to search for, or <tt>null</tt> to match NULL.
      * @param newValue The Object to replace the old value with.
      */
     public void update(String column, Object oldValue, Object newValue) {
-        parent.runAsyncUpdate("UPDATE " + name + " SET " + column + "='" + newValue.toString() + "' WHERE " + column + "='" + oldValue.toString());
+        String update = "UPDATE " + name + " SET " + column + " = ? WHERE " + column + (oldValue == null ? " IS NULL" : " = ?");
+        ColumnDef def = getColumn(column);
+        Object stored = def == null ? newValue : parent.storedValue(def, newValue);
+        Object[] params = oldValue == null ? new Object[] {stored} : new Object[] {stored, oldValue};
+        Map<String, Object> values = Collections.singletonMap(column, newValue);
+        if(getPrimaryKey() != null && getPrimaryKey().name.equalsIgnoreCase(column)) {
+            submitKeyedUpdate(oldValue, change(ChangeEvent.Kind.UPDATE, oldValue, values), update, params);
+        } else {
+            submitUpdate(change(ChangeEvent.Kind.UPDATE, null, values), update, params);
+        }
     }
     
     /**
@@ -220,16 +690,24 @@ public abstract class Table {
      * @param row The <tt>Row</tt> to delete.
      */
     public void deleteRow(Row row) {
-        String whereString = "WHERE";
+        String whereString = "";
+        List<Object> params = new ArrayList<>();
         Iterator<Column> colIt = row.Iterator();
         while(colIt.hasNext()) {
             Column next = colIt.next();
-            whereString += " " + next.getName() + " ='" + next.getData().toString() + "'";
-            if(colIt.hasNext()) {
-                whereString += ",";
+            ColumnDef def = getColumn(next.getName());
+            if(!next.isLoaded() || (def != null && def.isCompressed)) {
+                continue;
             }
+            whereString += (params.isEmpty() ? " WHERE " : " AND ") + next.getName() + " = ?";
+            params.add(next.getData());
+        }
+        Column key = getPrimaryKey() == null ? null : row.getColumn(getPrimaryKey().name);
+        if(key != null) {
+            submitKeyedUpdate(key.getData(), change(ChangeEvent.Kind.DELETE, key.getData(), null), "DELETE FROM " + name + whereString, params.toArray());
+        } else {
+            submitUpdate(change(ChangeEvent.Kind.DELETE, null, null), "DELETE FROM " + name + whereString, params.toArray());
         }
-        parent.runAsyncUpdate("DELETE FROM " + name + whereString);
     }
     
     /**
@@ -239,6 +717,361 @@ public abstract class Table {
      * @param value The Object to search for.
      */
     public void delete(String column, Object value) {
-        parent.runAsyncUpdate("DELETE FROM " + name + " WHERE " + column + "='" + value.toString() + "'");
+        String delete = "DELETE FROM " + name + " WHERE " + column + (value == null ? " IS NULL" : " = ?");
+        Object[] params = value == null ? new Object[0] : new Object[] {value};
+        if(getPrimaryKey() != null && getPrimaryKey().name.equalsIgnoreCase(column)) {
+            submitKeyedUpdate(value, change(ChangeEvent.Kind.DELETE, value, null), delete, params);
+            return;
+        }
+        submitUpdate(change(ChangeEvent.Kind.DELETE, null, null), delete, params);
+    }
+    
+    /**
+     * Keeps a complete in-memory copy of this <tt>Table</tt> so <tt>getRows</tt> and <tt>getValues</tt> are answered
+     * synchronously from memory on the calling thread instead of querying the database. Intended for small tables
+     * that are read far more often than they are written.
+     * 
+     * The copy is reloaded after every write made through this <tt>Table</tt> and, optionally, on a fixed interval to pick
+     * up changes made elsewhere. <tt>Row</tt>s returned from the mirror are shared and must not be modified.
+     * 
+     * @param refreshMillis The interval between periodic reloads in milliseconds, or 0 to only reload after writes.
+     * @param indexColumns The columns to build hash indexes for in addition to the primary key.
+     */
+    public synchronized void mirror(long refreshMillis, String... indexColumns) {
+        List<String> indexes = new ArrayList<>(Arrays.asList(indexColumns));
+        if(getPrimaryKey() != null) {
+            indexes.add(getPrimaryKey().name);
+        }
+        mirrorIndexes = indexes.toArray(new String[indexes.size()]);
+        if(mirrorRefresh != null) {
+            mirrorRefresh.cancel(false);
+            mirrorRefresh = null;
+        }
+        if(refreshMillis > 0) {
+            mirrorRefresh = parent.getScheduler().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    refreshMirror();
+                }
+            }, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+        }
+        refreshMirror();
+    }
+    
+    /**
+     * Stops mirroring this <tt>Table</tt> and releases the in-memory copy. Reads go to the database again.
+     */
+    public synchronized void unmirror() {
+        if(mirrorRefresh != null) {
+            mirrorRefresh.cancel(false);
+            mirrorRefresh = null;
+        }
+        mirrorIndexes = null;
+        mirror = null;
+    }
+    
+    /**
+     * @return true if this <tt>Table</tt> is mirrored in memory.
+     */
+    public boolean isMirrored() { return mirrorIndexes != null; }
+    
+    /**
+     * Queues a reload of the in-memory copy of this <tt>Table</tt> once all work already queued on the database has
+     * finished, whatever its priority. Reloads queued in quick succession are combined so only the last one queries the database.
+     */
+    public void refreshMirror() {
+        if(mirrorIndexes == null) {
+            return;
+        }
+        final long ticket = mirrorTicket.incrementAndGet();
+        parent.getExecutor().executeAfter(new Runnable() {
+            @Override
+            public void run() {
+                String[] indexes = mirrorIndexes;
+                if(indexes == null || ticket != mirrorTicket.get()) {
+                    return;
+                }
+                awaitWrites();
+                TableMirror loaded = new TableMirror(parent.runQuery("SELECT * FROM " + name), indexes);
+                if(mirrorIndexes != null) {
+                    mirror = loaded;
+                }
+            }
+        }, Priority.BULK);
+    }
+    
+    /**
+     * Waits for the writes queued on this <tt>Table</tt> before a mirror reload. Writes are queued on the executor of the
+     * engine itself, which the reload is already ordered behind.
+     */
+    protected void awaitWrites() { }
+    
+    /**
+     * Queues a statement that modifies this <tt>Table</tt>. Every write made through this class passes through here
+     * so that anything kept in sync with the table's contents is updated after the write.
+     * 
+     * @param change The change the statement makes, published once it commits, or <tt>null</tt> if changes are not tracked.
+     * @param update A string of the full SQL update statement to execute.
+     * @param params Values to bind to the <tt>?</tt> placeholders in the statement, in order.
+     */
+    protected void submitUpdate(ChangeEvent change, String update, Object... params) {
+        parent.runTrackedUpdate(null, change, update, parent.getDefaultTimeout(), params);
+        refreshMirror();
+    }
+    
+    /**
+     * Queues a statement that modifies a single row of this <tt>Table</tt>, kept in order with every other operation
+     * on the same primary key whatever their priority.
+     * 
+     * @param key The primary key value of the row.
+     * @param change The change the statement makes, published once it commits, or <tt>null</tt> if changes are not tracked.
+     * @param update A string of the full SQL update statement to execute.
+     * @param params Values to bind to the <tt>?</tt> placeholders in the statement, in order.
+     */
+    protected void submitKeyedUpdate(Object key, ChangeEvent change, String update, Object... params) {
+        parent.runTrackedUpdate(rowKey(key), change, update, parent.getDefaultTimeout(), params);
+        refreshMirror();
+    }
+    
+    /**
+     * Subscribes a listener to the changes made through this <tt>Table</tt>, delivered after they commit. Remote changes
+     * read from the engine's change log are delivered as well.
+     * 
+     * @param listener The listener to add, removed with <tt>SQLEngine.unsubscribe</tt>.
+     */
+    public void subscribe(ChangeListener listener) {
+        parent.subscribe(name, listener);
+    }
+    
+    /**
+     * @return A change of this <tt>Table</tt>, or <tt>null</tt> if the engine does not publish changes.
+     */
+    private ChangeEvent change(ChangeEvent.Kind kind, Object key, Map<String, Object> values) {
+        if(!parent.tracksChanges()) {
+            return null;
+        }
+        return new ChangeEvent(name, kind, key, values == null ? Collections.<String, Object>emptyMap() : values, false);
+    }
+    
+    /**
+     * @return The insert of a row with the provided values, leaving out an auto-incremented primary key.
+     */
+    private ChangeEvent insertChange(Object[] values) {
+        if(!parent.tracksChanges()) {
+            return null;
+        }
+        Map<String, Object> inserted = new LinkedHashMap<>();
+        Object key = null;
+        int i = 0;
+        for(ColumnDef def : columns) {
+            if(def.isPrimary && def.isAutoincrement) {
+                continue;
+            } else if(def.isPrimary) {
+                key = values[i];
+            }
+            inserted.put(def.name, values[i++]);
+        }
+        return change(ChangeEvent.Kind.INSERT, key, inserted);
+    }
+    
+    /**
+     * @return The key that orders operations on a single row of this <tt>Table</tt> in the query executor.
+     */
+    private String rowKey(Object key) {
+        return name.toLowerCase() + ":" + key;
+    }
+    
+    /**
+     * Buffers updates made through <tt>updateRow</tt> instead of sending each of them to the database. Updates to the
+     * same primary key are merged so only the latest value of every column is written, and the merged updates are flushed
+     * as one batched transaction on an interval or once enough keys are pending. Reads through <tt>getRows</tt>,
+     * <tt>getCachedRows</tt> and <tt>getValues</tt> return buffered values for rows with pending updates, and all buffers
+     * are flushed by <tt>SQLEngine.shutdown()</tt>.
+     * 
+     * @param flushMillis The interval between flushes in milliseconds, or 0 to only flush on the size threshold.
+     * @param maxPending The amount of keys with pending updates that triggers a flush.
+     */
+    public synchronized void bufferWrites(long flushMillis, int maxPending) {
+        if(writeBuffer == null) {
+            writeBuffer = new WriteBuffer();
+        }
+        writeBufferLimit = maxPending;
+        if(writeFlush != null) {
+            writeFlush.cancel(false);
+            writeFlush = null;
+        }
+        if(flushMillis > 0) {
+            writeFlush = parent.getScheduler().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    flushWrites();
+                }
+            }, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /**
+     * Flushes any pending updates and stops buffering writes for this <tt>Table</tt>.
+     */
+    public synchronized void unbufferWrites() {
+        if(writeFlush != null) {
+            writeFlush.cancel(false);
+            writeFlush = null;
+        }
+        flushWrites();
+        writeBuffer = null;
     }
-}
\ No newline at end of file
+    
+    /**
+     * @return true if updates to this <tt>Table</tt> are buffered.
+     */
+    public boolean isWriteBuffered() { return writeBuffer != null; }
+    
+    /**
+     * Queues all pending buffered updates to be written to the database in a single transaction. The flush is ordered
+     * against every other operation on the primary keys it writes. If the transaction fails, every update is retried on
+     * its own, and those that still fail are buffered again for the next flush, up to <tt>MAX_FLUSH_ATTEMPTS</tt> times.
+     */
+    public void flushWrites() {
+        final WriteBuffer buffer = writeBuffer;
+        if(buffer == null) {
+            return;
+        }
+        final Map<String, WriteBuffer.Entry> drained = buffer.drain();
+        if(drained.isEmpty()) {
+            return;
+        }
+        String pKey = getPrimaryKey().name;
+        final Map<String, List<Object[]>> batches = new LinkedHashMap<>();
+        final Map<String, String> updates = new LinkedHashMap<>();
+        final Map<String, Object[]> paramSets = new LinkedHashMap<>();
+        final Map<String, ChangeEvent> changes = new LinkedHashMap<>();
+        List<String> keys = new ArrayList<>(drained.size());
+        for(Map.Entry<String, WriteBuffer.Entry> drainedEntry : drained.entrySet()) {
+            WriteBuffer.Entry entry = drainedEntry.getValue();
+            keys.add(rowKey(entry.key));
+            if(parent.tracksChanges()) {
+                changes.put(drainedEntry.getKey(), change(ChangeEvent.Kind.UPDATE, entry.key, new LinkedHashMap<>(entry.values)));
+            }
+            String setString = "";
+            Object[] params = new Object[entry.values.size() + 1];
+            int i = 0;
+            for(Map.Entry<String, Object> value : entry.values.entrySet()) {
+                setString += (i == 0 ? "" : ",") + value.getKey() + " = ?";
+                params[i++] = parent.storedValue(getColumn(value.getKey()), value.getValue());
+            }
+            params[i] = entry.key;
+            String update = "UPDATE " + name + " SET " + setString + " WHERE " + pKey + " = ?";
+            if(!batches.containsKey(update)) {
+                batches.put(update, new ArrayList<Object[]>());
+                parent.invalidateReads(update);
+            }
+            batches.get(update).add(params);
+            updates.put(drainedEntry.getKey(), update);
+            paramSets.put(drainedEntry.getKey(), params);
+        }
+        parent.getExecutor().executeKeyed(new Runnable() {
+            @Override
+            public void run() {
+                if(parent.runBatchUpdate(batches)) {
+                    buffer.flushed(drained);
+                    publish(new ArrayList<>(changes.values()));
+                    return;
+                }
+                // The transaction was rolled back, so write every update on its own to find those that fail.
+                List<ChangeEvent> written = new ArrayList<>();
+                Map<String, WriteBuffer.Entry> failed = new LinkedHashMap<>();
+                for(Map.Entry<String, String> update : updates.entrySet()) {
+                    String id = update.getKey();
+                    Map<String, List<Object[]>> single = Collections.singletonMap(update.getValue(), Collections.singletonList(paramSets.get(id)));
+                    if(parent.runBatchUpdate(single)) {
+                        if(changes.containsKey(id)) {
+                            written.add(changes.get(id));
+                        }
+                    } else {
+                        failed.put(id, drained.get(id));
+                    }
+                }
+                for(WriteBuffer.Entry dropped : buffer.failed(drained, failed, MAX_FLUSH_ATTEMPTS)) {
+                    parent.logger.log(Level.SEVERE, "Gave up writing buffered update of " + name + " " + dropped.key + " after "
+                            + MAX_FLUSH_ATTEMPTS + " attempts: " + dropped.values);
+                }
+                publish(written);
+            }
+            
+            private void publish(List<ChangeEvent> written) {
+                if(parent.tracksChanges() && !written.isEmpty()) {
+                    parent.publishChanges(written);
+                }
+            }
+        }, Priority.BULK, keys);
+        refreshMirror();
+    }
+    
+    /**
+     * Wraps a callback so that it receives the values of a single column of every <tt>Row</tt> in its result.
+     */
+    private Callback selectValues(final String column, final Callback callback) {
+        return new Callback() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void invoke(Object param) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+                List<Column> result = new ArrayList<>();
+                for(Row row : (List<Row>) param) {
+                    result.add(row.getColumn(column));
+                }
+                callback.invoke(result);
+            }
+            
+            @Override
+            public boolean handlesErrors() { return callback.handlesErrors(); }
+            
+            @Override
+            public void invokeError(Throwable error) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+                callback.invokeError(error);
+            }
+        };
+    }
+    
+    /**
+     * Wraps a callback so that rows in its result that have buffered updates are replaced by copies carrying the buffered values.
+     */
+    private Callback overlayWrites(final Callback callback) {
+        final WriteBuffer buffer = writeBuffer;
+        final ColumnDef key = getPrimaryKey();
+        if(buffer == null || key == null || buffer.isEmpty()) {
+            return callback;
+        }
+        return new Callback() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void invoke(Object param) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+                List<Row> result = new ArrayList<>();
+                for(Row row : (List<Row>) param) {
+                    Column keyColumn = row.getColumn(key.name);
+                    Map<String, Object> buffered = keyColumn == null ? null : buffer.lookup(keyColumn.getData());
+                    if(buffered == null) {
+                        result.add(row);
+                        continue;
+                    }
+                    Row copy = new Row(Table.this);
+                    for(Column column : row.toArray()) {
+                        Object data = buffered.containsKey(column.getName()) ? buffered.get(column.getName()) : column.getData();
+                        copy.addColumn(new Column(copy, getColumn(column.getName()), data));
+                    }
+                    result.add(copy);
+                }
+                callback.invoke(result);
+            }
+            
+            @Override
+            public boolean handlesErrors() { return callback.handlesErrors(); }
+            
+            @Override
+            public void invokeError(Throwable error) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+                callback.invokeError(error);
+            }
+        };
+    }
+    
+}
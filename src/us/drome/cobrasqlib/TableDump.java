@@ -0,0 +1,287 @@
+package us.drome.cobrasqlib;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Writes the contents of a <tt>Table</tt> to a compact binary dump file and reads them back.
+ *
+ * A dump starts with a header holding the table name and its <tt>ColumnDef</tt> schema, followed by blocks of rows.
+ * Every value is encoded by the <tt>Type</tt> of its column through <tt>ValueCodec</tt>. Blocks hold up to
+ * <tt>BLOCK_SIZE</tt> bytes of rows and may be deflated, so only a single block is held in memory at a time
+ * while exporting or importing. The dump ends with an empty block.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class TableDump {
+    private static final int MAGIC = 0x43535144;
+    private static final int FLAG_COMPRESSED = 1;
+    /**
+     * The version of the dump file format. Dumps written with any other version are rejected.
+     */
+    public static final int FORMAT_VERSION = 1;
+    /**
+     * The amount of uncompressed row data collected before a block is written.
+     */
+    public static final int BLOCK_SIZE = 256 * 1024;
+    /**
+     * The amount of rows fetched from the cursor at a time while exporting, and inserted per batch while importing.
+     */
+    public static final int BATCH_SIZE = 1000;
+
+    private TableDump() { }
+
+    /**
+     * Streams every row of a <tt>Table</tt> to a dump file, replacing any previous contents.
+     * @param table The <tt>Table</tt> to export.
+     * @param path The file to write to.
+     * @param compress Whether to deflate the row blocks.
+     * @return The amount of rows written.
+     * @throws IOException If the file cannot be written or the table cannot be read.
+     */
+    protected static long export(Table table, Path path, boolean compress) throws IOException {
+        List<ColumnDef> columns = table.getColumns();
+        String select = "";
+        for(ColumnDef def : columns) {
+            select += (select.isEmpty() ? "" : ",") + def.name;
+        }
+
+        Block block = new Block();
+        DataOutputStream out = new DataOutputStream(block);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                Connection conn = table.parent.openConnection();
+                PreparedStatement statement = conn.prepareStatement("SELECT " + select + " FROM " + table.getName(),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            out.writeUTF(table.getName());
+            out.writeInt(columns.size());
+            for(ColumnDef def : columns) {
+                def.writeTo(out);
+            }
+            ByteBuffer header = ByteBuffer.allocate(16);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(compress ? FLAG_COMPRESSED : 0).putInt(block.size()).flip();
+            writeFully(channel, header);
+            writeFully(channel, ByteBuffer.wrap(block.array(), 0, block.size()));
+            block.reset();
+
+            Deflater deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+            Block deflated = compress ? new Block() : null;
+            long total = 0;
+            int rows = 0;
+            statement.setFetchSize(BATCH_SIZE);
+            try (ResultSet result = statement.executeQuery()) {
+                while(result.next()) {
+                    for(int i = 0; i < columns.size(); i++) {
+                        ValueCodec.write(result, i + 1, columns.get(i).type, out);
+                    }
+                    rows++;
+                    if(block.size() >= BLOCK_SIZE) {
+                        writeBlock(channel, rows, block, deflater, deflated);
+                        total += rows;
+                        rows = 0;
+                    }
+                }
+                if(rows > 0) {
+                    writeBlock(channel, rows, block, deflater, deflated);
+                    total += rows;
+                }
+            } finally {
+                if(deflater != null) {
+                    deflater.end();
+                }
+            }
+            ByteBuffer end = ByteBuffer.allocate(12);
+            end.putInt(0).putInt(0).putInt(0).flip();
+            writeFully(channel, end);
+            return total;
+        } catch (SQLException e) {
+            throw new IOException("Unable to export table " + table.getName(), e);
+        }
+    }
+
+    /**
+     * Inserts every row of a dump file into a <tt>Table</tt> using batched prepared inserts, committing after each block.
+     * The columns of the dump must exist in the table, but may be in any order.
+     * @param table The <tt>Table</tt> to import into.
+     * @param path The file to read from.
+     * @return The amount of rows inserted.
+     * @throws IOException If the file cannot be read, is not a dump, or the rows cannot be inserted. Blocks committed
+     * before the failure remain in the table.
+     */
+    protected static long importInto(Table table, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = readFully(channel, ByteBuffer.allocate(16));
+            if(header.getInt() != MAGIC) {
+                throw new IOException(path + " is not a table dump.");
+            } else if(header.getInt() != FORMAT_VERSION) {
+                throw new IOException(path + " was written with an unsupported dump version.");
+            }
+            boolean compressed = (header.getInt() & FLAG_COMPRESSED) != 0;
+            DataInputStream schema = new DataInputStream(new ByteArrayInputStream(readFully(channel, ByteBuffer.allocate(header.getInt())).array()));
+            schema.readUTF();
+            ColumnDef[] columns = new ColumnDef[schema.readInt()];
+            String columnString = "";
+            String valueString = "";
+            for(int i = 0; i < columns.length; i++) {
+                columns[i] = ColumnDef.readFrom(schema);
+                if(table.getColumn(columns[i].name) == null) {
+                    throw new IOException("Table " + table.getName() + " has no column " + columns[i].name + " found in " + path);
+                }
+                columnString += (i == 0 ? "" : ",") + columns[i].name;
+                valueString += (i == 0 ? "?" : ",?");
+            }
+            return insertBlocks(table, channel, compressed, columns,
+                "INSERT INTO " + table.getName() + " (" + columnString + ") VALUES (" + valueString + ")");
+        } finally {
+            table.parent.invalidateReads("INSERT INTO " + table.getName());
+            table.refreshMirror();
+        }
+    }
+
+    private static long insertBlocks(Table table, FileChannel channel, boolean compressed, ColumnDef[] columns, String insert) throws IOException {
+        Inflater inflater = compressed ? new Inflater() : null;
+        ByteBuffer blockHeader = ByteBuffer.allocate(12);
+        byte[] stored = new byte[0];
+        byte[] raw = new byte[0];
+        long total = 0;
+        try (Connection conn = table.parent.openConnection();
+                PreparedStatement statement = conn.prepareStatement(insert)) {
+            conn.setAutoCommit(false);
+            try {
+                while(true) {
+                    blockHeader.clear();
+                    readFully(channel, blockHeader);
+                    int rows = blockHeader.getInt();
+                    int rawLength = blockHeader.getInt();
+                    int storedLength = blockHeader.getInt();
+                    if(rows == 0) {
+                        return total;
+                    }
+                    if(stored.length < storedLength) {
+                        stored = new byte[storedLength];
+                    }
+                    readFully(channel, ByteBuffer.wrap(stored, 0, storedLength));
+                    byte[] data = stored;
+                    if(storedLength != rawLength) {
+                        if(raw.length < rawLength) {
+                            raw = new byte[rawLength];
+                        }
+                        inflate(inflater, stored, storedLength, raw, rawLength);
+                        data = raw;
+                    }
+
+                    DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, rawLength));
+                    for(int row = 1; row <= rows; row++) {
+                        for(int i = 0; i < columns.length; i++) {
+                            statement.setObject(i + 1, ValueCodec.read(columns[i].type, in));
+                        }
+                        statement.addBatch();
+                        if(row % BATCH_SIZE == 0) {
+                            statement.executeBatch();
+                        }
+                    }
+                    statement.executeBatch();
+                    conn.commit();
+                    total += rows;
+                }
+            } catch (SQLException | IOException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Unable to import into table " + table.getName() + " after " + total + " rows", e);
+        } finally {
+            if(inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+
+    private static void writeBlock(FileChannel channel, int rows, Block block, Deflater deflater, Block deflated) throws IOException {
+        byte[] data = block.array();
+        int length = block.size();
+        if(deflater != null) {
+            deflater.reset();
+            deflater.setInput(block.array(), 0, block.size());
+            deflater.finish();
+            deflated.reset();
+            byte[] chunk = new byte[8192];
+            while(!deflater.finished() && deflated.size() < block.size()) {
+                deflated.write(chunk, 0, deflater.deflate(chunk));
+            }
+            // Blocks that do not shrink are stored raw, which the reader detects by equal lengths.
+            if(deflater.finished() && deflated.size() < block.size()) {
+                data = deflated.array();
+                length = deflated.size();
+            }
+        }
+        ByteBuffer header = ByteBuffer.allocate(12);
+        header.putInt(rows).putInt(block.size()).putInt(length).flip();
+        writeFully(channel, header);
+        writeFully(channel, ByteBuffer.wrap(data, 0, length));
+        block.reset();
+    }
+
+    private static void inflate(Inflater inflater, byte[] stored, int storedLength, byte[] raw, int rawLength) throws IOException {
+        inflater.reset();
+        inflater.setInput(stored, 0, storedLength);
+        try {
+            int offset = 0;
+            while(offset < rawLength && !inflater.finished()) {
+                int read = inflater.inflate(raw, offset, rawLength - offset);
+                if(read == 0 && inflater.needsInput()) {
+                    break;
+                }
+                offset += read;
+            }
+            if(offset != rawLength) {
+                throw new IOException("Dump block is truncated.");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Dump block is corrupt.", e);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer) < 0) {
+                throw new EOFException("Dump file ended unexpectedly.");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * A growable byte buffer that exposes its backing array so blocks can be written without being copied.
+     */
+    private static class Block extends ByteArrayOutputStream {
+        private Block() {
+            super(BLOCK_SIZE + 1024);
+        }
+
+        private byte[] array() { return buf; }
+    }
+}
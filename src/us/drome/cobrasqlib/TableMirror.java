@@ -0,0 +1,85 @@
+package us.drome.cobrasqlib;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable in-memory copy of every <tt>Row</tt> in a <tt>Table</tt>, with hash indexes on a set of columns.
+ * A new <tt>TableMirror</tt> is built on every refresh and swapped in as a whole, so lookups never lock.
+ *
+ * Values are indexed by their <tt>String</tt> form, matching how the <tt>Table</tt> queries compare values.
+ * The <tt>Row</tt>s are shared between all readers and must not be modified.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class TableMirror {
+    private final List<Row> rows;
+    private final Map<String, Map<String, List<Row>>> indexes;
+
+    /**
+     * Protected constructor to build a new <tt>TableMirror</tt> from the full contents of a table.
+     * @param rows Every <tt>Row</tt> of the table.
+     * @param indexColumns The names of the columns to build hash indexes for.
+     */
+    protected TableMirror(List<Row> rows, String... indexColumns) {
+        this.rows = Collections.unmodifiableList(new ArrayList<>(rows));
+        this.indexes = new HashMap<>();
+        for(String column : indexColumns) {
+            Map<String, List<Row>> index = new HashMap<>();
+            for(Row row : rows) {
+                Column value = row.getColumn(column);
+                String key = value == null ? null : String.valueOf(value.getData());
+                List<Row> matches = index.get(key);
+                if(matches == null) {
+                    matches = new ArrayList<>(1);
+                    index.put(key, matches);
+                }
+                matches.add(row);
+            }
+            for(Map.Entry<String, List<Row>> entry : index.entrySet()) {
+                entry.setValue(Collections.unmodifiableList(entry.getValue()));
+            }
+            indexes.put(column.toLowerCase(), index);
+        }
+    }
+
+    /**
+     * @return Every <tt>Row</tt> in this mirror.
+     */
+    public List<Row> getRows() { return rows; }
+
+    /**
+     * @param column The name of the column.
+     * @return true if lookups on the column are answered from a hash index.
+     */
+    public boolean isIndexed(String column) { return indexes.containsKey(column.toLowerCase()); }
+
+    /**
+     * Returns all <tt>Row</tt>s where the specified column matches the provided value. Indexed columns are
+     * answered without allocating, all other columns are scanned.
+     * @param column The name of the column to search.
+     * @param value The Object to search for.
+     * @return An unmodifiable list of the matching rows.
+     */
+    public List<Row> getRows(String column, Object value) {
+        String key = value == null ? null : value.toString();
+        Map<String, List<Row>> index = indexes.get(column.toLowerCase());
+        if(index != null) {
+            List<Row> matches = index.get(key);
+            return matches == null ? Collections.<Row>emptyList() : matches;
+        }
+
+        List<Row> matches = new ArrayList<>();
+        for(Row row : rows) {
+            Column data = row.getColumn(column);
+            if(data != null && String.valueOf(data.getData()).equals(key)) {
+                matches.add(row);
+            }
+        }
+        return Collections.unmodifiableList(matches);
+    }
+}
@@ -0,0 +1,269 @@
+package us.drome.cobrasqlib;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Iterates over every <tt>Row</tt> of a <tt>Table</tt> one page at a time, in primary key order. Each page is read with
+ * a range query on the primary key starting after the last key of the previous page, so reading a page costs the same
+ * wherever it is in the table, and only one page is held in memory at a time.
+ *
+ * Pages are read on a dedicated connection that is closed once the last page was read or the iterator is closed. Rows
+ * inserted behind the current position while iterating are not returned. An iteration can be resumed from the last key
+ * of the last page that was processed, as returned by <tt>getLastKey</tt>.
+ *
+ * Failures to read a page are thrown as an <tt>IllegalStateException</tt> caused by the <tt>SQLException</tt>.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class TablePages implements Iterator<List<Row>>, Closeable {
+    private final Table table;
+    private final String key;
+    private final int pageSize;
+    private Object lastKey;
+    private Connection conn;
+    private List<Row> page;
+    private boolean done = false;
+
+    /**
+     * Protected constructor to start an iteration.
+     * @param table The table to iterate over.
+     * @param pageSize The largest amount of rows per page.
+     * @param afterKey The primary key to start after, or <tt>null</tt> to start at the first row.
+     * @throws IllegalStateException If the table has no primary key.
+     */
+    protected TablePages(Table table, int pageSize, Object afterKey) {
+        if(table.getPrimaryKey() == null) {
+            throw new IllegalStateException(table.getName() + " has no primary key to page by.");
+        }
+        this.table = table;
+        this.key = table.getPrimaryKey().name;
+        this.pageSize = Math.max(1, pageSize);
+        this.lastKey = afterKey;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(page == null && !done) {
+            try {
+                page = read();
+            } catch (SQLException e) {
+                close();
+                throw new IllegalStateException("Unable to read a page of " + table.getName() + ": " + e.getMessage(), e);
+            }
+            if(page.size() < pageSize) {
+                close();
+            }
+        }
+        return page != null && !page.isEmpty();
+    }
+
+    @Override
+    public List<Row> next() {
+        if(!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        List<Row> next = page;
+        page = null;
+        lastKey = next.get(next.size() - 1).getColumn(key).getData();
+        return next;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return The primary key of the last row of the last page returned by <tt>next</tt>, or the key the iteration started
+     * after if no page was returned yet.
+     */
+    public Object getLastKey() { return lastKey; }
+
+    /**
+     * Closes the connection pages are read on. Further calls to <tt>hasNext</tt> return false.
+     */
+    @Override
+    public void close() {
+        done = true;
+        if(conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                table.parent.logger.warning("Unable to close page connection: " + e.getMessage());
+            }
+            conn = null;
+        }
+    }
+
+    private List<Row> read() throws SQLException {
+        if(conn == null) {
+            conn = table.parent.openConnection();
+        }
+        String query = "SELECT * FROM " + table.getName() + (lastKey == null ? "" : " WHERE " + key + " > ?")
+                + " ORDER BY " + key + " LIMIT " + pageSize;
+        List<Row> rows = new ArrayList<>(pageSize);
+        try (PreparedStatement statement = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            if(lastKey != null) {
+                table.parent.bindParameters(statement, lastKey);
+            }
+            try (ResultSet result = statement.executeQuery()) {
+                ResultSetMetaData resultMeta = result.getMetaData();
+                while(result.next()) {
+                    rows.add(table.parent.readRow(table, result, resultMeta));
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Passes every page of a table to a consumer, optionally on several worker threads, and checkpoints progress to a file.
+     * Runs on the calling thread until every page was processed.
+     * @return The amount of rows processed.
+     */
+    protected static long forEach(Table table, int pageSize, int workers, final File checkpoint, final PageConsumer consumer) throws SQLException {
+        Object start = null;
+        if(checkpoint != null && checkpoint.exists()) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(checkpoint))) {
+                start = ValueCodec.readObject(in);
+            } catch (IOException e) {
+                throw new SQLException("Unable to read checkpoint " + checkpoint.getPath(), e);
+            }
+        }
+        final Progress progress = new Progress(checkpoint);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final AtomicLong rows = new AtomicLong();
+        ExecutorService pool = workers > 1 ? Executors.newFixedThreadPool(workers) : null;
+        Semaphore slots = new Semaphore(Math.max(1, workers));
+        try (TablePages pages = table.pages(pageSize, start)) {
+            long index = 0;
+            while(failure.get() == null && pages.hasNext()) {
+                final List<Row> page = pages.next();
+                final Object last = pages.getLastKey();
+                final long number = index++;
+                if(pool == null) {
+                    try {
+                        consumer.accept(page);
+                    } catch (Exception e) {
+                        failure.set(e);
+                        break;
+                    }
+                    rows.addAndGet(page.size());
+                    progress.completed(number, last);
+                    continue;
+                }
+                slots.acquire();
+                final Semaphore slot = slots;
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if(failure.get() == null) {
+                                consumer.accept(page);
+                                rows.addAndGet(page.size());
+                                progress.completed(number, last);
+                            }
+                        } catch (Exception e) {
+                            failure.compareAndSet(null, e);
+                        } finally {
+                            slot.release();
+                        }
+                    }
+                });
+            }
+        } catch (IllegalStateException e) {
+            if(e.getCause() instanceof SQLException) {
+                failure.compareAndSet(null, (SQLException) e.getCause());
+            } else {
+                throw e;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        } finally {
+            if(pool != null) {
+                pool.shutdown();
+                try {
+                    pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        Exception error = failure.get();
+        if(error == null) {
+            error = progress.error;
+        }
+        if(error instanceof SQLException) {
+            throw (SQLException) error;
+        } else if(error != null) {
+            throw new SQLException("Paging through " + table.getName() + " stopped after " + rows.get() + " rows: " + error.getMessage(), error);
+        }
+        if(checkpoint != null) {
+            checkpoint.delete();
+        }
+        return rows.get();
+    }
+
+    /**
+     * Tracks which pages completed and checkpoints the last key of the longest run of completed pages from the start,
+     * so a resumed iteration never skips a page that had not completed.
+     */
+    private static class Progress {
+        private final File checkpoint;
+        private final TreeMap<Long, Object> completed = new TreeMap<>();
+        private long next = 0;
+        private IOException error;
+
+        private Progress(File checkpoint) {
+            this.checkpoint = checkpoint;
+        }
+
+        private synchronized void completed(long page, Object lastKey) {
+            completed.put(page, lastKey);
+            Object advanced = null;
+            boolean moved = false;
+            while(!completed.isEmpty() && completed.firstKey() == next) {
+                advanced = completed.remove(next);
+                next++;
+                moved = true;
+            }
+            if(moved && checkpoint != null && error == null) {
+                File temp = new File(checkpoint.getPath() + ".tmp");
+                try {
+                    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+                        ValueCodec.writeObject(advanced, out);
+                    }
+                    Files.move(temp.toPath(), checkpoint.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+        }
+    }
+}
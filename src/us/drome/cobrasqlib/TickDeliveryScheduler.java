@@ -0,0 +1,95 @@
+package us.drome.cobrasqlib;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A <tt>DeliveryScheduler</tt> that holds completed results until the host drains them on its own thread, such as once
+ * per server tick. Completions are added to lock-free queues, one per priority, so the query executor never waits on
+ * the host.
+ *
+ * Every drain delivers results, most urgent priority first, until its time budget is spent, so a burst of completions
+ * is spread over several ticks instead of stalling one. Results of less urgent priorities wait as long as more urgent
+ * ones keep arriving.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class TickDeliveryScheduler implements DeliveryScheduler {
+    private final Logger logger;
+    private final List<ConcurrentLinkedQueue<Runnable>> queues = new ArrayList<>();
+    private final AtomicInteger backlog = new AtomicInteger();
+    private final AtomicLong delivered = new AtomicLong();
+
+    /**
+     * Initializes a new <tt>TickDeliveryScheduler</tt>.
+     * @param logger The logger to report callbacks that throw to.
+     */
+    public TickDeliveryScheduler(Logger logger) {
+        this.logger = logger;
+        for(int i = 0; i < Priority.values().length; i++) {
+            queues.add(new ConcurrentLinkedQueue<Runnable>());
+        }
+    }
+
+    @Override
+    public void schedule(Runnable delivery, Priority priority) {
+        queues.get(priority.ordinal()).add(delivery);
+        backlog.incrementAndGet();
+    }
+
+    /**
+     * Delivers pending results on the calling thread, most urgent priority first, until none are left or the time budget
+     * is spent. At least one result is delivered if any are pending, so the backlog always shrinks.
+     * @param budgetNanos The time in nanoseconds that may be spent delivering.
+     * @return The amount of results still pending afterwards.
+     */
+    public int drain(long budgetNanos) {
+        long start = System.nanoTime();
+        Runnable delivery;
+        while((delivery = next()) != null) {
+            backlog.decrementAndGet();
+            try {
+                delivery.run();
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Callback failed: " + e, e);
+            }
+            delivered.incrementAndGet();
+            if(System.nanoTime() - start >= budgetNanos) {
+                break;
+            }
+        }
+        return backlog.get();
+    }
+
+    private Runnable next() {
+        for(ConcurrentLinkedQueue<Runnable> queue : queues) {
+            Runnable delivery = queue.poll();
+            if(delivery != null) {
+                return delivery;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The amount of results waiting to be delivered.
+     */
+    public int getBacklog() { return backlog.get(); }
+
+    /**
+     * @param priority The priority class.
+     * @return The amount of results of the priority waiting to be delivered.
+     */
+    public int getBacklog(Priority priority) { return queues.get(priority.ordinal()).size(); }
+
+    /**
+     * @return The amount of results delivered since the scheduler was created.
+     */
+    public long getDelivered() { return delivered.get(); }
+}
@@ -34,7 +34,7 @@ public enum Type {
     DECIMAL(65, 30, true, true, true, Types.DECIMAL, BigDecimal.class),
     CHAR(255, 0, true, false, false, Types.CHAR, String.class),
     VARCHAR(65535, 0, true, false, false, Types.VARCHAR, String.class),
-    LONGVARCHAR(0, 0, false, false, false, Types.LONGNVARCHAR, String.class),
+    LONGVARCHAR(0, 0, false, false, false, Types.LONGVARCHAR, String.class),
     DATE(6, 0, true, false, false, Types.DATE, Date.class),
     TIME(6, 0, true, false, false, Types.TIME, Timestamp.class),
     TIMESTAMP(6, 0, true, false, false, Types.TIMESTAMP, Timestamp.class),
@@ -101,6 +101,29 @@ public enum Type {
      */
     public Class[] getReturnTypes() { return returnTypes; }
     
+    /**
+     * @return true if values of this data type hold characters rather than bytes or numbers.
+     */
+    public boolean isText() { return returnTypes[0] == String.class || this == CLOB || this == NCLOB; }
+    
+    /**
+     * Large data types hold values that may be too large to be loaded whole, and can be read and written as streams.
+     * @return true if this data type is <tt>BLOB</tt>, <tt>CLOB</tt>, <tt>NCLOB</tt> or one of the <tt>LONG</tt> variable length types.
+     */
+    public boolean isLarge() {
+        switch(this) {
+            case BLOB:
+            case CLOB:
+            case NCLOB:
+            case LONGVARBINARY:
+            case LONGVARCHAR:
+            case LONGNVARCHAR:
+                return true;
+            default:
+                return false;
+        }
+    }
+    
     /**
      * Function to test the validity of the combination of settings being used to create a column definition of this type.
      * 
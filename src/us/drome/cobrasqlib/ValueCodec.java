@@ -0,0 +1,246 @@
+package us.drome.cobrasqlib;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * Encodes column values in a compact binary form chosen by their <tt>Type</tt>, so values can be written
+ * straight from a <tt>ResultSet</tt> and read back as objects that can be bound to a <tt>PreparedStatement</tt>.
+ * Every value starts with a marker byte that is 0 for NULL, followed by the value itself if it is not NULL.
+ *
+ * Values without a known <tt>Type</tt>, such as statement parameters, are written with a tag for their Java class instead.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class ValueCodec {
+    private enum Encoding { BOOLEAN, LONG, DOUBLE, DECIMAL, TIMESTAMP, BYTES, STRING }
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_INT = 1;
+    private static final byte TAG_LONG = 2;
+    private static final byte TAG_DOUBLE = 3;
+    private static final byte TAG_BOOLEAN = 4;
+    private static final byte TAG_DECIMAL = 5;
+    private static final byte TAG_TIMESTAMP = 6;
+    private static final byte TAG_DATE = 7;
+    private static final byte TAG_BYTES = 8;
+    private static final byte TAG_STRING = 9;
+
+    private ValueCodec() { }
+
+    private static Encoding encodingOf(Type type) {
+        if(type == null) {
+            return Encoding.STRING;
+        }
+        switch(type) {
+            case BOOLEAN:
+                return Encoding.BOOLEAN;
+            case TINYINT:
+            case SMALLINT:
+            case INTEGER:
+            case BIGINT:
+            case ROWID:
+                return Encoding.LONG;
+            case FLOAT:
+            case REAL:
+            case DOUBLE:
+                return Encoding.DOUBLE;
+            case NUMERIC:
+            case DECIMAL:
+                return Encoding.DECIMAL;
+            case DATE:
+            case TIME:
+            case TIMESTAMP:
+                return Encoding.TIMESTAMP;
+            case BIT:
+            case BINARY:
+            case VARBINARY:
+            case LONGVARBINARY:
+            case BLOB:
+                return Encoding.BYTES;
+            default:
+                return Encoding.STRING;
+        }
+    }
+
+    /**
+     * Writes a column of the current row of a <tt>ResultSet</tt>.
+     * @param result The <tt>ResultSet</tt> positioned on the row to write.
+     * @param column The index of the column, starting at 1.
+     * @param type The <tt>Type</tt> of the column.
+     * @param out The output to write to.
+     * @throws SQLException
+     * @throws IOException
+     */
+    protected static void write(ResultSet result, int column, Type type, DataOutput out) throws SQLException, IOException {
+        switch(encodingOf(type)) {
+            case BOOLEAN:
+                boolean bool = result.getBoolean(column);
+                if(marker(result, out)) { out.writeBoolean(bool); }
+                break;
+            case LONG:
+                long number = result.getLong(column);
+                if(marker(result, out)) { out.writeLong(number); }
+                break;
+            case DOUBLE:
+                double decimal = result.getDouble(column);
+                if(marker(result, out)) { out.writeDouble(decimal); }
+                break;
+            case DECIMAL:
+                BigDecimal big = result.getBigDecimal(column);
+                if(marker(result, out)) { writeString(big.toPlainString(), out); }
+                break;
+            case TIMESTAMP:
+                Timestamp time = result.getTimestamp(column);
+                if(marker(result, out)) { out.writeLong(time.getTime()); }
+                break;
+            case BYTES:
+                byte[] bytes = result.getBytes(column);
+                if(marker(result, out)) { writeBytes(bytes, out); }
+                break;
+            default:
+                String string = result.getString(column);
+                if(marker(result, out)) { writeString(string, out); }
+        }
+    }
+
+    /**
+     * Reads a value written by <tt>write</tt>.
+     * @param type The <tt>Type</tt> of the column.
+     * @param in The input to read from.
+     * @return The value, or <tt>null</tt> if it was NULL.
+     * @throws IOException
+     */
+    protected static Object read(Type type, DataInput in) throws IOException {
+        if(in.readByte() == 0) {
+            return null;
+        }
+        switch(encodingOf(type)) {
+            case BOOLEAN:
+                return in.readBoolean();
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case DECIMAL:
+                return new BigDecimal(readString(in));
+            case TIMESTAMP:
+                return new Timestamp(in.readLong());
+            case BYTES:
+                return readBytes(in);
+            default:
+                return readString(in);
+        }
+    }
+
+    /**
+     * Writes a value of any supported Java class, such as a statement parameter, tagged with its class so it can be read
+     * back as the same class with <tt>readObject</tt>. Values of unsupported classes are written as their string form.
+     * @param value The value to write, which may be <tt>null</tt>.
+     * @param out The output to write to.
+     * @throws IOException
+     */
+    protected static void writeObject(Object value, DataOutput out) throws IOException {
+        if(value == null) {
+            out.writeByte(TAG_NULL);
+        } else if(value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(TAG_INT);
+            out.writeInt(((Number) value).intValue());
+        } else if(value instanceof Long) {
+            out.writeByte(TAG_LONG);
+            out.writeLong((Long) value);
+        } else if(value instanceof Double || value instanceof Float) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if(value instanceof Boolean) {
+            out.writeByte(TAG_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if(value instanceof BigDecimal) {
+            out.writeByte(TAG_DECIMAL);
+            writeString(((BigDecimal) value).toPlainString(), out);
+        } else if(value instanceof Timestamp) {
+            out.writeByte(TAG_TIMESTAMP);
+            out.writeLong(((Timestamp) value).getTime());
+        } else if(value instanceof java.util.Date) {
+            out.writeByte(TAG_DATE);
+            out.writeLong(((java.util.Date) value).getTime());
+        } else if(value instanceof byte[]) {
+            out.writeByte(TAG_BYTES);
+            writeBytes((byte[]) value, out);
+        } else {
+            out.writeByte(TAG_STRING);
+            writeString(value.toString(), out);
+        }
+    }
+
+    /**
+     * Reads a value written by <tt>writeObject</tt>.
+     * @param in The input to read from.
+     * @return The value, or <tt>null</tt> if it was NULL.
+     * @throws IOException
+     */
+    protected static Object readObject(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        switch(tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_INT:
+                return in.readInt();
+            case TAG_LONG:
+                return in.readLong();
+            case TAG_DOUBLE:
+                return in.readDouble();
+            case TAG_BOOLEAN:
+                return in.readBoolean();
+            case TAG_DECIMAL:
+                return new BigDecimal(readString(in));
+            case TAG_TIMESTAMP:
+                return new Timestamp(in.readLong());
+            case TAG_DATE:
+                return new java.sql.Date(in.readLong());
+            case TAG_BYTES:
+                return readBytes(in);
+            case TAG_STRING:
+                return readString(in);
+            default:
+                throw new IOException("Unknown value tag " + tag);
+        }
+    }
+
+    /**
+     * Writes a string of any length as UTF-8, unlike <tt>DataOutput.writeUTF</tt> which is limited to 64KB.
+     */
+    protected static void writeString(String value, DataOutput out) throws IOException {
+        writeBytes(value.getBytes(StandardCharsets.UTF_8), out);
+    }
+
+    /**
+     * Reads a string written by <tt>writeString</tt>.
+     */
+    protected static String readString(DataInput in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    private static boolean marker(ResultSet result, DataOutput out) throws SQLException, IOException {
+        boolean present = !result.wasNull();
+        out.writeByte(present ? 1 : 0);
+        return present;
+    }
+
+    private static void writeBytes(byte[] bytes, DataOutput out) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,102 @@
+package us.drome.cobrasqlib;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A predicate on the rows of a <tt>Table</tt>, compiled to a parameterized <tt>WHERE</tt> clause. Every condition added
+ * must hold for a row to match, and a <tt>Where</tt> without conditions matches every row.
+ *
+ * <pre>new Where().eq("world", "nether").ge("level", 10)</pre>
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class Where {
+    private final StringBuilder sql = new StringBuilder();
+    private final List<Object> params = new ArrayList<>();
+
+    /**
+     * Matches rows where the column equals the value. A <tt>null</tt> value matches NULL.
+     */
+    public Where eq(String column, Object value) {
+        return value == null ? isNull(column) : condition(column + " = ?", value);
+    }
+
+    /**
+     * Matches rows where the column does not equal the value. A <tt>null</tt> value matches everything but NULL.
+     */
+    public Where ne(String column, Object value) {
+        return value == null ? isNotNull(column) : condition(column + " <> ?", value);
+    }
+
+    /**
+     * Matches rows where the column is less than the value.
+     */
+    public Where lt(String column, Object value) { return condition(column + " < ?", value); }
+
+    /**
+     * Matches rows where the column is less than or equal to the value.
+     */
+    public Where le(String column, Object value) { return condition(column + " <= ?", value); }
+
+    /**
+     * Matches rows where the column is greater than the value.
+     */
+    public Where gt(String column, Object value) { return condition(column + " > ?", value); }
+
+    /**
+     * Matches rows where the column is greater than or equal to the value.
+     */
+    public Where ge(String column, Object value) { return condition(column + " >= ?", value); }
+
+    /**
+     * Matches rows where the column matches a <tt>LIKE</tt> pattern.
+     */
+    public Where like(String column, String pattern) { return condition(column + " LIKE ?", pattern); }
+
+    /**
+     * Matches rows where the column equals any of the values. No values matches no rows.
+     */
+    public Where in(String column, Object... values) {
+        if(values.length == 0) {
+            return condition("1 = 0");
+        }
+        StringBuilder placeholders = new StringBuilder();
+        for(int i = 0; i < values.length; i++) {
+            placeholders.append(i == 0 ? "?" : ",?");
+        }
+        return condition(column + " IN (" + placeholders + ")", values);
+    }
+
+    /**
+     * Matches rows where the column is NULL.
+     */
+    public Where isNull(String column) { return condition(column + " IS NULL"); }
+
+    /**
+     * Matches rows where the column is not NULL.
+     */
+    public Where isNotNull(String column) { return condition(column + " IS NOT NULL"); }
+
+    private Where condition(String condition, Object... values) {
+        sql.append(sql.length() == 0 ? "" : " AND ").append(condition);
+        for(Object value : values) {
+            params.add(value);
+        }
+        return this;
+    }
+
+    /**
+     * @return The clause, starting with a space, or an empty string if there are no conditions.
+     */
+    protected String toSql() { return sql.length() == 0 ? "" : " WHERE " + sql; }
+
+    /**
+     * @return The values to bind to the placeholders of the clause, in order.
+     */
+    protected Object[] getParams() { return params.toArray(); }
+
+    @Override
+    public String toString() { return "Where[" + sql + "]"; }
+}
@@ -0,0 +1,132 @@
+package us.drome.cobrasqlib;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds pending updates for a <tt>Table</tt> keyed by primary key. Newer values for a key are merged into its
+ * pending entry, so only the latest value of every column reaches the database when the buffer is flushed.
+ *
+ * Entries that have been drained for a flush stay visible to lookups until the flush has been executed,
+ * so reads never miss a value that is on its way to the database.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class WriteBuffer {
+    private Map<String, Entry> pending = new LinkedHashMap<>();
+    private final List<Map<String, Entry>> flushing = new ArrayList<>();
+
+    /**
+     * Merges column values into the pending entry for a primary key.
+     * @param key The primary key value of the row.
+     * @param values The new column values, keyed by column name.
+     * @return The amount of keys with pending updates.
+     */
+    protected synchronized int merge(Object key, Map<String, Object> values) {
+        Entry entry = pending.get(String.valueOf(key));
+        if(entry == null) {
+            entry = new Entry(key);
+            pending.put(String.valueOf(key), entry);
+        }
+        entry.values.putAll(values);
+        return pending.size();
+    }
+
+    /**
+     * Removes every pending entry so it can be flushed. The entries remain visible to <tt>lookup</tt>
+     * until <tt>flushed</tt> is called with the returned map.
+     * @return The drained entries, keyed by primary key.
+     */
+    protected synchronized Map<String, Entry> drain() {
+        Map<String, Entry> drained = pending;
+        pending = new LinkedHashMap<>();
+        if(!drained.isEmpty()) {
+            flushing.add(drained);
+        }
+        return drained;
+    }
+
+    /**
+     * Marks drained entries as written to the database.
+     * @param drained The map returned by <tt>drain</tt>.
+     */
+    protected synchronized void flushed(Map<String, Entry> drained) {
+        flushing.remove(drained);
+    }
+
+    /**
+     * Returns entries whose flush failed to the pending updates so the next flush writes them again, unless they have
+     * already failed <tt>maxAttempts</tt> times. Values buffered for a key since it was drained take precedence over
+     * the failed values. The drained entries are no longer counted as being flushed.
+     * @param drained The map returned by <tt>drain</tt>.
+     * @param failed The entries of <tt>drained</tt> that could not be written.
+     * @param maxAttempts The amount of failed flushes after which an entry is given up.
+     * @return The entries that were given up.
+     */
+    protected synchronized List<Entry> failed(Map<String, Entry> drained, Map<String, Entry> failed, int maxAttempts) {
+        flushing.remove(drained);
+        List<Entry> dropped = new ArrayList<>();
+        for(Map.Entry<String, Entry> failure : failed.entrySet()) {
+            Entry entry = failure.getValue();
+            if(++entry.attempts >= maxAttempts) {
+                dropped.add(entry);
+                continue;
+            }
+            Entry newer = pending.get(failure.getKey());
+            if(newer != null) {
+                entry.values.putAll(newer.values);
+            }
+            pending.put(failure.getKey(), entry);
+        }
+        return dropped;
+    }
+
+    /**
+     * Retrieves the buffered column values for a primary key, including values that are being flushed.
+     * @param key The primary key value of the row.
+     * @return The buffered values keyed by column name, or <tt>null</tt> if nothing is buffered for the key.
+     */
+    protected synchronized Map<String, Object> lookup(Object key) {
+        Map<String, Object> values = null;
+        String id = String.valueOf(key);
+        for(Map<String, Entry> drained : flushing) {
+            values = overlay(values, drained.get(id));
+        }
+        return overlay(values, pending.get(id));
+    }
+
+    private static Map<String, Object> overlay(Map<String, Object> values, Entry entry) {
+        if(entry == null) {
+            return values;
+        }
+        Map<String, Object> result = values == null ? new LinkedHashMap<String, Object>() : values;
+        result.putAll(entry.values);
+        return result;
+    }
+
+    /**
+     * @return true if no updates are pending or being flushed.
+     */
+    public synchronized boolean isEmpty() { return pending.isEmpty() && flushing.isEmpty(); }
+
+    /**
+     * @return The amount of keys with pending updates.
+     */
+    public synchronized int size() { return pending.size(); }
+
+    /**
+     * The merged pending update for a single row.
+     */
+    protected static class Entry {
+        protected final Object key;
+        protected final Map<String, Object> values = new LinkedHashMap<>();
+        private int attempts = 0;
+
+        private Entry(Object key) {
+            this.key = key;
+        }
+    }
+}
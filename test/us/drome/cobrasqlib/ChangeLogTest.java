@@ -0,0 +1,96 @@
+package us.drome.cobrasqlib;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Runs two engines on one SQLite file, as two servers sharing a database would, and checks that the changes of one are
+ * delivered to the other through the change log.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class ChangeLogTest {
+    private static final Logger LOGGER = Logger.getLogger(ChangeLogTest.class.getName());
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SQLiteEngine first;
+    private SQLiteEngine second;
+
+    @Before
+    public void setUp() throws Exception {
+        String file = new File(folder.getRoot(), "shared.db").getAbsolutePath();
+        first = new SQLiteEngine(LOGGER, file);
+        first.createTable("players", new ColumnDef("name", Type.VARCHAR, 16, Options.isPrimary),
+                new ColumnDef("level", Type.INTEGER));
+        first.enableChangeLog(50);
+        first.getExecutor().barrier().get(5, TimeUnit.SECONDS);
+        second = new SQLiteEngine(LOGGER, file);
+        second.enableChangeLog(50);
+        second.getExecutor().barrier().get(5, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        if(second != null) {
+            second.shutdown();
+        }
+        if(first != null) {
+            first.shutdown();
+        }
+    }
+
+    @Test
+    public void remoteInsertIsDelivered() throws Exception {
+        final BlockingQueue<ChangeEvent> received = new LinkedBlockingQueue<>();
+        second.subscribe(new ChangeListener() {
+            @Override
+            public void onChanges(List<ChangeEvent> changes) {
+                received.addAll(changes);
+            }
+        });
+        first.getTable("players").insertValues("alice", 3);
+
+        ChangeEvent change = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull("The insert was not delivered to the second engine", change);
+        assertTrue(change.isRemote());
+        assertEquals(ChangeEvent.Kind.INSERT, change.getKind());
+        assertEquals("players", change.getTable());
+        assertEquals("alice", change.getKey());
+    }
+
+    @Test
+    public void remoteUpdateIsDelivered() throws Exception {
+        first.getTable("players").insertValues("bob", 1);
+        first.getExecutor().barrier().get(5, TimeUnit.SECONDS);
+        final BlockingQueue<ChangeEvent> received = new LinkedBlockingQueue<>();
+        second.subscribe(new ChangeListener() {
+            @Override
+            public void onChanges(List<ChangeEvent> changes) {
+                for(ChangeEvent change : changes) {
+                    if(change.getKind() == ChangeEvent.Kind.UPDATE) {
+                        received.add(change);
+                    }
+                }
+            }
+        });
+        first.getTable("players").update("level", 1, 2);
+
+        ChangeEvent change = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull("The update was not delivered to the second engine", change);
+        assertEquals("players", change.getTable());
+        assertTrue(change.getValues().containsKey("level"));
+    }
+}
@@ -0,0 +1,97 @@
+package us.drome.cobrasqlib;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Copies a table between two SQLite databases, from the start and resuming from a checkpoint.
+ *
+ * @author TheAcademician
+ * @since 0.1
+ */
+public class MigrationTest {
+    private static final Logger LOGGER = Logger.getLogger(MigrationTest.class.getName());
+    private static final int ROWS = 25;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SQLiteEngine source;
+    private SQLiteEngine target;
+
+    @Before
+    public void setUp() throws Exception {
+        source = new SQLiteEngine(LOGGER, new File(folder.getRoot(), "source.db").getAbsolutePath());
+        target = new SQLiteEngine(LOGGER, new File(folder.getRoot(), "target.db").getAbsolutePath());
+        createPlayers(source);
+        for(int i = 1; i <= ROWS; i++) {
+            source.runUpdate("INSERT INTO players (id, name) VALUES (?, ?)", i, "player" + i);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        target.shutdown();
+        source.shutdown();
+    }
+
+    @Test
+    public void copiesEveryRow() throws Exception {
+        Migration migration = new Migration(source, target);
+        migration.setBatchSize(10);
+        Map<String, Long> copied = migration.run("players");
+
+        assertEquals(Long.valueOf(ROWS), copied.get("players"));
+        assertEquals(ROWS, count(target));
+        List<Row> last = target.runQuery("SELECT name FROM players WHERE id = ?", ROWS);
+        assertEquals("player" + ROWS, last.get(0).getColumn("name").getData());
+    }
+
+    @Test
+    public void resumesFromCheckpoint() throws Exception {
+        // A batch of rows 11 to 15 committed, but the migration stopped before checkpointing it.
+        createPlayers(target);
+        for(int i = 1; i <= 15; i++) {
+            target.runUpdate("INSERT INTO players (id, name) VALUES (?, ?)", i, "player" + i);
+        }
+        File checkpoint = folder.newFile("migration.properties");
+        Properties progress = new Properties();
+        progress.setProperty("players.started", "true");
+        progress.setProperty("players.key", "10");
+        progress.setProperty("players.rows", "10");
+        try (OutputStream out = new FileOutputStream(checkpoint)) {
+            progress.store(out, null);
+        }
+
+        Migration migration = new Migration(source, target);
+        migration.setBatchSize(10);
+        migration.setCheckpointFile(checkpoint);
+        Map<String, Long> copied = migration.run("players");
+
+        assertEquals(Long.valueOf(ROWS), copied.get("players"));
+        assertEquals(ROWS, count(target));
+    }
+
+    private static void createPlayers(SQLEngine engine) throws Exception {
+        engine.createTable("players", new ColumnDef("id", Type.INTEGER, Options.isPrimary),
+                new ColumnDef("name", Type.VARCHAR, 16));
+        engine.getExecutor().barrier().get(5, TimeUnit.SECONDS);
+    }
+
+    private static int count(SQLEngine engine) {
+        List<Row> rows = engine.runQuery("SELECT COUNT(*) AS total FROM players");
+        return ((Number) rows.get(0).getColumn("total").getData()).intValue();
+    }
+}